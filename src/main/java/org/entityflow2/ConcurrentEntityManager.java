@@ -6,10 +6,18 @@ import net.openhft.koloboke.collect.map.hash.HashObjObjMaps;
 import net.openhft.koloboke.collect.set.IntSet;
 import net.openhft.koloboke.collect.set.hash.HashIntSets;
 import net.openhft.koloboke.function.IntConsumer;
-import org.entityflow2.component.ComponentType;
+import org.entityflow2.archetype.ArchetypeStorage;
+import org.entityflow2.component.*;
 import org.entityflow2.group.EntityGroup;
 import org.entityflow2.group.EntityGroupImpl;
+import org.entityflow2.group.EntityQuery;
 import org.entityflow2.processor.Processor;
+import org.entityflow2.processor.ProcessorScheduler;
+import org.entityflow2.processor.UpdateSlot;
+import org.entityflow2.utils.EntityIdAllocator;
+import org.entityflow2.utils.IntMpscQueue;
+import org.entityflow2.utils.PagedBitSets;
+import org.flowutils.Check;
 import org.flowutils.Symbol;
 import org.flowutils.service.ServiceBase;
 import org.flowutils.service.ServiceProvider;
@@ -17,20 +25,27 @@ import org.flowutils.time.Time;
 import org.flowutils.updating.Updating;
 import org.flowutils.updating.strategies.UpdateStrategy;
 
+import java.io.PrintStream;
 import java.util.*;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
 
 import static org.flowutils.Check.notContained;
 import static org.flowutils.Check.notNull;
 
 /**
- *
+ * EntityManager that can update processors that do not access the same component types in parallel,
+ * see setProcessorExecutor and ProcessorDependencies.
  */
-// TODO: Implement concurrency
 public final class ConcurrentEntityManager extends ServiceBase implements EntityManager {
 
     public static final int EXPECTED_ENTITY_COUNT = 10000;
     public static final int EXPECTED_ADD_DELETE_PER_UPDATE = 1000;
+    public static final int DEFAULT_COMPACTION_BLOCK_BUDGET = 4096;
+
+    /**
+     * Number of blocks moved at a time between checks of the compaction time budget.
+     */
+    private static final int COMPACTION_STEP = 256;
 
     private static final int MIN_ENTITY_ID = 1;
     private static final int MAX_ENTITY_ID = Integer.MAX_VALUE - 3;
@@ -39,15 +54,79 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
     private final ObjObjMap<Symbol, ComponentType> componentTypeLookup = HashObjObjMaps.getDefaultFactory().withKeyEquivalence(Equivalence.identity()).newMutableMap();
 
     private final List<Processor> processors = new ArrayList<Processor>();
+    private ProcessorScheduler processorScheduler;
+
+    /**
+     * Command buffers in playback order: the buffers of the processor slots, indexed by the position of the processor
+     * in the schedule and the worker index, and the buffers created with createCommandBuffer in creation order.
+     */
+    private EntityCommandBuffer[][] slotCommandBuffers = new EntityCommandBuffer[0][];
+    private final List<EntityCommandBuffer> commandBuffers = new ArrayList<EntityCommandBuffer>();
+    private final List<EntityCommandBuffer> playedBackCommandBuffers = new ArrayList<EntityCommandBuffer>();
+
+    /**
+     * Reused when playing back command buffers: the component types that each created entity gets at creation and the ones
+     * removed from it so far as bit masks indexed by type index, the component additions folded into the creations,
+     * and the created entities sorted by their component types.
+     */
+    private long[] createdTypeMasks = new long[0];
+    private long[] removedTypeMasks = new long[0];
+    private boolean[] foldedCommands = new boolean[0];
+    private long[] createdEntityKeys = new long[0];
+
+    private ExecutorService processorExecutor;
+    private PrintStream scheduleDebugOutput;
 
     private final IntSet existingEntities = HashIntSets.newMutableSet(EXPECTED_ENTITY_COUNT);
     private final IntSet existingEntitiesReadOnly = HashIntSets.newImmutableSet(existingEntities);
-    private int lastCreatedEntityId = 0;
+    private EntityIdAllocator idAllocator = new EntityIdAllocator(MIN_ENTITY_ID, MAX_ENTITY_ID, false);
     private final Object createDeleteEntityLock = new Object();
 
-    private final Set<Integer> entitiesToRemove = new ConcurrentSkipListSet<Integer>();
+    private final IntMpscQueue entitiesToRemove = new IntMpscQueue();
+
+    /**
+     * Ids of the entities being removed, and of the ones with each component type, indexed by type index.  Reused between updates.
+     */
+    private int[] removedEntities = new int[EXPECTED_ADD_DELETE_PER_UPDATE];
+    private int removedEntityCount = 0;
+    private int[][] removedComponents = new int[0][];
+    private int[] removedComponentCounts = new int[0];
+    private final IntConsumer removedEntityCollector = new IntConsumer() {
+        @Override public void accept(int entityId) {
+            if (removedEntityCount >= removedEntities.length) {
+                removedEntities = Arrays.copyOf(removedEntities, removedEntities.length * 2);
+            }
+            removedEntities[removedEntityCount++] = entityId;
+        }
+    };
 
     private final List<EntityGroup> groups = new ArrayList<EntityGroup>();
+    private final List<EntityGroup> groupsReadOnly = Collections.unmodifiableList(groups);
+    private final Map<EntityQuery, EntityGroup> groupLookup = new HashMap<EntityQuery, EntityGroup>();
+    private long groupLookupCount = 0;
+    private long groupCacheHitCount = 0;
+
+    /**
+     * The groups that have each component type as a required or forbidden type, indexed by the type index of the component type.
+     */
+    private final List<List<EntityGroup>> componentTypeGroups = new ArrayList<List<EntityGroup>>();
+
+    /**
+     * Groups without any required component types, which may contain entities without components.
+     */
+    private final List<EntityGroup> groupsWithoutRequiredTypes = new ArrayList<EntityGroup>();
+
+    /**
+     * The component types of each entity, with a bit set for the type index of each component type it has.
+     */
+    private final PagedBitSets entityComponentTypes = new PagedBitSets(64);
+
+    private final ArchetypeStorage archetypes;
+
+    private int compactionBlockBudget = DEFAULT_COMPACTION_BLOCK_BUDGET;
+    private long compactionTimeBudgetNanos = 0;
+    private int lastCompactionMovedBlocks = 0;
+    private long lastCompactionNanos = 0;
 
     private UpdateStrategy updateStrategy;
     private final Updating entityMangerUpdate = new Updating() {
@@ -83,8 +162,98 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
      *                       If null, uses the default variable timestep update strategy.
      */
     public ConcurrentEntityManager(String name, UpdateStrategy updateStrategy) {
+        this(name, updateStrategy, null);
+    }
+
+    /**
+     * @param archetypes storage that places the components of entities with the same component types in shared archetype tables,
+     *                   or null to let each component type store its components separately.
+     */
+    public ConcurrentEntityManager(ArchetypeStorage archetypes) {
+        this(null, null, archetypes);
+    }
+
+    /**
+     * @param name name for this EntityManager.  Used in logging etc.
+     * @param updateStrategy strategy used for updates, can be used to fine-tune the update interval or timestep.
+     *                       If null, uses the default variable timestep update strategy.
+     * @param archetypes storage that places the components of entities with the same component types in shared archetype tables,
+     *                   or null to let each component type store its components separately.
+     */
+    public ConcurrentEntityManager(String name, UpdateStrategy updateStrategy, ArchetypeStorage archetypes) {
         super(name);
         setUpdateStrategy(updateStrategy);
+        this.archetypes = archetypes;
+    }
+
+    /**
+     * @return true if the lowest free entity id is used for new entities, instead of handing out ids in blocks per thread.
+     */
+    public final boolean isPreferLowEntityIds() {
+        return idAllocator.isPreferLowIds();
+    }
+
+    /**
+     * @param preferLowEntityIds if true, new entities get the lowest free entity id, so that the ids stay dense,
+     *                           at the cost of some contention when entities are created from several threads.
+     *                           If false, each thread claims ids in blocks.  Defaults to false.
+     *                           Must be set before any entities are created.
+     */
+    public final void setPreferLowEntityIds(boolean preferLowEntityIds) {
+        synchronized (createDeleteEntityLock) {
+            if (idAllocator.getIdLimit() > MIN_ENTITY_ID) throw new IllegalStateException("The entity id allocation can not be changed after entities have been created");
+            idAllocator = new EntityIdAllocator(MIN_ENTITY_ID, MAX_ENTITY_ID, preferLowEntityIds);
+        }
+    }
+
+    /**
+     * Returns the entity ids that the calling thread has claimed for creating entities but not yet used,
+     * so that they are reused by other threads.  Call this from a thread that is done creating entities.
+     * The ids claimed by threads that have terminated are returned automatically during update.
+     */
+    public final void releaseThreadEntityIds() {
+        idAllocator.releaseThreadBlock();
+    }
+
+    /**
+     * @return executor that processors are updated on, or null if they are updated one at a time in the thread calling update.
+     */
+    public final ExecutorService getProcessorExecutor() {
+        return processorExecutor;
+    }
+
+    /**
+     * @param processorExecutor executor to update processors on, so that processors that do not conflict according to their
+     *                          ProcessorDependencies run in parallel, or null to update them one at a time in the thread calling update.
+     *                          The executor is not shut down by this entity manager.
+     */
+    public final void setProcessorExecutor(ExecutorService processorExecutor) {
+        this.processorExecutor = processorExecutor;
+    }
+
+    /**
+     * @param scheduleDebugOutput stream to print the processor schedule and its critical path to after each update, or null to not print it.
+     */
+    public final void setScheduleDebugOutput(PrintStream scheduleDebugOutput) {
+        this.scheduleDebugOutput = scheduleDebugOutput;
+    }
+
+    /**
+     * @return the schedule used to update the processors, rebuilt if processors or their dependencies have changed.
+     *         Contains the timings of the processors on the latest update.
+     */
+    public final ProcessorScheduler getProcessorScheduler() {
+        if (processorScheduler == null || processorScheduler.isOutdated()) {
+            processorScheduler = new ProcessorScheduler(processors);
+        }
+        return processorScheduler;
+    }
+
+    /**
+     * @return the storage that places the components of entities in archetype tables, or null if archetype storage is not used.
+     */
+    public final ArchetypeStorage getArchetypes() {
+        return archetypes;
     }
 
     /**
@@ -103,14 +272,62 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
         this.updateStrategy = updateStrategy;
     }
 
+    /**
+     * @return maximum number of component blocks moved by incremental compaction of the component types on each update.
+     */
+    public final int getCompactionBlockBudget() {
+        return compactionBlockBudget;
+    }
+
+    /**
+     * @return maximum time in nanoseconds spent on incremental compaction of the component types on each update, or 0 if only the block budget applies.
+     */
+    public final long getCompactionTimeBudgetNanos() {
+        return compactionTimeBudgetNanos;
+    }
+
+    /**
+     * Sets the budget for incremental compaction of the component types, which is done on each update
+     * after scheduled entities have been removed.  Compaction stops when either budget is used up.
+     *
+     * @param maxMovedBlocks maximum number of component blocks moved on each update.  0 disables incremental compaction.
+     * @param maxNanos maximum time in nanoseconds spent on compaction on each update, or 0 if only the block budget applies.
+     *                 The time is checked between steps of a few hundred blocks, so it may be exceeded slightly.
+     */
+    public final void setCompactionBudget(int maxMovedBlocks, long maxNanos) {
+        Check.positiveOrZero(maxMovedBlocks, "maxMovedBlocks");
+        Check.positiveOrZero(maxNanos, "maxNanos");
+
+        compactionBlockBudget = maxMovedBlocks;
+        compactionTimeBudgetNanos = maxNanos;
+    }
+
+    /**
+     * @return number of component blocks moved by incremental compaction during the last update.
+     */
+    public final int getLastCompactionMovedBlocks() {
+        return lastCompactionMovedBlocks;
+    }
+
+    /**
+     * @return time in nanoseconds spent on incremental compaction during the last update.
+     */
+    public final long getLastCompactionNanos() {
+        return lastCompactionNanos;
+    }
+
     @Override public <T extends ComponentType> T addComponentType(T componentType) {
         notNull(componentType, "componentType");
         notContained(componentType, componentTypes, "componentTypes");
         notContained(componentType.getId(), componentTypeLookup, "componentTypeLookup");
 
+        componentType.setTypeIndex(componentTypes.size());
         componentTypes.add(componentType);
         componentTypeLookup.put(componentType.getId(), componentType);
+        componentTypeGroups.add(new ArrayList<EntityGroup>(4));
+        entityComponentTypes.ensureBitCount(componentTypes.size());
         componentType.setEntityManager(this);
+        if (archetypes != null) archetypes.registerComponentType(componentType);
 
         return componentType;
     }
@@ -122,6 +339,7 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
 
         processors.add(processor);
         processor.setEntityManager(this);
+        processorScheduler = null;
 
         // Initialize the processor if the EntityManager is already initialized.
         if (isInitialized()) processor.init(this);
@@ -145,8 +363,17 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
         final int entityId = getNextFreeEntityId();
 
         // Add the components to the entity
-        for (int i = 0; i < initialComponentTypes.length; i++) {
-            initialComponentTypes[i].addToEntity(entityId);
+        if (archetypes != null) {
+            // Place the entity directly in its archetype, instead of moving it through the intermediate ones
+            archetypes.createEntity(entityId, initialComponentTypes);
+            for (int i = 0; i < initialComponentTypes.length; i++) {
+                onComponentAdded(entityId, initialComponentTypes[i]);
+            }
+        }
+        else {
+            for (int i = 0; i < initialComponentTypes.length; i++) {
+                initialComponentTypes[i].addToEntity(entityId);
+            }
         }
 
         // Update groups
@@ -158,12 +385,96 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
         return entityId;
     }
 
+    @Override public int[] createEntities(int count, ComponentType... initialComponentTypes) {
+        Check.positiveOrZero(count, "count");
+        notNull(initialComponentTypes, "initialComponentTypes");
+
+        final int[] entityIds = reserveEntityIds(count);
+        initializeEntities(entityIds, initialComponentTypes);
+        return entityIds;
+    }
+
+    /**
+     * Adds the components to new entities, reserving space in each component type once, and updates the groups for the whole batch.
+     */
+    private void initializeEntities(int[] entityIds, ComponentType[] initialComponentTypes) {
+        if (archetypes != null) {
+            archetypes.createEntities(entityIds, initialComponentTypes);
+        }
+        else {
+            for (int i = 0; i < initialComponentTypes.length; i++) {
+                initialComponentTypes[i].addToEntities(entityIds);
+            }
+        }
+        for (int i = 0; i < initialComponentTypes.length; i++) {
+            final int typeIndex = initialComponentTypes[i].getTypeIndex();
+            for (int entityId : entityIds) {
+                entityComponentTypes.set(entityId, typeIndex);
+            }
+        }
+
+        // Update groups
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).handleEntitiesCreated(entityIds, initialComponentTypes);
+        }
+    }
+
+    @Override public EntityCommandBuffer createCommandBuffer() {
+        synchronized (commandBuffers) {
+            final EntityCommandBuffer commandBuffer = new EntityCommandBuffer();
+            commandBuffers.add(commandBuffer);
+            return commandBuffer;
+        }
+    }
+
+    @Override public void releaseCommandBuffer(EntityCommandBuffer commandBuffer) {
+        notNull(commandBuffer, "commandBuffer");
+
+        synchronized (commandBuffers) {
+            if (!commandBuffers.remove(commandBuffer)) throw new IllegalArgumentException("The command buffer was not created with createCommandBuffer, or has already been released");
+            commandBuffer.clear();
+        }
+    }
+
+    @Override public EntityCommandBuffer getThreadCommandBuffer() {
+        // Only the buffers of processor slots are known not to be recorded into while they are played back
+        final UpdateSlot slot = UpdateSlot.current();
+        if (!slot.isActive()) throw new IllegalStateException("Thread command buffers can only be used while updating a processor, use createCommandBuffer on other threads");
+
+        // Cache the buffer of the slot in it while the processor runs, so it is only looked up once per update
+        EntityCommandBuffer commandBuffer = (EntityCommandBuffer) slot.getAttachment(this);
+        if (commandBuffer == null) {
+            commandBuffer = getSlotCommandBuffer(slot.getProcessorPosition(), slot.getWorkerIndex());
+            slot.setAttachment(this, commandBuffer);
+        }
+        return commandBuffer;
+    }
+
+    private EntityCommandBuffer getSlotCommandBuffer(int processorPosition, int workerIndex) {
+        synchronized (commandBuffers) {
+            if (slotCommandBuffers.length <= processorPosition) {
+                slotCommandBuffers = Arrays.copyOf(slotCommandBuffers, Math.max(processorPosition + 1, processors.size()));
+            }
+
+            EntityCommandBuffer[] workerBuffers = slotCommandBuffers[processorPosition];
+            if (workerBuffers == null || workerBuffers.length <= workerIndex) {
+                workerBuffers = workerBuffers == null ? new EntityCommandBuffer[workerIndex + 1] : Arrays.copyOf(workerBuffers, workerIndex + 1);
+                slotCommandBuffers[processorPosition] = workerBuffers;
+            }
+
+            if (workerBuffers[workerIndex] == null) workerBuffers[workerIndex] = new EntityCommandBuffer();
+            return workerBuffers[workerIndex];
+        }
+    }
+
     @Override public void removeEntity(int entityId) {
-        entitiesToRemove.add(entityId);
+        if (entityId > 0) entitiesToRemove.offer(entityId);
     }
 
     @Override public int getEntityCount() {
-        return existingEntities.size();
+        synchronized (createDeleteEntityLock) {
+            return existingEntities.size();
+        }
     }
 
     @Override public IntSet getEntityIds() {
@@ -171,25 +482,79 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
     }
 
     @Override public EntityGroup getEntityGroup(ComponentType... componentTypes) {
+        return getEntityGroup(EntityQuery.all(componentTypes));
+    }
+
+    @Override public EntityGroup getEntityGroup(EntityQuery query) {
+        notNull(query, "query");
+        groupLookupCount++;
+
+        // Optional types do not affect which entities match, so queries that only differ in them share a group
+        final EntityQuery groupQuery = query.withoutOptionalTypes();
+
         // Find group that matches the criteria
-        for (EntityGroup group : groups) {
-            if (group.matches(componentTypes)) {
-                return group;
-            }
+        final EntityGroup existingGroup = groupLookup.get(groupQuery);
+        if (existingGroup != null) {
+            groupCacheHitCount++;
+            return existingGroup;
         }
 
         // No existing matching group found, create new
-        final EntityGroup group = new EntityGroupImpl(componentTypes);
+        final EntityGroup group = new EntityGroupImpl(groupQuery, entityComponentTypes);
         existingEntities.forEach(new IntConsumer() {
             @Override public void accept(int value) {
                 group.handleExistingEntity(value);
             }
         });
+        group.flushPendingChanges();
         groups.add(group);
+        groupLookup.put(groupQuery, group);
+
+        // Register the group with the component types whose changes it needs to know about
+        registerGroup(group, group.getRequiredComponentTypes());
+        registerGroup(group, group.getForbiddenComponentTypes());
+        registerGroup(group, group.getAnyComponentTypes());
+        if (group.getRequiredComponentTypes().length == 0) groupsWithoutRequiredTypes.add(group);
 
         return group;
     }
 
+    @Override public int restoreStoredEntities() {
+        synchronized (createDeleteEntityLock) {
+            if (!existingEntities.isEmpty()) throw new IllegalStateException("Stored entities must be restored before any entities are created");
+            if (archetypes != null) throw new IllegalStateException("Stored entities can not be restored when archetype storage is used");
+
+            // Load the components stored in the component types
+            for (ComponentType componentType : componentTypes) {
+                componentType.loadStoredComponents();
+            }
+
+            // Register the entities that the components belong to
+            for (ComponentType componentType : componentTypes) {
+                final int typeIndex = componentType.getTypeIndex();
+                for (int entityId : componentType.getEntities()) {
+                    entityComponentTypes.set(entityId, typeIndex);
+                    existingEntities.add(entityId);
+                }
+            }
+
+            // Continue allocating ids after the restored ones
+            idAllocator.restore(existingEntities.toIntArray());
+
+            // Update any already created groups
+            for (final EntityGroup group : groups) {
+                existingEntities.forEach(new IntConsumer() {
+                    @Override public void accept(int entityId) {
+                        group.handleExistingEntity(entityId);
+                    }
+                });
+                group.flushPendingChanges();
+            }
+
+            return existingEntities.size();
+        }
+    }
+
     @Override public void update(Time time) {
         if (!isActive()) throw new IllegalStateException("The EntityManger should be initialized and not shutdown when update is called");
 
@@ -203,13 +568,27 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
     }
 
     private void doUpdte(Time time) {
-        // Update processors
-        for (int i = 0; i < processors.size(); i++) {
-            processors.get(i).update(time);
+        // Merge the group changes made since the last update here, as processors only read the groups while running in parallel
+        for (int i = 0; i < groups.size(); i++) {
+            groups.get(i).flushPendingChanges();
         }
 
+        // Update processors, in parallel where their dependencies allow it
+        final ProcessorScheduler scheduler = getProcessorScheduler();
+        scheduler.update(time, processorExecutor);
+        if (scheduleDebugOutput != null) scheduleDebugOutput.print(scheduler.describe());
+
+        // Apply structural changes recorded by the processors
+        playbackCommandBuffers();
+
         removeEntitiesScheduledForRemoval();
 
+        // Reuse the entity ids left unused by threads that have terminated, e.g. replaced pool threads
+        idAllocator.reclaimFinishedThreadBlocks();
+
+        // Compact component storages a bit at a time, to avoid stalls when many entities are removed at once
+        compactComponentTypes();
+
         // Notify group listeners (mainly processors) of the removed and added entities in each group
         for (EntityGroup group : groups) {
             group.update();
@@ -228,71 +607,445 @@ public final class ConcurrentEntityManager extends ServiceBase implements Entity
         for (Processor processor : processors) {
             processor.shutdown(this);
         }
+
+        // Write any persistent component data, and release the storages
+        for (ComponentType componentType : componentTypes) {
+            componentType.flush();
+            componentType.release();
+        }
     }
 
     @Override public void onComponentAdded(int entityId, ComponentType componentType) {
-        for (int i = 0; i < groups.size(); i++) {
-            groups.get(i).handleComponentAdded(entityId, componentType);
+        final int typeIndex = componentType.getTypeIndex();
+        entityComponentTypes.set(entityId, typeIndex);
+
+        // Only notify the groups that refer to the component type
+        final List<EntityGroup> affectedGroups = componentTypeGroups.get(typeIndex);
+        for (int i = 0; i < affectedGroups.size(); i++) {
+            affectedGroups.get(i).handleComponentAdded(entityId, componentType);
         }
     }
 
     @Override public void onComponentRemoved(int entityId, ComponentType componentType) {
-        for (int i = 0; i < groups.size(); i++) {
-            groups.get(i).handleComponentRemoved(entityId, componentType);
+        final int typeIndex = componentType.getTypeIndex();
+        entityComponentTypes.clear(entityId, typeIndex);
+
+        // Only notify the groups that refer to the component type
+        final List<EntityGroup> affectedGroups = componentTypeGroups.get(typeIndex);
+        for (int i = 0; i < affectedGroups.size(); i++) {
+            affectedGroups.get(i).handleComponentRemoved(entityId, componentType);
+        }
+    }
+
+    /**
+     * @return read only list with the entity groups created so far.
+     */
+    public final List<EntityGroup> getEntityGroups() {
+        return groupsReadOnly;
+    }
+
+    /**
+     * @return number of times an entity group has been requested.
+     */
+    public final long getGroupLookupCount() {
+        return groupLookupCount;
+    }
+
+    /**
+     * @return number of times a requested entity group already existed and was shared.
+     */
+    public final long getGroupCacheHitCount() {
+        return groupCacheHitCount;
+    }
+
+    /**
+     * @return true if the specified entity has a component of the specified type.  Checks the component type bits of the entity.
+     */
+    public final boolean hasComponent(int entityId, ComponentType componentType) {
+        return entityComponentTypes.get(entityId, componentType.getTypeIndex());
+    }
+
+    private void registerGroup(EntityGroup group, ComponentType[] referencedTypes) {
+        for (ComponentType componentType : referencedTypes) {
+            final List<EntityGroup> typeGroups = componentTypeGroups.get(componentType.getTypeIndex());
+            if (!typeGroups.contains(group)) typeGroups.add(group);
         }
     }
 
     private void removeEntitiesScheduledForRemoval() {
-        for (int entityId : entitiesToRemove) {
-            if (existingEntities.contains(entityId)) {
-                // Remove components
-                for (int i = 0; i < componentTypes.size(); i++) {
-                    ComponentType componentType = componentTypes.get(i);
-                    componentType.removeFromEntity(entityId);
+        // Collect the ids of existing entities to remove, in increasing order without duplicates
+        removedEntityCount = 0;
+        entitiesToRemove.drain(removedEntityCollector);
+        if (removedEntityCount == 0) return;
+
+        Arrays.sort(removedEntities, 0, removedEntityCount);
+        int uniqueCount = 0;
+        for (int i = 0; i < removedEntityCount; i++) {
+            final int entityId = removedEntities[i];
+            if ((uniqueCount == 0 || removedEntities[uniqueCount - 1] != entityId) && existingEntities.contains(entityId)) {
+                removedEntities[uniqueCount++] = entityId;
+            }
+        }
+        removedEntityCount = uniqueCount;
+
+        collectRemovedComponents();
+        if (archetypes != null) {
+            // Remove the row of each entity from its archetype at once
+            for (int i = 0; i < removedEntityCount; i++) {
+                archetypes.removeEntity(removedEntities[i]);
+            }
+        }
+        else {
+            // One bulk removal per component type
+            for (int typeIndex = 0; typeIndex < componentTypes.size(); typeIndex++) {
+                if (removedComponentCounts[typeIndex] > 0) {
+                    componentTypes.get(typeIndex).removeFromEntities(removedComponents[typeIndex], removedComponentCounts[typeIndex]);
                 }
+            }
+        }
+        notifyGroupsOfRemovedComponents();
+
+        synchronized (createDeleteEntityLock) {
+            for (int i = 0; i < removedEntityCount; i++) {
+                existingEntities.remove(removedEntities[i]);
+            }
+        }
 
-                // Remove from set of entities
-                existingEntities.remove(entityId);
+        // Groups without required component types may contain entities that were not in any component batch
+        for (int i = 0; i < groupsWithoutRequiredTypes.size(); i++) {
+            groupsWithoutRequiredTypes.get(i).handleEntitiesRemoved(removedEntities, removedEntityCount);
+        }
 
-                // Remove entity from groups
-                for (int i = 0; i < groups.size(); i++) {
-                    groups.get(i).handleEntityRemoved(entityId);
+        // Allow reusing the ids once the groups no longer refer to the entities
+        for (int i = 0; i < removedEntityCount; i++) {
+            entityComponentTypes.clear(removedEntities[i]);
+            idAllocator.free(removedEntities[i]);
+        }
+    }
+
+    /**
+     * Sorts the removed entities by the component types they have, into the removed component ids of each type.
+     */
+    private void collectRemovedComponents() {
+        final int typeCount = componentTypes.size();
+        if (removedComponents.length < typeCount) {
+            removedComponents = Arrays.copyOf(removedComponents, typeCount);
+            removedComponentCounts = Arrays.copyOf(removedComponentCounts, typeCount);
+        }
+        Arrays.fill(removedComponentCounts, 0);
+
+        // Sort the entities by the component types they have, visiting only the types each entity has
+        for (int i = 0; i < removedEntityCount; i++) {
+            final int entityId = removedEntities[i];
+            for (int typeIndex = entityComponentTypes.nextSetBit(entityId, 0);
+                 typeIndex >= 0;
+                 typeIndex = entityComponentTypes.nextSetBit(entityId, typeIndex + 1)) {
+                int[] ids = removedComponents[typeIndex];
+                if (ids == null) {
+                    ids = new int[Math.max(16, removedEntityCount)];
+                    removedComponents[typeIndex] = ids;
+                }
+                else if (removedComponentCounts[typeIndex] >= ids.length) {
+                    ids = Arrays.copyOf(ids, Math.max(ids.length * 2, removedEntityCount));
+                    removedComponents[typeIndex] = ids;
                 }
+                ids[removedComponentCounts[typeIndex]++] = entityId;
+            }
+        }
+    }
+
+    /**
+     * Notifies each group with required component types once about the removed entities.
+     */
+    private void notifyGroupsOfRemovedComponents() {
+        // Every member of a group has all its required types, so the removed entities with the rarest one cover all removed members
+        for (int i = 0; i < groups.size(); i++) {
+            final EntityGroup group = groups.get(i);
+            final ComponentType[] requiredTypes = group.getRequiredComponentTypes();
+            if (requiredTypes.length == 0) continue;
+
+            int smallestType = requiredTypes[0].getTypeIndex();
+            for (int r = 1; r < requiredTypes.length; r++) {
+                final int typeIndex = requiredTypes[r].getTypeIndex();
+                if (removedComponentCounts[typeIndex] < removedComponentCounts[smallestType]) smallestType = typeIndex;
+            }
+            if (removedComponentCounts[smallestType] > 0) {
+                group.handleEntitiesRemoved(removedComponents[smallestType], removedComponentCounts[smallestType]);
             }
         }
+    }
+
+    private void compactComponentTypes() {
+        final long startTime = System.nanoTime();
+        int movedBlocks = 0;
+
+        compaction:
+        for (int i = 0; i < componentTypes.size(); i++) {
+            final ComponentType componentType = componentTypes.get(i);
+            if (!componentType.isIncrementalCompaction()) continue;
+
+            while (movedBlocks < compactionBlockBudget && componentType.isCompactionPending()) {
+                if (compactionTimeBudgetNanos > 0 && System.nanoTime() - startTime >= compactionTimeBudgetNanos) break compaction;
+
+                final int moved = componentType.compact(Math.min(COMPACTION_STEP, compactionBlockBudget - movedBlocks));
+                movedBlocks += moved;
 
-        entitiesToRemove.clear();
+                // Only the storage was shrunk, any further shrinking continues on the next update
+                if (moved == 0) break;
+            }
+        }
+
+        lastCompactionMovedBlocks = movedBlocks;
+        lastCompactionNanos = System.nanoTime() - startTime;
     }
 
     /**
-     * @return next unused entity id.  Wraps around before Integer.MAX_VALUE, and reuses ids of old removed objects.
-     *         0 or negative values are never returned.
-     *         Thread safe (uses a lock).
+     * Reserves ids for entities that are about to be created, and adds them to the existing entities.  Thread safe.
+     * The ids are taken from the lock free id allocator, which reuses the ids of removed entities,
+     * only adding them to the existing entities takes the entity creation lock, once for all the ids.
+     * @param count number of ids to reserve.
+     * @return array with the reserved ids, between MIN_ENTITY_ID and MAX_ENTITY_ID, so never 0 or negative.
      * @throws IllegalStateException if all entity ids are in use.
      */
-    private int getNextFreeEntityId() {
-        int entityId;
+    private int[] reserveEntityIds(int count) {
+        final int[] entityIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            entityIds[i] = idAllocator.allocate();
+        }
+
         synchronized (createDeleteEntityLock) {
-            // By default use the next id from the previous one
-            entityId = lastCreatedEntityId + 1;
+            for (int i = 0; i < count; i++) {
+                existingEntities.add(entityIds[i]);
+            }
+        }
+        return entityIds;
+    }
 
-            // Loop around at end of entity range
-            if (entityId > MAX_ENTITY_ID) entityId = MIN_ENTITY_ID;
+    /**
+     * Applies the commands recorded in the command buffers, one buffer at a time: the buffers of the processors in schedule order,
+     * then the buffers created with createCommandBuffer in creation order.
+     * If a buffer fails, the remaining buffers are still played back, and the first failure is rethrown afterwards.
+     */
+    private void playbackCommandBuffers() {
+        synchronized (commandBuffers) {
+            for (EntityCommandBuffer[] workerBuffers : slotCommandBuffers) {
+                if (workerBuffers == null) continue;
+                for (EntityCommandBuffer commandBuffer : workerBuffers) {
+                    if (commandBuffer != null) playedBackCommandBuffers.add(commandBuffer);
+                }
+            }
+            playedBackCommandBuffers.addAll(commandBuffers);
+        }
 
-            // Use the next entity id if this one is already in use
-            while (existingEntities.contains(entityId)) {
-                // Move to the next
-                entityId++;
+        RuntimeException failure = null;
+        for (int i = 0; i < playedBackCommandBuffers.size(); i++) {
+            final EntityCommandBuffer commandBuffer = playedBackCommandBuffers.get(i);
+            if (!commandBuffer.isEmpty()) {
+                try {
+                    playbackCommandBuffer(commandBuffer);
+                }
+                catch (RuntimeException e) {
+                    if (failure == null) failure = e;
+                }
+                finally {
+                    commandBuffer.clear();
+                }
+            }
+        }
+        playedBackCommandBuffers.clear();
+
+        if (failure != null) throw failure;
+    }
+
+    private void playbackCommandBuffer(EntityCommandBuffer commandBuffer) {
+        final int commandCount = commandBuffer.getCommandCount();
+        if (foldedCommands.length < commandCount) {
+            foldedCommands = new boolean[Math.max(commandCount, foldedCommands.length * 2)];
+        }
+        Arrays.fill(foldedCommands, 0, commandCount, false);
 
-                // Loop around at end of entity range
-                if (entityId > MAX_ENTITY_ID) entityId = MIN_ENTITY_ID;
+        // Create the new entities first, together with the components added to them,
+        // creating entities with the same component types in one batch
+        int[] createdEntityIds = null;
+        final int createdEntityCount = commandBuffer.getCreatedEntityCount();
+        if (createdEntityCount > 0) {
+            createdEntityIds = reserveEntityIds(createdEntityCount);
+            final int maskWords = (componentTypes.size() + 63) >>> 6;
+            foldCreatedComponentTypes(commandBuffer, createdEntityCount, maskWords);
+            createEntitiesInBatches(createdEntityIds, maskWords);
+        }
+
+        // Then apply the other commands in the order they were recorded
+        for (int i = 0; i < commandCount; i++) {
+            final int recordedEntityId = commandBuffer.getEntityId(i);
+            final int entityId = EntityCommandBuffer.isPlaceholderId(recordedEntityId) ? createdEntityIds[EntityCommandBuffer.getCreatedEntityIndex(recordedEntityId)] : recordedEntityId;
+            final Object target = commandBuffer.getTarget(i);
+            final long value = commandBuffer.getValue(i);
 
-                // Check if we looped through all ids
-                if (entityId == lastCreatedEntityId) throw new IllegalStateException("Out of entity ids.  Number of current entities: " + existingEntities.size());
+            switch (commandBuffer.getCommand(i)) {
+                case EntityCommandBuffer.CREATE_ENTITY:
+                    // Already created
+                    break;
+                case EntityCommandBuffer.REMOVE_ENTITY:
+                    removeEntity(entityId);
+                    break;
+                case EntityCommandBuffer.ADD_COMPONENT:
+                    if (!foldedCommands[i]) ((ComponentType) target).addToEntity(entityId);
+                    break;
+                case EntityCommandBuffer.REMOVE_COMPONENT:
+                    ((ComponentType) target).removeFromEntity(entityId);
+                    break;
+                case EntityCommandBuffer.SET_INT:
+                    ((IntProperty) target).set(entityId, (int) value);
+                    break;
+                case EntityCommandBuffer.SET_LONG:
+                    ((LongProperty) target).set(entityId, value);
+                    break;
+                case EntityCommandBuffer.SET_FLOAT:
+                    ((FloatProperty) target).set(entityId, Float.intBitsToFloat((int) value));
+                    break;
+                case EntityCommandBuffer.SET_DOUBLE:
+                    ((DoubleProperty) target).set(entityId, Double.longBitsToDouble(value));
+                    break;
+                case EntityCommandBuffer.SET_BOOL:
+                    ((BoolProperty) target).set(entityId, value != 0);
+                    break;
+                case EntityCommandBuffer.SET_SHORT:
+                    ((ShortProperty) target).set(entityId, (short) value);
+                    break;
+                case EntityCommandBuffer.SET_BYTE:
+                    ((ByteProperty) target).set(entityId, (byte) value);
+                    break;
+                case EntityCommandBuffer.SET_CHAR:
+                    ((CharProperty) target).set(entityId, (char) value);
+                    break;
+                case EntityCommandBuffer.SET_ENUM_ORDINAL:
+                    ((EnumProperty<?>) target).setOrdinal(entityId, (int) value);
+                    break;
+                case EntityCommandBuffer.SET_DICTIONARY_CODE:
+                    ((DictionaryProperty<?>) target).setCode(entityId, (int) value);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown command " + commandBuffer.getCommand(i));
             }
+        }
+    }
+
+    /**
+     * Collects the component types that each entity created in the buffer gets when it is created: the ones added to it
+     * before any removal of the same type, so that applying the rest of the commands in order gives the recorded result.
+     * Marks the folded component additions, they are skipped when the other commands are applied.
+     */
+    private void foldCreatedComponentTypes(EntityCommandBuffer commandBuffer, int createdEntityCount, int maskWords) {
+        final int maskLength = createdEntityCount * maskWords;
+        if (createdTypeMasks.length < maskLength) {
+            createdTypeMasks = new long[Math.max(maskLength, createdTypeMasks.length * 2)];
+            removedTypeMasks = new long[createdTypeMasks.length];
+        }
+        Arrays.fill(createdTypeMasks, 0, maskLength, 0L);
+        Arrays.fill(removedTypeMasks, 0, maskLength, 0L);
+
+        for (int i = 0; i < commandBuffer.getCommandCount(); i++) {
+            final int entityId = commandBuffer.getEntityId(i);
+            final byte command = commandBuffer.getCommand(i);
+            if (!EntityCommandBuffer.isPlaceholderId(entityId) ||
+                (command != EntityCommandBuffer.ADD_COMPONENT && command != EntityCommandBuffer.REMOVE_COMPONENT)) continue;
 
-            // We found a free entity id
-            lastCreatedEntityId = entityId;
+            final int typeIndex = ((ComponentType) commandBuffer.getTarget(i)).getTypeIndex();
+            final int word = EntityCommandBuffer.getCreatedEntityIndex(entityId) * maskWords + (typeIndex >>> 6);
+            final long bit = 1L << typeIndex;
+            if (command == EntityCommandBuffer.REMOVE_COMPONENT) {
+                removedTypeMasks[word] |= bit;
+            }
+            else if ((removedTypeMasks[word] & bit) == 0) {
+                createdTypeMasks[word] |= bit;
+                foldedCommands[i] = true;
+            }
+        }
+    }
+
+    /**
+     * Initializes the created entities with their folded component types, one batch for each distinct set of types.
+     */
+    private void createEntitiesInBatches(int[] createdEntityIds, int maskWords) {
+        final int count = createdEntityIds.length;
+
+        // Sort the created entities by a hash of their component types, with the index of the entity in the low bits
+        if (createdEntityKeys.length < count) {
+            createdEntityKeys = new long[Math.max(count, createdEntityKeys.length * 2)];
+        }
+        for (int i = 0; i < count; i++) {
+            createdEntityKeys[i] = ((long) hashTypeMask(i, maskWords) << 32) | i;
+        }
+        Arrays.sort(createdEntityKeys, 0, count);
+
+        int start = 0;
+        while (start < count) {
+            final int leader = (int) createdEntityKeys[start];
+
+            // Move the following entities with the same types next to the first one, skipping any with a colliding hash
+            int end = start + 1;
+            for (int i = start + 1; i < count && (createdEntityKeys[i] >> 32) == (createdEntityKeys[start] >> 32); i++) {
+                if (sameTypeMask(leader, (int) createdEntityKeys[i], maskWords)) {
+                    final long key = createdEntityKeys[i];
+                    createdEntityKeys[i] = createdEntityKeys[end];
+                    createdEntityKeys[end++] = key;
+                }
+            }
+
+            final int[] entityIds = new int[end - start];
+            for (int i = 0; i < entityIds.length; i++) {
+                entityIds[i] = createdEntityIds[(int) createdEntityKeys[start + i]];
+            }
+            initializeEntities(entityIds, getTypesInMask(leader, maskWords));
+            start = end;
+        }
+    }
+
+    private int hashTypeMask(int createdEntityIndex, int maskWords) {
+        long hash = 0;
+        for (int w = 0; w < maskWords; w++) {
+            hash = hash * 31 + createdTypeMasks[createdEntityIndex * maskWords + w];
+        }
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private boolean sameTypeMask(int createdEntityIndexA, int createdEntityIndexB, int maskWords) {
+        for (int w = 0; w < maskWords; w++) {
+            if (createdTypeMasks[createdEntityIndexA * maskWords + w] != createdTypeMasks[createdEntityIndexB * maskWords + w]) return false;
+        }
+        return true;
+    }
+
+    private ComponentType[] getTypesInMask(int createdEntityIndex, int maskWords) {
+        final int offset = createdEntityIndex * maskWords;
+        int typeCount = 0;
+        for (int w = 0; w < maskWords; w++) {
+            typeCount += Long.bitCount(createdTypeMasks[offset + w]);
+        }
+
+        final ComponentType[] types = new ComponentType[typeCount];
+        int pos = 0;
+        for (int w = 0; w < maskWords; w++) {
+            long bits = createdTypeMasks[offset + w];
+            while (bits != 0) {
+                types[pos++] = componentTypes.get((w << 6) + Long.numberOfTrailingZeros(bits));
+                bits &= bits - 1;
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Reserves the id for one entity that is about to be created, and adds it to the existing entities.
+     * Thread safe, the id is taken from the lock free id allocator, which reuses the ids of removed entities,
+     * and only adding it to the existing entities takes the entity creation lock.
+     * @return the reserved id, between MIN_ENTITY_ID and MAX_ENTITY_ID, so never 0 or negative.
+     * @throws IllegalStateException if all entity ids are in use.
+     */
+    private int getNextFreeEntityId() {
+        final int entityId = idAllocator.allocate();
+        synchronized (createDeleteEntityLock) {
             existingEntities.add(entityId);
         }
         return entityId;
@@ -0,0 +1,295 @@
+package org.entityflow2;
+
+import org.entityflow2.component.*;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Records entity creations and removals, component additions and removals, and property values,
+ * to be applied by the entity manager at the next sync point in its update, after all processors have been updated.
+ *
+ * Lets processors running in parallel make structural changes without touching the component storages or entity groups
+ * that other threads are reading.  Use one buffer per thread, e.g. the one returned by EntityManager.getThreadCommandBuffer.
+ *
+ * Property values can be recorded for the primitive, enum and dictionary properties.  Other property types hold objects
+ * that would have to be retained until playback, so they are set after the entity has been created instead.
+ *
+ * Created entities get a negative placeholder id that can be used in the other commands of the same buffer,
+ * the real id is assigned when the buffer is played back.  Components added to an entity created in the same buffer
+ * are added when the entity is created, before the other commands of the buffer, unless the buffer removes the same
+ * component type from the entity before adding it, in which case that addition is applied in the recorded order.
+ *
+ * The commands are stored in primitive arrays that are reused after playback, so recording does not allocate
+ * once the arrays have grown to the size needed per update.
+ *
+ * Not thread safe, each buffer should only be used by one thread at a time.
+ */
+public final class EntityCommandBuffer {
+
+    static final byte CREATE_ENTITY = 1;
+    static final byte REMOVE_ENTITY = 2;
+    static final byte ADD_COMPONENT = 3;
+    static final byte REMOVE_COMPONENT = 4;
+    static final byte SET_INT = 5;
+    static final byte SET_LONG = 6;
+    static final byte SET_FLOAT = 7;
+    static final byte SET_DOUBLE = 8;
+    static final byte SET_BOOL = 9;
+    static final byte SET_SHORT = 10;
+    static final byte SET_BYTE = 11;
+    static final byte SET_CHAR = 12;
+    static final byte SET_ENUM_ORDINAL = 13;
+    static final byte SET_DICTIONARY_CODE = 14;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private byte[] commands = new byte[INITIAL_CAPACITY];
+    private int[] entityIds = new int[INITIAL_CAPACITY];
+    private Object[] targets = new Object[INITIAL_CAPACITY];
+    private long[] values = new long[INITIAL_CAPACITY];
+    private int commandCount = 0;
+    private int createdEntityCount = 0;
+
+    EntityCommandBuffer() {
+    }
+
+    /**
+     * Records the creation of a new entity without components.
+     * @return placeholder id for the entity, usable in later commands of this buffer until it is played back.
+     */
+    public int createEntity() {
+        final int placeholderId = -(++createdEntityCount);
+        add(CREATE_ENTITY, placeholderId, null, 0);
+        return placeholderId;
+    }
+
+    /**
+     * Records the creation of a new entity with the specified components.
+     * @return placeholder id for the entity, usable in later commands of this buffer until it is played back.
+     */
+    public int createEntity(ComponentType... componentTypes) {
+        notNull(componentTypes, "componentTypes");
+
+        final int placeholderId = createEntity();
+        for (int i = 0; i < componentTypes.length; i++) {
+            addComponent(placeholderId, componentTypes[i]);
+        }
+        return placeholderId;
+    }
+
+    /**
+     * Records the removal of an entity.
+     */
+    public void removeEntity(int entityId) {
+        checkEntityId(entityId);
+        add(REMOVE_ENTITY, entityId, null, 0);
+    }
+
+    /**
+     * Records the addition of a component to an entity.
+     */
+    public void addComponent(int entityId, ComponentType componentType) {
+        checkEntityId(entityId);
+        notNull(componentType, "componentType");
+        add(ADD_COMPONENT, entityId, componentType, 0);
+    }
+
+    /**
+     * Records the removal of a component from an entity.
+     */
+    public void removeComponent(int entityId, ComponentType componentType) {
+        checkEntityId(entityId);
+        notNull(componentType, "componentType");
+        add(REMOVE_COMPONENT, entityId, componentType, 0);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(IntProperty property, int entityId, int value) {
+        checkProperty(property, entityId);
+        add(SET_INT, entityId, property, value);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(LongProperty property, int entityId, long value) {
+        checkProperty(property, entityId);
+        add(SET_LONG, entityId, property, value);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(FloatProperty property, int entityId, float value) {
+        checkProperty(property, entityId);
+        add(SET_FLOAT, entityId, property, Float.floatToRawIntBits(value));
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(DoubleProperty property, int entityId, double value) {
+        checkProperty(property, entityId);
+        add(SET_DOUBLE, entityId, property, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(BoolProperty property, int entityId, boolean value) {
+        checkProperty(property, entityId);
+        add(SET_BOOL, entityId, property, value ? 1 : 0);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(ShortProperty property, int entityId, short value) {
+        checkProperty(property, entityId);
+        add(SET_SHORT, entityId, property, value);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(ByteProperty property, int entityId, byte value) {
+        checkProperty(property, entityId);
+        add(SET_BYTE, entityId, property, value);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public void set(CharProperty property, int entityId, char value) {
+        checkProperty(property, entityId);
+        add(SET_CHAR, entityId, property, value);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The entity should have the component of the property when the buffer is played back.
+     */
+    public <E extends Enum<E>> void set(EnumProperty<E> property, int entityId, E value) {
+        notNull(value, "value");
+        setOrdinal(property, entityId, value.ordinal());
+    }
+
+    /**
+     * Records setting a property of an entity to the enum value with the specified ordinal.
+     * The entity should have the component of the property when the buffer is played back.
+     */
+    public void setOrdinal(EnumProperty<?> property, int entityId, int ordinal) {
+        checkProperty(property, entityId);
+        add(SET_ENUM_ORDINAL, entityId, property, ordinal);
+    }
+
+    /**
+     * Records setting a property of an entity to the value with the specified dictionary code.
+     * The entity should have the component of the property when the buffer is played back.
+     */
+    public void setCode(DictionaryProperty<?> property, int entityId, int code) {
+        checkProperty(property, entityId);
+        add(SET_DICTIONARY_CODE, entityId, property, code);
+    }
+
+    /**
+     * Records setting a property value of an entity.  The value is encoded with the dictionary of the property when it is recorded.
+     * The entity should have the component of the property when the buffer is played back.
+     */
+    public <T> void set(DictionaryProperty<T> property, int entityId, T value) {
+        checkProperty(property, entityId);
+        setCode(property, entityId, property.getDictionary().encode(value));
+    }
+
+    /**
+     * @return number of recorded commands not yet played back.
+     */
+    public int getCommandCount() {
+        return commandCount;
+    }
+
+    /**
+     * @return true if there are no recorded commands.
+     */
+    public boolean isEmpty() {
+        return commandCount == 0;
+    }
+
+    /**
+     * @return number of entities created in this buffer since it was last played back.
+     */
+    public int getCreatedEntityCount() {
+        return createdEntityCount;
+    }
+
+    /**
+     * @return true if the entity id is a placeholder for an entity created in a command buffer.
+     */
+    public static boolean isPlaceholderId(int entityId) {
+        return entityId < 0;
+    }
+
+    /**
+     * Discards the recorded commands, keeping the allocated arrays.
+     */
+    public void clear() {
+        // Release references to the targets
+        Arrays.fill(targets, 0, commandCount, null);
+        commandCount = 0;
+        createdEntityCount = 0;
+    }
+
+    byte getCommand(int index) {
+        return commands[index];
+    }
+
+    int getEntityId(int index) {
+        return entityIds[index];
+    }
+
+    Object getTarget(int index) {
+        return targets[index];
+    }
+
+    long getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return index of the created entity that the placeholder id refers to, from 0 to getCreatedEntityCount (exclusive).
+     */
+    static int getCreatedEntityIndex(int placeholderId) {
+        return -placeholderId - 1;
+    }
+
+    private void add(byte command, int entityId, Object target, long value) {
+        if (commandCount >= commands.length) {
+            final int newCapacity = commands.length * 2;
+            commands = Arrays.copyOf(commands, newCapacity);
+            entityIds = Arrays.copyOf(entityIds, newCapacity);
+            targets = Arrays.copyOf(targets, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        commands[commandCount] = command;
+        entityIds[commandCount] = entityId;
+        targets[commandCount] = target;
+        values[commandCount] = value;
+        commandCount++;
+    }
+
+    private void checkEntityId(int entityId) {
+        if (entityId == 0) throw new IllegalArgumentException("0 is not a valid entity id");
+        if (entityId < 0 && getCreatedEntityIndex(entityId) >= createdEntityCount) {
+            throw new IllegalArgumentException("The placeholder id " + entityId + " was not created by this command buffer");
+        }
+    }
+
+    private void checkProperty(Object property, int entityId) {
+        notNull(property, "property");
+        checkEntityId(entityId);
+    }
+}
@@ -3,6 +3,7 @@ package org.entityflow2;
 import net.openhft.koloboke.collect.set.IntSet;
 import org.entityflow2.component.ComponentType;
 import org.entityflow2.group.EntityGroup;
+import org.entityflow2.group.EntityQuery;
 import org.entityflow2.processor.Processor;
 import org.flowutils.Symbol;
 import org.flowutils.service.Service;
@@ -48,21 +49,78 @@ public interface EntityManager extends Service, Updating {
      */
     int createEntity(List<ComponentType> initialComponentTypes);
 
+    /**
+     * Creates a number of new entities with the specified component types.
+     * Faster than creating the entities one by one, as the ids and component storage are reserved once,
+     * and the entity groups are updated once for the whole batch.
+     * @param count number of entities to create.
+     * @return the ids of the created entities, in increasing order unless ids of removed entities are reused.
+     */
+    int[] createEntities(int count, ComponentType ... initialComponentTypes);
+
+    /**
+     * Creates a new buffer for recording entity and component creations and removals.
+     * The recorded commands are applied after the processors have been updated on each update,
+     * after the buffers of the processors, one buffer at a time in the order the buffers were created.
+     * The buffer is played back and cleared while the entity manager updates, so commands should not be recorded into it
+     * from other threads during the update.  Release it with releaseCommandBuffer when it is no longer needed.
+     */
+    EntityCommandBuffer createCommandBuffer();
+
+    /**
+     * Stops playing back a buffer created with createCommandBuffer, and discards any commands recorded in it since the last update.
+     * @throws IllegalArgumentException if the buffer was not created by this entity manager, or has already been released.
+     */
+    void releaseCommandBuffer(EntityCommandBuffer commandBuffer);
+
+    /**
+     * @return command buffer for the processor that the calling thread is updating.  This is the buffer of the position
+     *         of the processor in the schedule (and of the worker, when its entities are updated in parallel),
+     *         so the buffers are played back in the schedule order regardless of which threads ran the processors.
+     * @throws IllegalStateException if the calling thread is not updating a processor, other threads should use a buffer
+     *         created with createCommandBuffer.
+     */
+    EntityCommandBuffer getThreadCommandBuffer();
+
     /**
      * Deletes the specified entity.
      * If the entityId does not exist, it is ignored.
      */
     void removeEntity(int entityId);
 
+    /**
+     * @return number of existing entities.  Can be called from any thread.
+     */
     int getEntityCount();
 
     /**
+     * The returned set is not synchronized with entity creation and removal, so it should only be read from the
+     * thread that calls update, outside of update, while no other threads are creating or removing entities.
+     *
      * @return read only set with ids of all existing entities.
      */
     IntSet getEntityIds();
 
     EntityGroup getEntityGroup(ComponentType ... componentTypes);
 
+    /**
+     * @param query conditions on the component types of the entities in the group.  Build with EntityQuery.Builder.
+     * @return a group with the entities that match the query.  Queries with the same conditions share the same group,
+     *         which is kept up to date as entities and components are added and removed.
+     */
+    EntityGroup getEntityGroup(EntityQuery query);
+
+    /**
+     * Restores the entities whose components are stored in the data storages of the registered component types,
+     * e.g. in memory mapped files written by an earlier run.
+     * Entities that had no components stored in a data storage are not restored.
+     *
+     * Call after the component types have been added and configured, and before any entities are created.
+     *
+     * @return number of restored entities.
+     */
+    int restoreStoredEntities();
+
     /**
      * Initializes the EntityManager and the registered processors.
      */
@@ -0,0 +1,181 @@
+package org.entityflow2.archetype;
+
+import org.entityflow2.component.ComponentType;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A table of the entities that have exactly the same set of component types.
+ * The rows of the table are stored in chunks owned by the archetype, and the components of the entity on a row are
+ * at the same component index in each of the component types of the archetype, so the data of the entities
+ * is stored densely, in the same order, in each property column.
+ *
+ * Rows are kept densely packed; when an entity leaves the archetype the last row is moved into its place.
+ *
+ * Created and maintained by ArchetypeStorage.
+ */
+public final class Archetype {
+
+    private final int index;
+    private final ComponentType[] componentTypes;
+    private final BitSet signature;
+    private final int chunkShift;
+    private final int chunkMask;
+
+    private int[] chunks = new int[4];
+    private int chunkCount = 0;
+
+    private int[] entityIds = new int[0];
+    private int rowCount = 0;
+
+    private final Map<ComponentType, Archetype> addEdges = new HashMap<ComponentType, Archetype>();
+    private final Map<ComponentType, Archetype> removeEdges = new HashMap<ComponentType, Archetype>();
+
+    Archetype(int index, ComponentType[] componentTypes, BitSet signature, int blocksPerChunk) {
+        this.index = index;
+        this.componentTypes = componentTypes;
+        this.signature = signature;
+        chunkShift = Integer.numberOfTrailingZeros(blocksPerChunk);
+        chunkMask = blocksPerChunk - 1;
+    }
+
+    /**
+     * @return number of component types in this archetype.
+     */
+    public int getComponentTypeCount() {
+        return componentTypes.length;
+    }
+
+    /**
+     * @return the component type with the specified index in this archetype.
+     */
+    public ComponentType getComponentType(int index) {
+        return componentTypes[index];
+    }
+
+    /**
+     * @return true if the entities in this archetype have the specified component type.
+     */
+    public boolean contains(ComponentType componentType) {
+        for (ComponentType type : componentTypes) {
+            if (type == componentType) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return number of entities in this archetype.
+     */
+    public int getEntityCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return id of the entity on the specified row.
+     */
+    public int getEntityId(int row) {
+        if (row < 0 || row >= rowCount) throw new IndexOutOfBoundsException("No row " + row + " in an archetype with " + rowCount + " entities");
+        return entityIds[row];
+    }
+
+    /**
+     * @return the component index of the entity on the specified row, the same in all component types of this archetype.
+     */
+    public int getComponentIndex(int row) {
+        return (chunks[row >>> chunkShift] << chunkShift) | (row & chunkMask);
+    }
+
+    /**
+     * @return number of chunks owned by this archetype.
+     */
+    public int getChunkCount() {
+        return chunkCount;
+    }
+
+    @Override public String toString() {
+        final StringBuilder sb = new StringBuilder("Archetype[");
+        for (int i = 0; i < componentTypes.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(componentTypes[i].getId());
+        }
+        return sb.append("]").toString();
+    }
+
+    final int getIndex() {
+        return index;
+    }
+
+    final BitSet getSignature() {
+        return signature;
+    }
+
+    final ComponentType[] getComponentTypes() {
+        return componentTypes;
+    }
+
+    /**
+     * @return true if a new row needs a chunk added to this archetype first.
+     */
+    final boolean isFull() {
+        return rowCount == chunkCount << chunkShift;
+    }
+
+    final void addChunk(int chunkIndex) {
+        if (chunkCount >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunks.length * 2);
+        }
+        chunks[chunkCount++] = chunkIndex;
+    }
+
+    /**
+     * @return the last chunk of this archetype if it has no rows, after removing it from this archetype, or -1 if the last chunk is in use.
+     */
+    final int removeEmptyLastChunk() {
+        if (chunkCount > 0 && rowCount <= (chunkCount - 1) << chunkShift) {
+            return chunks[--chunkCount];
+        }
+        return -1;
+    }
+
+    /**
+     * Appends a row for the entity.  There must be space for it in the chunks of this archetype.
+     * @return the new row.
+     */
+    final int addRow(int entityId) {
+        if (rowCount >= entityIds.length) {
+            entityIds = Arrays.copyOf(entityIds, Math.max(16, entityIds.length * 2));
+        }
+        entityIds[rowCount] = entityId;
+        return rowCount++;
+    }
+
+    /**
+     * Removes the last row.  The entity on it should already have been moved or removed.
+     */
+    final void removeLastRow() {
+        entityIds[--rowCount] = 0;
+    }
+
+    final void setEntityId(int row, int entityId) {
+        entityIds[row] = entityId;
+    }
+
+    final Archetype getAddEdge(ComponentType componentType) {
+        return addEdges.get(componentType);
+    }
+
+    final void setAddEdge(ComponentType componentType, Archetype target) {
+        addEdges.put(componentType, target);
+    }
+
+    final Archetype getRemoveEdge(ComponentType componentType) {
+        return removeEdges.get(componentType);
+    }
+
+    final void setRemoveEdge(ComponentType componentType, Archetype target) {
+        removeEdges.put(componentType, target);
+    }
+}
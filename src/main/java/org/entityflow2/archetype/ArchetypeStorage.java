@@ -0,0 +1,357 @@
+package org.entityflow2.archetype;
+
+import org.entityflow2.component.ComponentPlacement;
+import org.entityflow2.component.ComponentType;
+import org.entityflow2.storage.ChunkedBlockStorage;
+import org.entityflow2.utils.PagedIntMap;
+import org.flowutils.Check;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Stores the components of entities grouped by archetype, the set of component types that an entity has.
+ * Entities with the same archetype share a table, whose rows are stored in chunks of the component type data columns,
+ * so the components of an entity are at the same component index in each of its component types,
+ * and iterating entities with several component types does not need any entity id lookups.
+ *
+ * Adding or removing a component moves the entity to the archetype with the new set of component types.
+ *
+ * All component types share one space of chunk indexes.  Each chunk is owned by one archetype,
+ * and is only allocated in the component types of that archetype.
+ *
+ * Used by passing it to the constructor of ConcurrentEntityManager, which registers the component types added to it.
+ * The component types can then be used normally through their properties.
+ *
+ * Not thread safe.
+ */
+public final class ArchetypeStorage implements ComponentPlacement {
+
+    /**
+     * Default number of rows in one chunk.
+     */
+    public static final int DEFAULT_BLOCKS_PER_CHUNK = 256;
+
+    private static final int NO_ARCHETYPE = -1;
+
+    private final int blocksPerChunk;
+
+    private final List<ComponentType> componentTypes = new ArrayList<ComponentType>();
+
+    private final List<Archetype> archetypes = new ArrayList<Archetype>();
+    private final List<Archetype> archetypesReadOnly = Collections.unmodifiableList(archetypes);
+    private final Map<BitSet, Archetype> archetypeLookup = new HashMap<BitSet, Archetype>();
+    private final Map<BitSet, List<Archetype>> matchingArchetypes = new HashMap<BitSet, List<Archetype>>();
+
+    private final PagedIntMap entityArchetypes = new PagedIntMap(NO_ARCHETYPE);
+    private final PagedIntMap entityRows = new PagedIntMap(-1);
+
+    private int[] freeChunks = new int[16];
+    private int freeChunkCount = 0;
+    private int nextUnusedChunk = 0;
+
+    /**
+     * Creates a new ArchetypeStorage with the default number of rows per chunk.
+     */
+    public ArchetypeStorage() {
+        this(DEFAULT_BLOCKS_PER_CHUNK);
+    }
+
+    /**
+     * @param blocksPerChunk number of rows in one chunk of an archetype.  Must be a power of two.
+     *                       Smaller chunks waste less memory for archetypes with few entities,
+     *                       larger chunks give longer contiguous runs for bulk operations.
+     */
+    public ArchetypeStorage(int blocksPerChunk) {
+        Check.positive(blocksPerChunk, "blocksPerChunk");
+        if (Integer.bitCount(blocksPerChunk) != 1) throw new IllegalArgumentException("blocksPerChunk must be a power of two, but was " + blocksPerChunk);
+
+        this.blocksPerChunk = blocksPerChunk;
+    }
+
+    /**
+     * @return number of rows in one chunk of an archetype.
+     */
+    public int getBlocksPerChunk() {
+        return blocksPerChunk;
+    }
+
+    /**
+     * Makes the specified component type store its components in this storage.
+     * Typically called by the entity manager.
+     * Must be called before the component type is applied to any entity.
+     */
+    public void registerComponentType(ComponentType componentType) {
+        notNull(componentType, "componentType");
+        if (componentTypes.contains(componentType)) throw new IllegalArgumentException("The component type " + componentType.getId() + " is already registered");
+
+        componentType.setStorageFactory(ChunkedBlockStorage.createFactory(blocksPerChunk));
+        componentType.setPlacement(this);
+        componentTypes.add(componentType);
+    }
+
+    /**
+     * @return the archetypes that currently exist.
+     */
+    public List<Archetype> getArchetypes() {
+        return archetypesReadOnly;
+    }
+
+    /**
+     * @return the archetypes that have all the specified component types.
+     *         The returned list is kept up to date as new archetypes are created.
+     */
+    public List<Archetype> getArchetypes(ComponentType... requiredComponentTypes) {
+        final BitSet required = getSignature(requiredComponentTypes);
+
+        List<Archetype> matching = matchingArchetypes.get(required);
+        if (matching == null) {
+            matching = new ArrayList<Archetype>();
+            for (Archetype archetype : archetypes) {
+                if (containsAll(archetype.getSignature(), required)) matching.add(archetype);
+            }
+            matchingArchetypes.put(required, matching);
+        }
+
+        return Collections.unmodifiableList(matching);
+    }
+
+    /**
+     * @return the archetype of the specified entity, or null if the entity has no components in this storage.
+     */
+    public Archetype getArchetype(int entityId) {
+        final int archetypeIndex = entityArchetypes.get(entityId);
+        return archetypeIndex == NO_ARCHETYPE ? null : archetypes.get(archetypeIndex);
+    }
+
+    /**
+     * Adds components of the specified types to a new entity, placing them directly in the archetype with those types.
+     * The entity manager is not notified.
+     */
+    public void createEntity(int entityId, ComponentType... componentTypes) {
+        notNull(componentTypes, "componentTypes");
+        if (entityArchetypes.containsKey(entityId)) throw new IllegalArgumentException("The entity " + entityId + " already has components");
+        if (componentTypes.length == 0) return;
+
+        insertEntity(entityId, getArchetype(componentTypes));
+    }
+
+    /**
+     * Adds components of the specified types to the new entities, placing them directly in the archetype with those types.
+     * The entity manager is not notified.
+     */
+    public void createEntities(int[] entityIds, ComponentType... componentTypes) {
+        notNull(entityIds, "entityIds");
+        notNull(componentTypes, "componentTypes");
+        if (componentTypes.length == 0) return;
+
+        final Archetype archetype = getArchetype(componentTypes);
+        for (int entityId : entityIds) {
+            if (entityArchetypes.containsKey(entityId)) throw new IllegalArgumentException("The entity " + entityId + " already has components");
+            insertEntity(entityId, archetype);
+        }
+    }
+
+    /**
+     * Removes all components of the specified entity.
+     * The entity manager is not notified.
+     */
+    public void removeEntity(int entityId) {
+        final Archetype archetype = getArchetype(entityId);
+        if (archetype == null) return;
+
+        final int row = entityRows.get(entityId);
+        for (ComponentType componentType : archetype.getComponentTypes()) {
+            componentType.releaseComponent(entityId);
+        }
+        removeRow(archetype, row);
+
+        entityArchetypes.remove(entityId);
+        entityRows.remove(entityId);
+    }
+
+    @Override public void addComponent(int entityId, ComponentType componentType) {
+        final Archetype source = getArchetype(entityId);
+
+        Archetype target;
+        if (source == null) {
+            target = getArchetype(componentType);
+        }
+        else {
+            target = source.getAddEdge(componentType);
+            if (target == null) {
+                final BitSet signature = (BitSet) source.getSignature().clone();
+                signature.set(getComponentTypeIndex(componentType));
+                target = getArchetype(signature);
+                source.setAddEdge(componentType, target);
+            }
+        }
+
+        moveEntity(entityId, source, target);
+    }
+
+    @Override public void removeComponent(int entityId, ComponentType componentType) {
+        final Archetype source = getArchetype(entityId);
+        if (source == null || !source.contains(componentType)) return;
+
+        Archetype target = source.getRemoveEdge(componentType);
+        if (target == null) {
+            final BitSet signature = (BitSet) source.getSignature().clone();
+            signature.clear(getComponentTypeIndex(componentType));
+            target = signature.isEmpty() ? null : getArchetype(signature);
+            if (target != null) source.setRemoveEdge(componentType, target);
+        }
+
+        moveEntity(entityId, source, target);
+    }
+
+    @Override public boolean isComponentIndexShared() {
+        return true;
+    }
+
+    private void insertEntity(int entityId, Archetype archetype) {
+        final int row = appendRow(archetype, entityId);
+        final int componentIndex = archetype.getComponentIndex(row);
+        for (ComponentType componentType : archetype.getComponentTypes()) {
+            componentType.placeComponent(entityId, componentIndex);
+        }
+
+        entityArchetypes.put(entityId, archetype.getIndex());
+        entityRows.put(entityId, row);
+    }
+
+    /**
+     * Moves the entity from the source to the target archetype, either of which may be null for no components.
+     * Components of types in both archetypes keep their values, new components get default values.
+     */
+    private void moveEntity(int entityId, Archetype source, Archetype target) {
+        int targetRow = -1;
+        int targetIndex = -1;
+        if (target != null) {
+            targetRow = appendRow(target, entityId);
+            targetIndex = target.getComponentIndex(targetRow);
+        }
+
+        if (source != null) {
+            for (ComponentType componentType : source.getComponentTypes()) {
+                if (target != null && target.contains(componentType)) {
+                    componentType.relocateComponent(entityId, targetIndex);
+                }
+                else {
+                    componentType.releaseComponent(entityId);
+                }
+            }
+            removeRow(source, entityRows.get(entityId));
+        }
+
+        if (target != null) {
+            for (ComponentType componentType : target.getComponentTypes()) {
+                if (source == null || !source.contains(componentType)) {
+                    componentType.placeComponent(entityId, targetIndex);
+                }
+            }
+
+            entityArchetypes.put(entityId, target.getIndex());
+            entityRows.put(entityId, targetRow);
+        }
+        else {
+            entityArchetypes.remove(entityId);
+            entityRows.remove(entityId);
+        }
+    }
+
+    private int appendRow(Archetype archetype, int entityId) {
+        if (archetype.isFull()) {
+            final int chunkIndex = freeChunkCount > 0 ? freeChunks[--freeChunkCount] : nextUnusedChunk++;
+            for (ComponentType componentType : archetype.getComponentTypes()) {
+                componentType.allocateChunk(chunkIndex);
+            }
+            archetype.addChunk(chunkIndex);
+        }
+
+        return archetype.addRow(entityId);
+    }
+
+    /**
+     * Removes the row, whose components should already have been moved or released, by moving the last row into it.
+     */
+    private void removeRow(Archetype archetype, int row) {
+        final int lastRow = archetype.getEntityCount() - 1;
+        if (row != lastRow) {
+            final int movedEntityId = archetype.getEntityId(lastRow);
+            final int componentIndex = archetype.getComponentIndex(row);
+            for (ComponentType componentType : archetype.getComponentTypes()) {
+                componentType.relocateComponent(movedEntityId, componentIndex);
+            }
+            archetype.setEntityId(row, movedEntityId);
+            entityRows.put(movedEntityId, row);
+        }
+        archetype.removeLastRow();
+
+        // Release the last chunk if it became empty
+        final int emptyChunk = archetype.removeEmptyLastChunk();
+        if (emptyChunk >= 0) {
+            for (ComponentType componentType : archetype.getComponentTypes()) {
+                componentType.releaseChunk(emptyChunk);
+            }
+            if (freeChunkCount >= freeChunks.length) {
+                freeChunks = Arrays.copyOf(freeChunks, freeChunks.length * 2);
+            }
+            freeChunks[freeChunkCount++] = emptyChunk;
+        }
+    }
+
+    private Archetype getArchetype(ComponentType... componentTypes) {
+        return getArchetype(getSignature(componentTypes));
+    }
+
+    private Archetype getArchetype(BitSet signature) {
+        Archetype archetype = archetypeLookup.get(signature);
+        if (archetype == null) {
+            // Create the archetype, with its component types in registration order
+            final ComponentType[] types = new ComponentType[signature.cardinality()];
+            int i = 0;
+            for (int bit = signature.nextSetBit(0); bit >= 0; bit = signature.nextSetBit(bit + 1)) {
+                types[i++] = componentTypes.get(bit);
+            }
+
+            archetype = new Archetype(archetypes.size(), types, signature, blocksPerChunk);
+            archetypes.add(archetype);
+            archetypeLookup.put(signature, archetype);
+
+            // Add to the lists of matching archetypes
+            for (Map.Entry<BitSet, List<Archetype>> entry : matchingArchetypes.entrySet()) {
+                if (containsAll(signature, entry.getKey())) entry.getValue().add(archetype);
+            }
+        }
+        return archetype;
+    }
+
+    private BitSet getSignature(ComponentType... componentTypes) {
+        notNull(componentTypes, "componentTypes");
+        final BitSet signature = new BitSet(this.componentTypes.size());
+        for (ComponentType componentType : componentTypes) {
+            signature.set(getComponentTypeIndex(componentType));
+        }
+        return signature;
+    }
+
+    private int getComponentTypeIndex(ComponentType componentType) {
+        final int index = componentTypes.indexOf(componentType);
+        if (index < 0) throw new IllegalArgumentException("The component type " + componentType.getId() + " is not registered with this ArchetypeStorage");
+        return index;
+    }
+
+    private static boolean containsAll(BitSet signature, BitSet required) {
+        final BitSet missing = (BitSet) required.clone();
+        missing.andNot(signature);
+        return missing.isEmpty();
+    }
+}
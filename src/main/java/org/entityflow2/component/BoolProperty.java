@@ -0,0 +1,58 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.BoolType;
+import org.flowutils.Symbol;
+
+/**
+ * Primitive property accessor.
+ */
+public final class BoolProperty extends PropertyBase<Boolean> {
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     */
+    public BoolProperty(Symbol id,
+                        ComponentType hostComponentType,
+                        boolean defaultValue) {
+        super(id, hostComponentType, defaultValue, BoolType.TYPE, null);
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final boolean get(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getByte(getDataBuffer(componentIndex), getDataOffset(componentIndex)) != 0;
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final boolean get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getByte(getDataBuffer(componentIndex), getDataOffset(componentIndex)) != 0;
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, boolean value) {
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putByte(getDataBuffer(componentIndex), getDataOffset(componentIndex), value ? (byte) 1 : (byte) 0);
+    }
+
+    /**
+     * Set the value of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param value new value for the component property.
+     */
+    public final void set(int entityId, boolean value) {
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putByte(getDataBuffer(componentIndex), getDataOffset(componentIndex), value ? (byte) 1 : (byte) 0);
+    }
+
+}
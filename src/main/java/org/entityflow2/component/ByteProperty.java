@@ -0,0 +1,73 @@
+package org.entityflow2.component;
+
+import org.entityflow2.range.ByteRange;
+import org.entityflow2.type.ByteType;
+import org.flowutils.Symbol;
+
+/**
+ * Primitive property accessor.
+ */
+public final class ByteProperty extends PropertyBase<Byte> {
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param range             allowed value range for this property, or null if no restrictions.
+     */
+    public ByteProperty(Symbol id,
+                        ComponentType hostComponentType,
+                        byte defaultValue,
+                        ByteRange range) {
+        super(id, hostComponentType, defaultValue, ByteType.TYPE, range);
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final byte get(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getByte(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final byte get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getByte(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, byte value) {
+        // Clamp value if needed
+        final ByteRange range = (ByteRange) getRange();
+        if (range != null) {
+            value = range.clampByte(value);
+        }
+
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putByte(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+    /**
+     * Set the value of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param value new value for the component property.
+     */
+    public final void set(int entityId, byte value) {
+        // Clamp value if needed
+        final ByteRange range = (ByteRange) getRange();
+        if (range != null) {
+            value = range.clampByte(value);
+        }
+
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putByte(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+}
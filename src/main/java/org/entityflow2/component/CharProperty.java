@@ -0,0 +1,58 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.CharType;
+import org.flowutils.Symbol;
+
+/**
+ * Primitive property accessor.
+ */
+public final class CharProperty extends PropertyBase<Character> {
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     */
+    public CharProperty(Symbol id,
+                        ComponentType hostComponentType,
+                        char defaultValue) {
+        super(id, hostComponentType, defaultValue, CharType.TYPE, null);
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final char get(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getChar(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final char get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getChar(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, char value) {
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putChar(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+    /**
+     * Set the value of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param value new value for the component property.
+     */
+    public final void set(int entityId, char value) {
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putChar(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+}
@@ -0,0 +1,187 @@
+package org.entityflow2.component;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Iterates the entities that have all of a set of component types, by walking the component blocks of one of them in storage order.
+ * Property accessors that take a cursor read the value at the component index of the current entity directly,
+ * without looking up the entity id.
+ *
+ * The component type with the fewest components is walked, and the component indexes of the other types are looked up
+ * for each visited entity.  A cursor over a single component type is a linear scan over its data.
+ *
+ * If all the component types are stored in an archetype storage, the components of an entity are at the same index
+ * in each type, and only the entity id headers of the other types are compared.
+ * If all the component types use sorted packing, their blocks are in increasing entity id order, and the cursor
+ * walks the blocks of all the types in lockstep (a merge join), so each table is read sequentially without any lookups.
+ *
+ * Components should not be added to or removed from the iterated component types while a cursor is in use.
+ * Not thread safe, use one cursor per thread.
+ */
+public final class ComponentCursor {
+
+    private final ComponentType[] componentTypes;
+    private final int[] componentIndexes;
+    private boolean sharedComponentIndex;
+    private boolean mergeJoin;
+    private final int[] joinPositions;
+
+    private int walkedType;
+    private int position;
+    private int entityId;
+
+    /**
+     * Creates a new cursor, positioned before the first entity.
+     * @param componentTypes the component types that visited entities should have.  At least one is required.
+     */
+    public ComponentCursor(ComponentType... componentTypes) {
+        notNull(componentTypes, "componentTypes");
+        if (componentTypes.length <= 0) throw new IllegalArgumentException("At least one component type is required");
+        for (int i = 0; i < componentTypes.length; i++) {
+            notNull(componentTypes[i], "componentType " + i);
+        }
+
+        this.componentTypes = componentTypes.clone();
+        componentIndexes = new int[componentTypes.length];
+        joinPositions = new int[componentTypes.length];
+
+        reset();
+    }
+
+    /**
+     * Moves the cursor back to before the first entity.
+     */
+    public void reset() {
+        // Walk the component type with the fewest components
+        walkedType = 0;
+        for (int i = 1; i < componentTypes.length; i++) {
+            if (componentTypes[i].getComponentCount() < componentTypes[walkedType].getComponentCount()) {
+                walkedType = i;
+            }
+        }
+
+        // The packing and placement can not change once components have been added, but may still change before that
+        sharedComponentIndex = isComponentIndexShared(componentTypes);
+        mergeJoin = !sharedComponentIndex && componentTypes.length > 1 && isSortedWithoutPlacement(componentTypes);
+
+        position = -1;
+        entityId = 0;
+        Arrays.fill(joinPositions, 0);
+    }
+
+    /**
+     * @return true if the cursor walks the sorted component blocks of all its component types in lockstep.
+     *         Updated on reset.
+     */
+    public boolean isMergeJoin() {
+        return mergeJoin;
+    }
+
+    /**
+     * @return true if the cursor finds the components of the visited entities without looking up their entity ids,
+     *         either because it iterates only one component type, walks sorted blocks in lockstep,
+     *         or the component types share component indexes.  Updated on reset.
+     */
+    public boolean isLookupFree() {
+        return componentTypes.length == 1 || mergeJoin || sharedComponentIndex;
+    }
+
+    /**
+     * Moves the cursor to the next entity that has all the component types.
+     * @return true if the cursor is at an entity, false if there were no more entities.
+     */
+    public boolean next() {
+        final ComponentType walked = componentTypes[walkedType];
+        final int maxComponentIndex = walked.getMaxComponentIndex();
+
+        while (++position <= maxComponentIndex) {
+            final int entityAtPosition = walked.getEntityIdAtComponentIndex(position);
+
+            // Skip free blocks and entities that lack some of the other component types
+            if (entityAtPosition > 0 && lookupComponentIndexes(entityAtPosition)) {
+                entityId = entityAtPosition;
+                return true;
+            }
+        }
+
+        entityId = 0;
+        return false;
+    }
+
+    /**
+     * @return id of the entity that the cursor is at.
+     */
+    public int getEntityId() {
+        return entityId;
+    }
+
+    /**
+     * @return index of the component of the specified type of the entity that the cursor is at.
+     * @throws IllegalArgumentException if the component type is not iterated by this cursor.
+     */
+    public int getComponentIndex(ComponentType componentType) {
+        if (entityId <= 0) throw new IllegalStateException("The cursor is not at an entity");
+
+        for (int i = 0; i < componentTypes.length; i++) {
+            if (componentTypes[i] == componentType) return componentIndexes[i];
+        }
+
+        throw new IllegalArgumentException("The component type " + componentType.getId() + " is not iterated by this cursor");
+    }
+
+    private boolean lookupComponentIndexes(int entity) {
+        for (int i = 0; i < componentTypes.length; i++) {
+            if (i == walkedType) {
+                componentIndexes[i] = position;
+            }
+            else if (mergeJoin) {
+                // Advance past smaller entity ids, the blocks are in increasing entity id order
+                final ComponentType componentType = componentTypes[i];
+                final int maxComponentIndex = componentType.getMaxComponentIndex();
+                int joinPosition = joinPositions[i];
+                int entityAtPosition = 0;
+                while (joinPosition <= maxComponentIndex) {
+                    entityAtPosition = componentType.getEntityIdAtComponentIndex(joinPosition);
+                    if (entityAtPosition >= entity) break;
+                    joinPosition++;
+                }
+                joinPositions[i] = joinPosition;
+
+                if (joinPosition > maxComponentIndex || entityAtPosition != entity) return false;
+                componentIndexes[i] = joinPosition;
+            }
+            else if (sharedComponentIndex) {
+                final ComponentType componentType = componentTypes[i];
+                if (position > componentType.getMaxComponentIndex() ||
+                    componentType.getEntityIdAtComponentIndex(position) != entity) return false;
+                componentIndexes[i] = position;
+            }
+            else {
+                final int componentIndex = componentTypes[i].getComponentIndexOrMissing(entity);
+                if (componentIndex < 0) return false;
+                componentIndexes[i] = componentIndex;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isComponentIndexShared(ComponentType[] componentTypes) {
+        final ComponentPlacement placement = componentTypes[0].getPlacement();
+        if (placement == null || !placement.isComponentIndexShared()) return false;
+
+        for (ComponentType componentType : componentTypes) {
+            if (componentType.getPlacement() != placement) return false;
+        }
+        return true;
+    }
+
+    private static boolean isSortedWithoutPlacement(ComponentType[] componentTypes) {
+        for (ComponentType componentType : componentTypes) {
+            if (componentType.getPacking() != ComponentPacking.SORTED || componentType.getPlacement() != null) return false;
+        }
+        return true;
+    }
+}
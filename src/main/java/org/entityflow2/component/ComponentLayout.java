@@ -0,0 +1,21 @@
+package org.entityflow2.component;
+
+/**
+ * Determines how the buffer stored property values of the components of a ComponentType are laid out in memory.
+ */
+public enum ComponentLayout {
+
+    /**
+     * All properties of a component are stored together in one fixed size block, prefixed with the id of the entity
+     * that the component belongs to.
+     * Good when most properties of a component are accessed together.
+     */
+    INTERLEAVED,
+
+    /**
+     * Each property is stored in its own contiguous column, indexed by component index, and the entity ids are stored in a separate column.
+     * Good for tight loops that only access a few of the properties of a component, as each pass over a property streams through memory.
+     */
+    COLUMNAR
+
+}
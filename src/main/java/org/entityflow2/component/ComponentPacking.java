@@ -0,0 +1,23 @@
+package org.entityflow2.component;
+
+/**
+ * Determines where new components are placed in the data buffer of a ComponentType, and how the space of removed components is reclaimed.
+ */
+public enum ComponentPacking {
+
+    /**
+     * Components are kept sorted by entity id.
+     * Adding a component searches for its place and shifts neighbouring components to make space for it,
+     * removing a component leaves a free block that is reclaimed when the buffer is compacted.
+     * Iterating the components visits the entities in increasing id order.
+     */
+    SORTED,
+
+    /**
+     * Components are kept densely packed at the start of the data buffer, in no particular order.
+     * Adding a component appends it after the last one, removing a component moves the last component into its place.
+     * Both are constant time operations, and the buffer never contains free blocks.
+     */
+    DENSE
+
+}
@@ -0,0 +1,31 @@
+package org.entityflow2.component;
+
+/**
+ * Decides where in the data storage the components of a ComponentType are placed, instead of the component type itself.
+ * Used e.g. by ArchetypeStorage, which places the components of entities with the same set of component types
+ * in shared chunks, at the same component index in all of the component types.
+ *
+ * The placement uses the placement methods of ComponentType (placeComponent, relocateComponent, releaseComponent,
+ * allocateChunk and releaseChunk) to arrange the components.
+ */
+public interface ComponentPlacement {
+
+    /**
+     * Called when a component of the specified type is added to an entity with ComponentType.addToEntity.
+     * Should place the new component, and rearrange any other components of the entity as needed.
+     */
+    void addComponent(int entityId, ComponentType componentType);
+
+    /**
+     * Called when a component of the specified type is removed from an entity with ComponentType.removeFromEntity.
+     * Should release the component, and rearrange any other components of the entity as needed.
+     */
+    void removeComponent(int entityId, ComponentType componentType);
+
+    /**
+     * @return true if the components of an entity are placed at the same component index in all component types
+     *         that use this placement.
+     */
+    boolean isComponentIndexShared();
+
+}
@@ -1,17 +1,32 @@
 package org.entityflow2.component;
 
 import net.openhft.koloboke.collect.Equivalence;
-import net.openhft.koloboke.collect.map.IntIntMap;
 import net.openhft.koloboke.collect.map.ObjObjMap;
 import net.openhft.koloboke.collect.map.hash.*;
-import net.openhft.koloboke.collect.set.IntSet;
 import org.entityflow2.EntityManager;
+import org.entityflow2.memory.MemoryAccess;
+import org.entityflow2.range.ByteRange;
 import org.entityflow2.range.DoubleRange;
 import org.entityflow2.range.FloatRange;
 import org.entityflow2.range.IntRange;
+import org.entityflow2.range.LongRange;
 import org.entityflow2.range.Range;
+import org.entityflow2.range.ShortRange;
+import org.entityflow2.storage.BlockStorage;
+import org.entityflow2.storage.BlockStorageFactory;
+import org.entityflow2.storage.ChunkedBlockStorage;
+import org.entityflow2.storage.ContiguousBlockStorage;
+import org.entityflow2.type.Dictionary;
+import org.entityflow2.type.DictionaryType;
+import org.entityflow2.type.DoubleVectorType;
+import org.entityflow2.type.EnumType;
 import org.entityflow2.type.StringType;
 import org.entityflow2.type.Type;
+import org.entityflow2.utils.PagedIntMap;
+import org.entityflow2.vector.Quat;
+import org.entityflow2.vector.Vec2;
+import org.entityflow2.vector.Vec3;
+import org.entityflow2.vector.Vec4;
 import org.flowutils.Check;
 import org.flowutils.Symbol;
 
@@ -40,7 +55,30 @@ public class ComponentType {
                                                                                .newMutableMap();
 
     private int expectedNumberOfComponents = 1000;
-    private ByteBuffer dataBuffer = null;
+    private ComponentLayout layout = ComponentLayout.INTERLEAVED;
+    private ComponentPacking packing = ComponentPacking.SORTED;
+    private BlockStorageFactory storageFactory = ContiguousBlockStorage.FACTORY;
+    private ComponentPlacement placement = null;
+    private MemoryAccess memoryAccess = MemoryAccess.DEFAULT;
+    private int typeIndex = -1;
+
+    /**
+     * Storages with the stored data values.  The first column holds the entity id headers of the component blocks
+     * (and in the interleaved layout also the values of all properties), any additional columns hold the values of one property each.
+     * Null until the first component has been added.
+     */
+    private BlockStorage[] columns = null;
+
+    /**
+     * Template blocks for each column, holding the default values of the properties.
+     * Copied over the block of a new component to initialize it.
+     */
+    private BlockStorage[] templates = null;
+
+    /**
+     * Properties whose values are stored in object arrays indexed by component index, instead of in the columns.
+     */
+    private PropertyBase[] complexProperties = new PropertyBase[0];
     private int dataBlockSize = 0;
     private int componentCount = 0;
     private int maxComponentIndex = -1;
@@ -48,10 +86,17 @@ public class ComponentType {
     private double growthFactor = 2.0;
     private double expansionThreshold = 0.8;
     private double compactingThreshold = 0.3;
+    private boolean incrementalCompaction = true;
+
+    /**
+     * All component indexes below this are in use, incremental compaction continues from here.
+     */
+    private int compactionTarget = 0;
+    private long compactionMovedBlocks = 0;
 
     private final Object dataBufferWriteLock = new Object();
 
-    private final IntIntMap entityIdToComponentIndex = HashIntIntMaps.newMutableMap();
+    private final PagedIntMap entityIdToComponentIndex = new PagedIntMap(-1);
 
     protected ComponentType() {
         this(null);
@@ -86,6 +131,25 @@ public class ComponentType {
         this.entityManager = entityManager;
     }
 
+    /**
+     * @return index of this component type among the component types of its entity manager, used for the bits of entity component signatures.
+     *         -1 if not yet assigned.
+     */
+    public final int getTypeIndex() {
+        return typeIndex;
+    }
+
+    /**
+     * @param typeIndex index of this component type among the component types of its entity manager.
+     *                  Typically set by the entity manager.
+     */
+    public final void setTypeIndex(int typeIndex) {
+        Check.positiveOrZero(typeIndex, "typeIndex");
+        if (this.typeIndex >= 0) throw new IllegalStateException("Can not set the type index twice");
+
+        this.typeIndex = typeIndex;
+    }
+
     /**
      * @return expected number of components of this type.  Affects how much storage space is initially allocated for component values.
      */
@@ -101,6 +165,108 @@ public class ComponentType {
         this.expectedNumberOfComponents = expectedNumberOfComponents;
     }
 
+    /**
+     * @return how the property values of the components are laid out in memory.
+     */
+    public final ComponentLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * @param layout how the property values of the components should be laid out in memory.
+     *               Defaults to ComponentLayout.INTERLEAVED.
+     *               Must be called before this ComponentType is applied to any entity.
+     */
+    public final void setLayout(ComponentLayout layout) {
+        notNull(layout, "layout");
+        if (inUse) throw new IllegalStateException("Can not change the layout after a component of this type has been added to an entity");
+
+        this.layout = layout;
+    }
+
+    /**
+     * @return memory access used to read and write the primitive values of the components.
+     */
+    public final MemoryAccess getMemoryAccess() {
+        return memoryAccess;
+    }
+
+    /**
+     * @param memoryAccess memory access used to read and write the entity id headers, the default values and the values of
+     *                     primitive properties of the components.  Values of other property types are accessed through their
+     *                     Type, which uses the bounds checked ByteBuffer accessors.
+     *                     Defaults to MemoryAccess.DEFAULT, use e.g. MemoryAccess.createUnchecked to skip bounds checks for one hot
+     *                     component type only.  Unchecked access requires a storage factory whose storages allocate direct buffers
+     *                     in the native byte order, as all the storages of the library do.
+     *                     Must be called before this ComponentType is applied to any entity.
+     */
+    public final void setMemoryAccess(MemoryAccess memoryAccess) {
+        notNull(memoryAccess, "memoryAccess");
+        if (inUse) throw new IllegalStateException("Can not change the memory access after a component of this type has been added to an entity");
+
+        this.memoryAccess = memoryAccess;
+    }
+
+    /**
+     * @return how components are placed in the data buffer when they are added and removed.
+     */
+    public final ComponentPacking getPacking() {
+        return packing;
+    }
+
+    /**
+     * @param packing how components should be placed in the data buffer when they are added and removed.
+     *                Defaults to ComponentPacking.SORTED.
+     *                Must be called before this ComponentType is applied to any entity.
+     */
+    public final void setPacking(ComponentPacking packing) {
+        notNull(packing, "packing");
+        if (inUse) throw new IllegalStateException("Can not change the packing after a component of this type has been added to an entity");
+
+        this.packing = packing;
+    }
+
+    /**
+     * @return factory used to create the storages for the data values of the components.
+     */
+    public final BlockStorageFactory getStorageFactory() {
+        return storageFactory;
+    }
+
+    /**
+     * @param storageFactory factory used to create the storages for the data values of the components.
+     *                       Defaults to ContiguousBlockStorage.FACTORY, use e.g. ChunkedBlockStorage.FACTORY
+     *                       to avoid copying all data when the storage grows.
+     *                       Must be called before this ComponentType is applied to any entity.
+     */
+    public final void setStorageFactory(BlockStorageFactory storageFactory) {
+        notNull(storageFactory, "storageFactory");
+        if (inUse) throw new IllegalStateException("Can not change the storage factory after a component of this type has been added to an entity");
+
+        this.storageFactory = storageFactory;
+    }
+
+    /**
+     * @return the placement that decides where the components of this type are stored, or null if this component type
+     *         places its components itself according to its packing.
+     */
+    public final ComponentPlacement getPlacement() {
+        return placement;
+    }
+
+    /**
+     * @param placement the placement that decides where the components of this type are stored, or null if this component type
+     *                  should place its components itself according to its packing.
+     *                  The storage factory should create ChunkedBlockStorages when a placement is used.
+     *                  Typically set by the entity manager.
+     *                  Must be called before this ComponentType is applied to any entity.
+     */
+    public final void setPlacement(ComponentPlacement placement) {
+        if (inUse) throw new IllegalStateException("Can not change the placement after a component of this type has been added to an entity");
+
+        this.placement = placement;
+    }
+
     /**
      * @return number of components of this type that exists.
      */
@@ -116,90 +282,465 @@ public class ComponentType {
     }
 
     /**
-     * Adds an integer property with unlimited range to this component type.
+     * @return number of components that fit in the currently allocated storage.
+     */
+    public final int getComponentCapacity() {
+        return componentCapacity;
+    }
+
+    /**
+     * @return true if the storage is compacted a bit at a time by calling compact, typically from EntityManager.update,
+     *         false if it is compacted all at once when a component removal drops the number of components low enough.
+     */
+    public final boolean isIncrementalCompaction() {
+        return incrementalCompaction;
+    }
+
+    /**
+     * @param incrementalCompaction true if the storage should be compacted a bit at a time by calling compact, typically from EntityManager.update,
+     *                              false if it should be compacted all at once when a component removal drops the number of components low enough.
+     *                              Defaults to true.
+     */
+    public final void setIncrementalCompaction(boolean incrementalCompaction) {
+        this.incrementalCompaction = incrementalCompaction;
+    }
+
+    /**
+     * @return fraction of the component indexes up to the max component index that are free, 0 if the components are densely packed.
+     */
+    public final double getFragmentation() {
+        final int usedRange = maxComponentIndex + 1;
+        return usedRange <= 0 ? 0.0 : (double) (usedRange - componentCount) / usedRange;
+    }
+
+    /**
+     * @return true if the number of components has dropped so low that the storage should be compacted and shrunk.
+     */
+    public final boolean isCompactionPending() {
+        if (columns == null || placement != null) return false;
+
+        final int compactedSize = (int) (componentCapacity / growthFactor);
+        return compactedSize > expectedNumberOfComponents &&
+               componentCount < compactingThreshold * componentCapacity &&
+               componentCount < compactedSize;
+    }
+
+    /**
+     * @return fraction of the components that are packed at the start of the storage, 1 if no compaction is pending.
+     */
+    public final double getCompactionProgress() {
+        if (!isCompactionPending() || componentCount == 0) return 1.0;
+        return (double) Math.min(compactionTarget, componentCount) / componentCount;
+    }
+
+    /**
+     * @return total number of component blocks moved by compaction.
+     */
+    public final long getCompactionMovedBlocks() {
+        return compactionMovedBlocks;
+    }
+
+    /**
+     * Moves at most the specified number of components towards the start of the storage, if a compaction is pending.
+     * The order of the components is preserved.  Once the components fit in the smaller storage, the storage is shrunk,
+     * which for contiguous storages copies the remaining components once.
+     *
+     * Typically called by the EntityManager on update, within its compaction budget.
+     *
+     * @param maxMovedBlocks maximum number of components to move.
+     * @return number of components moved.
+     */
+    public final int compact(int maxMovedBlocks) {
+        Check.positiveOrZero(maxMovedBlocks, "maxMovedBlocks");
+
+        synchronized (dataBufferWriteLock) {
+            if (!isCompactionPending()) return 0;
+
+            final int compactedSize = (int) (componentCapacity / growthFactor);
+            int movedBlocks = 0;
+
+            // Slide components down into the free blocks, continuing from where the previous call stopped
+            int target = compactionTarget;
+            int source = target + 1;
+            while (maxComponentIndex >= compactedSize && movedBlocks < maxMovedBlocks && target < componentCount) {
+                if (!isFreeComponentIndex(target)) {
+                    target++;
+                    continue;
+                }
+
+                // Find the next component after the free block
+                source = Math.max(source, target + 1);
+                while (isFreeComponentIndex(source)) source++;
+
+                moveComponent(source, target);
+                updateMaxComponentIndexAfterRemoval(source);
+                movedBlocks++;
+                target++;
+            }
+            compactionTarget = target;
+            compactionMovedBlocks += movedBlocks;
+
+            // Shrink when all components fit
+            if (maxComponentIndex < compactedSize) {
+                reallocateDataBuffer(compactedSize);
+            }
+
+            return movedBlocks;
+        }
+    }
+
+    /**
+     * Adds an integer property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final IntProperty addProperty(String id, int defaultValue) {
+        return addProperty(id, defaultValue, (IntRange) null);
+    }
+
+    /**
+     * Adds a float property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final FloatProperty addProperty(String id, float defaultValue) {
+        return addProperty(id, defaultValue, (FloatRange) null);
+    }
+
+    /**
+     * Adds an double property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final DoubleProperty addProperty(String id, double defaultValue) {
+        return addProperty(id, defaultValue, (DoubleRange) null);
+    }
+
+    /**
+     * Adds an integer property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final IntProperty addProperty(String id, int defaultValue, IntRange range) {
+        return addProperty(new IntProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a float property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final FloatProperty addProperty(String id, float defaultValue, FloatRange range) {
+        return addProperty(new FloatProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a double property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final DoubleProperty addProperty(String id, double defaultValue, DoubleRange range) {
+        return addProperty(new DoubleProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a long property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final LongProperty addProperty(String id, long defaultValue) {
+        return addProperty(id, defaultValue, (LongRange) null);
+    }
+
+    /**
+     * Adds a short property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final ShortProperty addProperty(String id, short defaultValue) {
+        return addProperty(id, defaultValue, (ShortRange) null);
+    }
+
+    /**
+     * Adds a byte property with unlimited range to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final ByteProperty addProperty(String id, byte defaultValue) {
+        return addProperty(id, defaultValue, (ByteRange) null);
+    }
+
+    /**
+     * Adds a long property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final LongProperty addProperty(String id, long defaultValue, LongRange range) {
+        return addProperty(new LongProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a short property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final ShortProperty addProperty(String id, short defaultValue, ShortRange range) {
+        return addProperty(new ShortProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a byte property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @param range allowed range for the property.
+     * @return the created property object.
+     */
+    public final ByteProperty addProperty(String id, byte defaultValue, ByteRange range) {
+        return addProperty(new ByteProperty(Symbol.get(id), this, defaultValue, range));
+    }
+
+    /**
+     * Adds a boolean property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final BoolProperty addProperty(String id, boolean defaultValue) {
+        return addProperty(new BoolProperty(Symbol.get(id), this, defaultValue));
+    }
+
+    /**
+     * Adds a char property to this component type.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.
+     * @return the created property object.
+     */
+    public final CharProperty addProperty(String id, char defaultValue) {
+        return addProperty(new CharProperty(Symbol.get(id), this, defaultValue));
+    }
+
+    /**
+     * Adds an enum property to this component type.  The values are stored as their ordinal.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.  Also determines the enum type of the property.
+     * @return the created property object.
+     */
+    public final <E extends Enum<E>> EnumProperty<E> addProperty(String id, E defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new EnumProperty<E>(Symbol.get(id), this, defaultValue, new EnumType<E>(defaultValue.getDeclaringClass())));
+    }
+
+    /**
+     * Adds a two dimensional vector property to this component type.  The value is stored inline in the component.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.  A copy is stored.
+     * @return the created property object.
+     */
+    public final DoubleVectorProperty<Vec2> addProperty(String id, Vec2 defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new DoubleVectorProperty<Vec2>(Symbol.get(id), this, new Vec2(defaultValue), DoubleVectorType.VEC2));
+    }
+
+    /**
+     * Adds a three dimensional vector property to this component type.  The value is stored inline in the component.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.  A copy is stored.
+     * @return the created property object.
+     */
+    public final DoubleVectorProperty<Vec3> addProperty(String id, Vec3 defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new DoubleVectorProperty<Vec3>(Symbol.get(id), this, new Vec3(defaultValue), DoubleVectorType.VEC3));
+    }
+
+    /**
+     * Adds a four dimensional vector property to this component type.  The value is stored inline in the component.
+     * Typically called from the constructor of a descendant ComponentType.
+     *
+     * Must be called before this ComponentType is applied to any entity.
+     *
+     * @param id unique id of the property within this component type.
+     * @param defaultValue default value for the property.  A copy is stored.
+     * @return the created property object.
+     */
+    public final DoubleVectorProperty<Vec4> addProperty(String id, Vec4 defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new DoubleVectorProperty<Vec4>(Symbol.get(id), this, new Vec4(defaultValue), DoubleVectorType.VEC4));
+    }
+
+    /**
+     * Adds a quaternion property to this component type.  The value is stored inline in the component.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
-     * @param defaultValue default value for the property.
+     * @param defaultValue default value for the property.  A copy is stored.
      * @return the created property object.
      */
-    public final IntProperty addProperty(String id, int defaultValue) {
-        return addProperty(id, defaultValue, (IntRange) null);
+    public final DoubleVectorProperty<Quat> addProperty(String id, Quat defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new DoubleVectorProperty<Quat>(Symbol.get(id), this, new Quat(defaultValue), DoubleVectorType.QUAT));
     }
 
     /**
-     * Adds a float property with unlimited range to this component type.
+     * Adds a fixed length double array property to this component type.  The value is stored inline in the component.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
-     * @param defaultValue default value for the property.
+     * @param defaultValue default value for the property.  Determines the length of the array.  A copy is stored.
      * @return the created property object.
      */
-    public final FloatProperty addProperty(String id, float defaultValue) {
-        return addProperty(id, defaultValue, (FloatRange) null);
+    public final DoubleArrayProperty addProperty(String id, double[] defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new DoubleArrayProperty(Symbol.get(id), this, defaultValue.clone()));
     }
 
     /**
-     * Adds an double property with unlimited range to this component type.
+     * Adds a fixed length float array property to this component type.  The value is stored inline in the component.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
-     * @param defaultValue default value for the property.
+     * @param defaultValue default value for the property.  Determines the length of the array.  A copy is stored.
      * @return the created property object.
      */
-    public final DoubleProperty addProperty(String id, double defaultValue) {
-        return addProperty(id, defaultValue, (DoubleRange) null);
+    public final FloatArrayProperty addProperty(String id, float[] defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new FloatArrayProperty(Symbol.get(id), this, defaultValue.clone()));
     }
 
     /**
-     * Adds an integer property to this component type.
+     * Adds a fixed length int array property to this component type.  The value is stored inline in the component.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
-     * @param defaultValue default value for the property.
-     * @param range allowed range for the property.
+     * @param defaultValue default value for the property.  Determines the length of the array.  A copy is stored.
      * @return the created property object.
      */
-    public final IntProperty addProperty(String id, int defaultValue, IntRange range) {
-        return addProperty(new IntProperty(Symbol.get(id), this, defaultValue, range));
+    public final IntArrayProperty addProperty(String id, int[] defaultValue) {
+        notNull(defaultValue, "defaultValue");
+        return addProperty(new IntArrayProperty(Symbol.get(id), this, defaultValue.clone()));
     }
 
     /**
-     * Adds a float property to this component type.
+     * Adds a dictionary encoded property to this component type.
+     * The values are interned in the dictionary, and only their code is stored in the data buffer.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
      * @param defaultValue default value for the property.
-     * @param range allowed range for the property.
+     * @param dictionary dictionary to encode the values with.  Can be shared with other properties.
      * @return the created property object.
      */
-    public final FloatProperty addProperty(String id, float defaultValue, FloatRange range) {
-        return addProperty(new FloatProperty(Symbol.get(id), this, defaultValue, range));
+    public final <T> DictionaryProperty<T> addProperty(String id, T defaultValue, Dictionary<T> dictionary) {
+        return addProperty(id, defaultValue, new DictionaryType<T>(dictionary));
     }
 
     /**
-     * Adds a double property to this component type.
+     * Adds a dictionary encoded property to this component type.
+     * The values are interned in the dictionary of the type, and only their code is stored in the data buffer.
      * Typically called from the constructor of a descendant ComponentType.
      *
      * Must be called before this ComponentType is applied to any entity.
      *
      * @param id unique id of the property within this component type.
      * @param defaultValue default value for the property.
-     * @param range allowed range for the property.
+     * @param type dictionary type to encode the values with.
      * @return the created property object.
      */
-    public final DoubleProperty addProperty(String id, double defaultValue, DoubleRange range) {
-        return addProperty(new DoubleProperty(Symbol.get(id), this, defaultValue, range));
+    public final <T> DictionaryProperty<T> addProperty(String id, T defaultValue, DictionaryType<T> type) {
+        return addProperty(new DictionaryProperty<T>(Symbol.get(id), this, defaultValue, type));
     }
 
     /**
@@ -280,11 +821,22 @@ public class ComponentType {
     }
 
     /**
-     * @return a set with the ids of the entities that have this component.
-     *         The returned set should not be modified!
+     * Collects the ids of the entities that have this component by walking the component block headers,
+     * so it is intended for occasional use such as restoring or debugging, use containedInEntity for lookups.
+     *
+     * @return a new array with the ids of the entities that have this component, in the order their components are stored.
+     *         Without a placement this is in increasing entity id order.
      */
-    public final IntSet getEntities() {
-        return entityIdToComponentIndex.keySet();
+    public final int[] getEntities() {
+        synchronized (dataBufferWriteLock) {
+            final int[] entityIds = new int[componentCount];
+            int count = 0;
+            for (int componentIndex = 0; componentIndex <= maxComponentIndex; componentIndex++) {
+                final int entityId = getEntityIdAtComponentIndex(componentIndex);
+                if (entityId > 0) entityIds[count++] = entityId;
+            }
+            return entityIds;
+        }
     }
 
     /**
@@ -295,22 +847,27 @@ public class ComponentType {
     }
 
     /**
-     * @return data buffer with stored data values of entities of this component type.
+     * @return storage with the stored data values of the specified column of this component type.
      */
-    protected final ByteBuffer getDataBuffer() {
-        return dataBuffer;
+    protected final BlockStorage getColumn(int column) {
+        return columns[column];
     }
 
     /**
-     * @return base offset for the specified entity in the data buffer for this component type.
+     * @return index of the component block of the specified entity in the data columns of this component type.
      */
-    protected final int getEntityOffset(int entity) {
-        if (dataBlockSize <= 0) throw new UnsupportedOperationException("This component has no parameters stored in the data buffer.");
-
-        final int componentIndex = entityIdToComponentIndex.getOrDefault(entity, -2);
+    protected final int getComponentIndex(int entity) {
+        final int componentIndex = entityIdToComponentIndex.get(entity);
         if (componentIndex < 0) throw new IllegalArgumentException("The specified entity "+entity+" does not have the component "+getId()+".");
 
-        return componentIndex * (dataBlockSize + BLOCK_HEADER_SIZE) + BLOCK_HEADER_SIZE;
+        return componentIndex;
+    }
+
+    /**
+     * @return index of the component block of the specified entity, or -1 if the entity does not have this component.
+     */
+    final int getComponentIndexOrMissing(int entity) {
+        return entityIdToComponentIndex.get(entity);
     }
 
     /**
@@ -328,6 +885,83 @@ public class ComponentType {
         }
     }
 
+    /**
+     * Initializes the data storage of this component type, and registers any components that are already present in it,
+     * e.g. in memory mapped files stored by an earlier run (see MappedBlockStorage).
+     * The entity manager is not notified about the loaded components, this is typically called through EntityManager.restoreStoredEntities.
+     *
+     * Values of properties that are not stored in the data buffer are not restored, they will have their default values.
+     *
+     * Must be called before any components of this type are added to entities.
+     *
+     * @return number of components loaded.
+     */
+    public final int loadStoredComponents() {
+        synchronized (dataBufferWriteLock) {
+            if (columns != null) throw new IllegalStateException("Stored components must be loaded before any components are added");
+            if (placement != null) throw new IllegalStateException("Stored components can not be loaded when a placement is used");
+
+            inUse = true;
+            componentCapacity = expectedNumberOfComponents;
+            initializeColumns();
+
+            // Rebuild the entity index from the entity ids in the block headers
+            for (int componentIndex = 0; componentIndex < componentCapacity; componentIndex++) {
+                final int entityId = getEntityIdAtComponentIndex(componentIndex);
+                if (entityId > 0) {
+                    if (entityIdToComponentIndex.containsKey(entityId)) throw new IllegalStateException("The stored data for " + getId() + " contains entity " + entityId + " more than once");
+
+                    entityIdToComponentIndex.put(entityId, componentIndex);
+                    for (PropertyBase property : complexProperties) {
+                        property.initComplexValue(componentIndex);
+                    }
+                    componentCount++;
+                    maxComponentIndex = componentIndex;
+                }
+            }
+
+            if (packing == ComponentPacking.DENSE && maxComponentIndex != componentCount - 1) {
+                throw new IllegalStateException("The stored data for " + getId() + " is not densely packed");
+            }
+
+            return componentCount;
+        }
+    }
+
+    /**
+     * Writes any changes in the data storage of this component type to persistent storage, if it is backed by one.
+     */
+    public final void flush() {
+        synchronized (dataBufferWriteLock) {
+            if (columns != null) {
+                for (BlockStorage column : columns) {
+                    column.flush();
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the data storage of this component type, e.g. closing the files of memory mapped storages.
+     * Called by the entity manager when it is shut down.  The component type should not be used after this.
+     */
+    public final void release() {
+        synchronized (dataBufferWriteLock) {
+            if (columns != null) {
+                for (BlockStorage column : columns) {
+                    column.release();
+                }
+                columns = null;
+            }
+            if (templates != null) {
+                for (BlockStorage template : templates) {
+                    template.release();
+                }
+                templates = null;
+            }
+        }
+    }
+
     /**
      * Adds a new component of this type to the specified entity.
      *
@@ -337,7 +971,18 @@ public class ComponentType {
      * @param entityId id of the entity to add the component to.
      */
     public final void addToEntity(int entityId) {
-        inUse = true;
+        if (placement != null) {
+            // The placement arranges the components
+            synchronized (dataBufferWriteLock) {
+                if (containedInEntity(entityId)) {
+                    throw new IllegalArgumentException("The entity " + entityId + " already has a '"+getId()+"' component, can not add another.");
+                }
+                inUse = true;
+                placement.addComponent(entityId, this);
+            }
+            entityManager.onComponentAdded(entityId, this);
+            return;
+        }
 
         // Get buffer write lock
         synchronized (dataBufferWriteLock) {
@@ -346,40 +991,87 @@ public class ComponentType {
             }
 
             // Reserve the data buffer if needed
-            if (dataBuffer == null) {
+            if (columns == null) {
                 // Not yet initialized
+                inUse = true;
                 componentCapacity = expectedNumberOfComponents;
-                dataBuffer = ByteBuffer.allocateDirect(componentCapacity * (BLOCK_HEADER_SIZE + dataBlockSize));
+                initializeColumns();
             }
             else if (componentCount >= componentCapacity * expansionThreshold) {
                 // Buffer filled, create new larger buffer
-                final int newComponentCapacity = (int) (componentCapacity * growthFactor);
+                final int newComponentCapacity = columns[0].getExpandedCapacity(growthFactor);
                 reallocateDataBuffer(newComponentCapacity);
             }
 
             // Add component:
 
             // Find location where this entityId should be added
-            int componentIndexForNewEntity = findLocationForNewEntityComponent(entityId);
+            final int componentIndexForNewEntity;
+            if (packing == ComponentPacking.DENSE) {
+                // Append after the last component
+                componentIndexForNewEntity = componentCount;
+                maxComponentIndex = componentIndexForNewEntity;
+            }
+            else {
+                componentIndexForNewEntity = findLocationForNewEntityComponent(entityId);
+            }
 
-            // Prefix entity id to the component data block
-            dataBuffer.putInt(componentIndexForNewEntity * (dataBlockSize + BLOCK_HEADER_SIZE), entityId);
+            initializeComponent(componentIndexForNewEntity, entityId);
+        }
 
-            // Store mapping
-            entityIdToComponentIndex.put(entityId, componentIndexForNewEntity);
+        // Notify entity manager about the component addition
+        entityManager.onComponentAdded(entityId, this);
+    }
 
-            // Initialize to default values
-            for (PropertyBase property : properties) {
-                if (property.getType().isByteBufferStorable()) {
-                    property.set(entityId, property.getDefaultValue());
+    /**
+     * Adds new components of this type to the specified new entities.
+     * Space for all the components is reserved at once, and the components are initialized by copying a template block
+     * with the default values.
+     *
+     * The entity manager is not notified about the individual components, this is called by EntityManager.createEntities,
+     * which notifies the entity groups about the whole batch.
+     *
+     * Note that this method is not thread safe, it should not be called while properties of this component may be read or written,
+     * or this component added or removed to entities, in other threads.
+     *
+     * @param entityIds ids of the entities to add the component to.
+     */
+    public final void addToEntities(int[] entityIds) {
+        notNull(entityIds, "entityIds");
+        if (placement != null) throw new IllegalStateException("The components of " + getId() + " are placed by its placement");
+
+        synchronized (dataBufferWriteLock) {
+            for (int entityId : entityIds) {
+                if (entityIdToComponentIndex.containsKey(entityId)) {
+                    throw new IllegalArgumentException("The entity " + entityId + " already has a '"+getId()+"' component, can not add another.");
                 }
             }
 
-            componentCount++;
-        }
+            // Reserve space for all the new components at once
+            final int requiredCapacity = (int) ((componentCount + entityIds.length) / expansionThreshold) + 1;
+            if (columns == null) {
+                // Not yet initialized
+                inUse = true;
+                componentCapacity = Math.max(expectedNumberOfComponents, requiredCapacity);
+                initializeColumns();
+            }
+            else if (requiredCapacity > componentCapacity) {
+                reallocateDataBuffer(Math.max(requiredCapacity, columns[0].getExpandedCapacity(growthFactor)));
+            }
 
-        // Notify entity manager about the component addition
-        entityManager.onComponentAdded(entityId, this);
+            for (int entityId : entityIds) {
+                final int componentIndex;
+                if (packing == ComponentPacking.DENSE) {
+                    componentIndex = componentCount;
+                    maxComponentIndex = componentIndex;
+                }
+                else {
+                    componentIndex = findLocationForNewEntityComponent(entityId);
+                }
+
+                initializeComponent(componentIndex, entityId);
+            }
+        }
     }
 
     /**
@@ -391,57 +1083,250 @@ public class ComponentType {
      * @param entityId id of the entity to remove the component from.
      */
     public final void removeFromEntity(int entityId) {
+        if (placement != null) {
+            // The placement arranges the components
+            final boolean placedComponent;
+            synchronized (dataBufferWriteLock) {
+                placedComponent = containedInEntity(entityId);
+                if (placedComponent) placement.removeComponent(entityId, this);
+            }
+            if (placedComponent) entityManager.onComponentRemoved(entityId, this);
+            return;
+        }
+
         // Get buffer write lock
         boolean containedComponent;
         synchronized (dataBufferWriteLock) {
             containedComponent = entityIdToComponentIndex.containsKey(entityId);
             if (containedComponent) {
-                // Remove any value mappings for complex types
-                for (PropertyBase property : properties) {
-                    property.removeFromEntity(entityId);
-                }
+                freeComponentBlock(entityId);
 
-                // Mark the data buffer entry as free
-                final int componentIndex = entityIdToComponentIndex.get(entityId);
-                dataBuffer.putInt(componentIndex * (dataBlockSize + BLOCK_HEADER_SIZE), 0);
+                // Reduce size of data buffer if we drop below some fill fraction of it, unless compacted incrementally
+                if (!incrementalCompaction) compactDataBufferIfNecessary();
+            }
+        }
 
-                // Update maxComponentIndex
-                if (componentIndex >= 0 && componentIndex >= maxComponentIndex) {
-                    maxComponentIndex = componentIndex - 1;
-                    while (maxComponentIndex >= 0 && isFreeComponentIndex(maxComponentIndex)) {
-                        maxComponentIndex--;
-                    }
+        if (containedComponent) {
+            // Notify entity manager about the component removal
+            entityManager.onComponentRemoved(entityId, this);
+        }
+    }
+
+    /**
+     * Removes the components of this type from the specified entities, taking the buffer lock and compacting only once.
+     * Entities that do not have the component are ignored.
+     *
+     * The entity manager is not notified about the individual components, this is called by the entity manager when removing entities,
+     * which updates the entity groups for the whole batch.
+     *
+     * Note that this method is not thread safe, it should not be called while properties of this component may be read or written,
+     * or this component added or removed to entities, in other threads.
+     *
+     * @param entityIds ids of the entities to remove the component from.
+     * @param count number of ids to use from the start of the array.
+     */
+    public final void removeFromEntities(int[] entityIds, int count) {
+        notNull(entityIds, "entityIds");
+
+        if (placement != null) {
+            // The placement arranges the components
+            synchronized (dataBufferWriteLock) {
+                for (int i = 0; i < count; i++) {
+                    if (containedInEntity(entityIds[i])) placement.removeComponent(entityIds[i], this);
                 }
+            }
+            return;
+        }
+
+        synchronized (dataBufferWriteLock) {
+            for (int i = 0; i < count; i++) {
+                if (entityIdToComponentIndex.containsKey(entityIds[i])) {
+                    freeComponentBlock(entityIds[i]);
+                }
+            }
+
+            if (!incrementalCompaction) compactDataBufferIfNecessary();
+        }
+    }
+
+    /**
+     * Frees the component block of the specified entity, which should have this component.  Call with the buffer write lock held.
+     */
+    private void freeComponentBlock(int entityId) {
+        final int componentIndex = entityIdToComponentIndex.get(entityId);
+
+        // Release any values of complex properties
+        for (PropertyBase property : complexProperties) {
+            property.clearComplexValue(componentIndex);
+        }
+        if (packing == ComponentPacking.DENSE) {
+            // Move the last component into the freed block to keep the components densely packed
+            if (componentIndex != maxComponentIndex) {
+                moveComponent(maxComponentIndex, componentIndex);
+            }
+            else {
+                setEntityIdAtComponentIndex(componentIndex, 0);
+            }
+            maxComponentIndex--;
+        }
+        else {
+            // Mark the data buffer entry as free
+            setEntityIdAtComponentIndex(componentIndex, 0);
+
+            // Update maxComponentIndex
+            updateMaxComponentIndexAfterRemoval(componentIndex);
+        }
+
+        // Remove mapping for the entity, marking that this component is not present in the entity
+        entityIdToComponentIndex.remove(entityId);
+
+        // Update number of components
+        componentCount--;
+
+        // Blocks below the removed one are no longer all in use
+        compactionTarget = Math.min(compactionTarget, componentIndex);
+    }
 
-                // Remove mapping for the entity, marking that this component is not present in the entity
-                entityIdToComponentIndex.remove(entityId);
+    /**
+     * Allocates the chunk with the specified index in all data columns, so that components can be placed in it.
+     * Used by the placement of this component type.  Requires that the storage factory creates ChunkedBlockStorages.
+     */
+    public final void allocateChunk(int chunkIndex) {
+        synchronized (dataBufferWriteLock) {
+            if (columns == null) {
+                inUse = true;
+                componentCapacity = 0;
+                initializeColumns();
+            }
+
+            for (BlockStorage column : columns) {
+                getChunkedColumn(column).allocateChunk(chunkIndex);
+            }
+            componentCapacity = columns[0].getCapacity();
+            updateComplexCapacity();
+        }
+    }
 
-                // Update number of components
-                componentCount--;
+    /**
+     * Releases the chunk with the specified index in all data columns.  It should not contain any components.
+     * Used by the placement of this component type.
+     */
+    public final void releaseChunk(int chunkIndex) {
+        synchronized (dataBufferWriteLock) {
+            if (columns == null) return;
 
-                // Reduce size of data buffer if we drop below some fill fraction of it
-                compactDataBufferIfNecessary();
+            for (BlockStorage column : columns) {
+                getChunkedColumn(column).releaseChunk(chunkIndex);
             }
+            componentCapacity = columns[0].getCapacity();
+            updateComplexCapacity();
         }
+    }
 
-        if (containedComponent) {
-            // Notify entity manager about the component removal
-            entityManager.onComponentRemoved(entityId, this);
+    /**
+     * Adds a component of this type to the entity at the specified component index, which must be free and in an allocated chunk.
+     * The entity manager is not notified.  Used by the placement of this component type.
+     */
+    public final void placeComponent(int entityId, int componentIndex) {
+        synchronized (dataBufferWriteLock) {
+            if (entityIdToComponentIndex.containsKey(entityId)) {
+                throw new IllegalArgumentException("The entity " + entityId + " already has a '"+getId()+"' component, can not add another.");
+            }
+            if (!isFreeComponentIndex(componentIndex)) throw new IllegalArgumentException("The component index " + componentIndex + " is already in use");
+
+            inUse = true;
+            initializeComponent(componentIndex, entityId);
+            maxComponentIndex = Math.max(maxComponentIndex, componentIndex);
+        }
+    }
+
+    /**
+     * Moves the component of the entity to the specified component index, which must be free and in an allocated chunk.
+     * Used by the placement of this component type.
+     */
+    public final void relocateComponent(int entityId, int componentIndex) {
+        synchronized (dataBufferWriteLock) {
+            final int currentIndex = getComponentIndex(entityId);
+            if (currentIndex == componentIndex) return;
+            if (!isFreeComponentIndex(componentIndex)) throw new IllegalArgumentException("The component index " + componentIndex + " is already in use");
+
+            moveComponent(currentIndex, componentIndex);
+            maxComponentIndex = Math.max(maxComponentIndex, componentIndex);
+            updateMaxComponentIndexAfterRemoval(currentIndex);
+        }
+    }
+
+    /**
+     * Removes the component of this type from the entity, leaving its block free.
+     * The entity manager is not notified.  Used by the placement of this component type.
+     */
+    public final void releaseComponent(int entityId) {
+        synchronized (dataBufferWriteLock) {
+            final int componentIndex = getComponentIndex(entityId);
+
+            for (PropertyBase property : complexProperties) {
+                property.clearComplexValue(componentIndex);
+            }
+            setEntityIdAtComponentIndex(componentIndex, 0);
+
+            entityIdToComponentIndex.remove(entityId);
+            componentCount--;
+
+            updateMaxComponentIndexAfterRemoval(componentIndex);
+        }
+    }
+
+    private void updateMaxComponentIndexAfterRemoval(int componentIndex) {
+        if (componentIndex >= maxComponentIndex) {
+            maxComponentIndex = componentIndex - 1;
+            while (maxComponentIndex >= 0 && isFreeComponentIndex(maxComponentIndex)) {
+                maxComponentIndex--;
+            }
+        }
+    }
+
+    private ChunkedBlockStorage getChunkedColumn(BlockStorage column) {
+        if (!(column instanceof ChunkedBlockStorage)) throw new IllegalStateException("The storage factory of " + getId() + " should create ChunkedBlockStorages when a placement is used");
+        return (ChunkedBlockStorage) column;
+    }
+
+    private void updateComplexCapacity() {
+        for (PropertyBase property : complexProperties) {
+            property.setComplexCapacity(componentCapacity, Math.min(componentCapacity, maxComponentIndex + 1));
         }
     }
 
+    private void initializeComponent(int componentIndex, int entityId) {
+        // Initialize to default values
+        for (int column = 0; column < columns.length; column++) {
+            final BlockStorage template = templates[column];
+            final BlockStorage target = columns[column];
+            memoryAccess.copy(template.getBuffer(0), template.getOffset(0),
+                              target.getBuffer(componentIndex), target.getOffset(componentIndex),
+                              target.getBlockSize());
+        }
+        for (PropertyBase property : complexProperties) {
+            property.initComplexValue(componentIndex);
+        }
+
+        // Prefix entity id to the component data block
+        setEntityIdAtComponentIndex(componentIndex, entityId);
+
+        // Store mapping
+        entityIdToComponentIndex.put(entityId, componentIndex);
+
+        componentCount++;
+    }
+
     private int findLocationForNewEntityComponent(int entityId) {
         // Find correct place for the entity, keeping the entities sorted by id
-        int componentIndexForNewEntity = findComponentIndexForNewEntity(entityId);
+        final int precedingComponentIndex = findComponentIndexForNewEntity(entityId);
 
-        // Ensure we have space to add the component for the entity
-        if (componentIndexForNewEntity >= componentCapacity) {
-            // Compact by moving components back from the end of the buffer towards the first free space
-            componentIndexForNewEntity = makeSpaceForComponentAt(componentCapacity - 1);
-        }
-        else if (getEntityIdAtComponentIndex(componentIndexForNewEntity) != 0) {
-            // Compact from the specified index in the shortest direction to a space
-            componentIndexForNewEntity = makeSpaceForComponentAt(componentIndexForNewEntity);
+        // Ensure we have space to add the component for the entity right after the preceding entity
+        int componentIndexForNewEntity = precedingComponentIndex + 1;
+        if (componentIndexForNewEntity >= componentCapacity || getEntityIdAtComponentIndex(componentIndexForNewEntity) != 0) {
+            // Compact from the preceding entity in the shortest direction to a space
+            componentIndexForNewEntity = makeSpaceForComponentAt(precedingComponentIndex);
         }
 
         // Sanity check
@@ -454,19 +1339,27 @@ public class ComponentType {
         return componentIndexForNewEntity;
     }
 
+    /**
+     * @return component index of the entity with the largest id smaller than the specified one, or -1 if there is no such entity.
+     */
     private int findComponentIndexForNewEntity(int entityId) {
         // NOTE: This is a linear search, if the data is tightly packed, a binary search can be more efficient.
         // We start from the end, as typically components are added to entities in order of increasing entity id.
         for (int componentIndex = maxComponentIndex; componentIndex >= 0; componentIndex--) {
-            final int entityIdAtComponentIndex = dataBuffer.getInt(componentIndex * (BLOCK_HEADER_SIZE + dataBlockSize));
+            final int entityIdAtComponentIndex = getEntityIdAtComponentIndex(componentIndex);
 
             if (entityIdAtComponentIndex > 0 && entityIdAtComponentIndex <= entityId) return componentIndex;
         }
 
-        // No components found, can add component at component index 0
-        return 0;
+        // No smaller entities, the component goes before all the others
+        return -1;
     }
 
+    /**
+     * Frees a component block directly after the specified one, by moving the components between it and the nearest free block.
+     * @param componentIndex index of the component that the new component should follow, or -1 to free a block before all components.
+     * @return index of the freed block.
+     */
     private int makeSpaceForComponentAt(int componentIndex) {
 
         // Moves indexes simultaneously back and forward from the ideal insertion spot, trying to find free component blocks
@@ -495,6 +1388,7 @@ public class ComponentType {
                     for (int i = forwardIndex; i > componentIndex + 1; i--) {
                         moveComponent(i - 1, i);
                     }
+                    maxComponentIndex = Math.max(maxComponentIndex, forwardIndex);
 
                     // Space is now cleared for the component
                     return componentIndex + 1;
@@ -538,6 +1432,7 @@ public class ComponentType {
 
                 // Update maxComponentIndex
                 maxComponentIndex = componentCount - 1;
+                compactionTarget = componentCount;
 
                 /*
                 // DEBUG:
@@ -554,49 +1449,159 @@ public class ComponentType {
     }
 
     private void moveComponent(int sourceComponentIndex, int targetComponentIndex) {
-        final int blockSize = dataBlockSize + BLOCK_HEADER_SIZE;
-
         // Get id of entity to be moved
         final int movedEntityId = getEntityIdAtComponentIndex(sourceComponentIndex);
 
-        // Copy source data to target
-        for (int dataIndex = 0; dataIndex < blockSize; dataIndex++) {
-            dataBuffer.put(targetComponentIndex * blockSize + dataIndex, dataBuffer.get(sourceComponentIndex * blockSize + dataIndex));
+        // Copy source data to target in each column
+        for (int column = 0; column < columns.length; column++) {
+            columns[column].copyBlock(sourceComponentIndex, targetComponentIndex, memoryAccess);
+        }
+        for (PropertyBase property : complexProperties) {
+            property.moveComplexValue(sourceComponentIndex, targetComponentIndex);
         }
 
         if (movedEntityId != 0) {
             // Clear entity id at source
-            dataBuffer.putInt(sourceComponentIndex * blockSize, 0);
+            setEntityIdAtComponentIndex(sourceComponentIndex, 0);
 
             // Update mapping
             entityIdToComponentIndex.put(movedEntityId, targetComponentIndex);
         }
     }
 
+    /**
+     * @return one past the largest component index in use, the end of the range bulk operations need to process.
+     */
+    final int getComponentIndexEnd() {
+        return maxComponentIndex + 1;
+    }
+
+    /**
+     * @param componentIndex start of the run.
+     * @param endIndex end of the range being processed, exclusive.
+     * @return number of components in use from the specified component index onwards, that are stored after each other
+     *         in the same buffer in every column, or 0 if the component index is not in use.
+     */
+    final int getRunLength(int componentIndex, int endIndex) {
+        if (isFreeComponentIndex(componentIndex)) return 0;
+
+        int runLength = endIndex - componentIndex;
+        for (BlockStorage column : columns) {
+            runLength = Math.min(runLength, column.getContiguousBlockCount(componentIndex));
+        }
+
+        // With sorted packing there may be free blocks between the components
+        if (componentCount <= maxComponentIndex) {
+            for (int i = 1; i < runLength; i++) {
+                if (isFreeComponentIndex(componentIndex + i)) return i;
+            }
+        }
+
+        return runLength;
+    }
+
     private boolean isFreeComponentIndex(final int componentIndex) {
         return getEntityIdAtComponentIndex(componentIndex) == 0;
     }
 
-    private int getEntityIdAtComponentIndex(int index) {
-        return dataBuffer.getInt(index * (BLOCK_HEADER_SIZE + dataBlockSize));
+    final int getEntityIdAtComponentIndex(int index) {
+        final BlockStorage headers = columns[0];
+        final ByteBuffer buffer = headers.getBuffer(index);
+
+        // Chunks may be unallocated when a placement is used
+        if (buffer == null) return 0;
+
+        return memoryAccess.getInt(buffer, headers.getOffset(index));
+    }
+
+    private void setEntityIdAtComponentIndex(int index, int entityId) {
+        final BlockStorage headers = columns[0];
+        memoryAccess.putInt(headers.getBuffer(index), headers.getOffset(index), entityId);
     }
 
+    private void initializeColumns() {
+        if (layout == ComponentLayout.COLUMNAR) {
+            // The first column holds the entity ids, followed by one column for each property stored in the data buffer
+            int columnCount = 1;
+            for (PropertyBase property : properties) {
+                if (property.getType().isByteBufferStorable()) columnCount++;
+            }
+
+            columns = new BlockStorage[columnCount];
+            columns[0] = storageFactory.createBlockStorage(getId().toString(), BLOCK_HEADER_SIZE, componentCapacity);
+
+            int column = 1;
+            for (PropertyBase property : properties) {
+                if (property.getType().isByteBufferStorable()) {
+                    columns[column] = storageFactory.createBlockStorage(getId() + "." + property.getId(),
+                                                                        property.getType().getDataLengthBytes(),
+                                                                        componentCapacity);
+                    property.setColumn(columns[column], 0);
+                    column++;
+                }
+            }
+        }
+        else {
+            // All data is interleaved in one column, with the entity id header at the start of each block
+            columns = new BlockStorage[] {storageFactory.createBlockStorage(getId().toString(),
+                                                                            BLOCK_HEADER_SIZE + dataBlockSize,
+                                                                            componentCapacity)};
+
+            for (PropertyBase property : properties) {
+                if (property.getType().isByteBufferStorable()) {
+                    property.setColumn(columns[0], BLOCK_HEADER_SIZE + property.getValueOffset());
+                }
+            }
+        }
+
+        // The storages may have rounded up the capacity
+        componentCapacity = columns[0].getCapacity();
+
+        // Write the default values of the properties to a template block for each column
+        templates = new BlockStorage[columns.length];
+        for (int column = 0; column < columns.length; column++) {
+            templates[column] = new ContiguousBlockStorage(columns[column].getBlockSize(), 1);
+        }
+        int column = 1;
+        for (PropertyBase property : properties) {
+            if (!property.isComplex()) {
+                if (layout == ComponentLayout.COLUMNAR) {
+                    property.writeDefaultValue(templates[column].getBuffer(0), 0);
+                    column++;
+                }
+                else {
+                    property.writeDefaultValue(templates[0].getBuffer(0), BLOCK_HEADER_SIZE + property.getValueOffset());
+                }
+            }
+        }
+
+        // Values of complex properties are stored in object arrays aligned with the columns
+        int complexCount = 0;
+        for (PropertyBase property : properties) {
+            if (property.isComplex()) complexCount++;
+        }
+        complexProperties = new PropertyBase[complexCount];
+        int complexIndex = 0;
+        for (PropertyBase property : properties) {
+            if (property.isComplex()) {
+                property.setComplexCapacity(componentCapacity, 0);
+                complexProperties[complexIndex++] = property;
+            }
+        }
+    }
 
     private void reallocateDataBuffer(int newComponentCapacity) {
         if (newComponentCapacity < maxComponentIndex) throw new IllegalArgumentException("Existing components will not fit");
 
-        // Allocate new buffer
-        final int blockSize = BLOCK_HEADER_SIZE + dataBlockSize;
-        final ByteBuffer newDataBuffer = ByteBuffer.allocateDirect(newComponentCapacity * blockSize);
-
-        // Copy over existing values
-        dataBuffer.clear();
-        dataBuffer.position(0);
-        dataBuffer.limit((maxComponentIndex+1) * blockSize);
-        newDataBuffer.put(dataBuffer);
-        newDataBuffer.clear();
-        dataBuffer = newDataBuffer;
-        componentCapacity = newComponentCapacity;
+        for (BlockStorage column : columns) {
+            column.setCapacity(newComponentCapacity, maxComponentIndex + 1);
+        }
+
+        componentCapacity = columns[0].getCapacity();
+
+        for (PropertyBase property : complexProperties) {
+            property.setComplexCapacity(componentCapacity, maxComponentIndex + 1);
+        }
     }
 
 
@@ -0,0 +1,93 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.Dictionary;
+import org.entityflow2.type.DictionaryType;
+import org.flowutils.Symbol;
+
+/**
+ * Accessor for a dictionary encoded property.
+ * The values are stored as their dictionary code in the data buffer, and decoded with an array lookup when read.
+ */
+public final class DictionaryProperty<T> extends PropertyBase<T> {
+
+    private final DictionaryType<T> dictionaryType;
+    private final Dictionary<T> dictionary;
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param dictionaryType    type with the dictionary used to encode the values.
+     */
+    public DictionaryProperty(Symbol id,
+                              ComponentType hostComponentType,
+                              T defaultValue,
+                              DictionaryType<T> dictionaryType) {
+        super(id, hostComponentType, defaultValue, dictionaryType, null);
+        this.dictionaryType = dictionaryType;
+        dictionary = dictionaryType.getDictionary();
+    }
+
+    /**
+     * @return dictionary used to encode the values of this property.
+     */
+    public final Dictionary<T> getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final T get(int entityId) {
+        return dictionary.decode(getCode(entityId));
+    }
+
+    /**
+     * @return dictionary code of the value of the property for the specified entity
+     */
+    public final int getCode(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return dictionaryType.readCode(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final T get(ComponentCursor cursor) {
+        return dictionary.decode(getCode(cursor));
+    }
+
+    /**
+     * @return dictionary code of the value of the property for the entity that the cursor is at.
+     */
+    public final int getCode(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return dictionaryType.readCode(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at to the value with the specified dictionary code.
+     */
+    public final void setCode(ComponentCursor cursor, int code) {
+        checkCode(code);
+        final int componentIndex = getComponentIndex(cursor);
+        dictionaryType.writeCode(getDataBuffer(componentIndex), getDataOffset(componentIndex), code);
+    }
+
+    /**
+     * Set the value of this property for the specified entity to the value with the specified dictionary code.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param code dictionary code of the new value for the component property.
+     */
+    public final void setCode(int entityId, int code) {
+        checkCode(code);
+        final int componentIndex = getComponentIndex(entityId);
+        dictionaryType.writeCode(getDataBuffer(componentIndex), getDataOffset(componentIndex), code);
+    }
+
+    private void checkCode(int code) {
+        if (code < 0 || code >= dictionary.size()) throw new IllegalArgumentException("No value with the code " + code + " in the dictionary");
+    }
+
+}
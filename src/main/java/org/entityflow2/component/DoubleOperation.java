@@ -0,0 +1,14 @@
+package org.entityflow2.component;
+
+/**
+ * Operation applied to the values of a DoubleProperty in bulk, see DoubleProperty.apply.
+ */
+public interface DoubleOperation {
+
+    /**
+     * @param value current value of the property for a component.
+     * @return new value of the property for the component.
+     */
+    double apply(double value);
+
+}
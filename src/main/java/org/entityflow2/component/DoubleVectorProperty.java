@@ -0,0 +1,74 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.DoubleVectorType;
+import org.entityflow2.vector.DoubleVector;
+import org.flowutils.Symbol;
+
+/**
+ * Accessor for a vector property that is stored inline in the component.
+ * The whole vector can be read into a reusable holder with get(entityId, out) and written with set(entityId, value),
+ * and single lanes can be accessed as primitive doubles.
+ */
+public final class DoubleVectorProperty<V extends DoubleVector> extends PropertyBase<V> {
+
+    private final DoubleVectorType<V> vectorType;
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param vectorType        type of the vector.
+     */
+    public DoubleVectorProperty(Symbol id,
+                                ComponentType hostComponentType,
+                                V defaultValue,
+                                DoubleVectorType<V> vectorType) {
+        super(id, hostComponentType, defaultValue, vectorType, null);
+        this.vectorType = vectorType;
+    }
+
+    /**
+     * @return number of lanes in the vector.
+     */
+    public final int getLaneCount() {
+        return vectorType.getLaneCount();
+    }
+
+    /**
+     * @return value of the specified lane of the property for the specified entity
+     */
+    public final double getLane(int entityId, int lane) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return vectorType.readLane(getDataBuffer(componentIndex), getDataOffset(componentIndex), lane);
+    }
+
+    /**
+     * @return value of the specified lane of the property for the entity that the cursor is at.
+     */
+    public final double getLane(ComponentCursor cursor, int lane) {
+        final int componentIndex = getComponentIndex(cursor);
+        return vectorType.readLane(getDataBuffer(componentIndex), getDataOffset(componentIndex), lane);
+    }
+
+    /**
+     * Set the value of the specified lane of this property for the entity that the cursor is at.
+     */
+    public final void setLane(ComponentCursor cursor, int lane, double value) {
+        final int componentIndex = getComponentIndex(cursor);
+        vectorType.writeLane(getDataBuffer(componentIndex), getDataOffset(componentIndex), lane, value);
+    }
+
+    /**
+     * Set the value of the specified lane of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param lane lane of the vector to change.
+     * @param value new value for the lane.
+     */
+    public final void setLane(int entityId, int lane, double value) {
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        vectorType.writeLane(getDataBuffer(componentIndex), getDataOffset(componentIndex), lane, value);
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.EnumType;
+import org.flowutils.Symbol;
+
+/**
+ * Enum property accessor.  The values are stored as their ordinal, so reading and writing them does not allocate.
+ * Values are set with the inherited set methods, or by ordinal.
+ */
+public final class EnumProperty<E extends Enum<E>> extends PropertyBase<E> {
+
+    private final EnumType<E> enumType;
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param enumType          type describing the enum values.
+     */
+    public EnumProperty(Symbol id,
+                        ComponentType hostComponentType,
+                        E defaultValue,
+                        EnumType<E> enumType) {
+        super(id, hostComponentType, defaultValue, enumType, null);
+        this.enumType = enumType;
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final E get(int entityId) {
+        return enumType.getValue(getOrdinal(entityId));
+    }
+
+    /**
+     * @return ordinal of the value of the property for the specified entity
+     */
+    public final int getOrdinal(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return enumType.readOrdinal(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final E get(ComponentCursor cursor) {
+        return enumType.getValue(getOrdinal(cursor));
+    }
+
+    /**
+     * @return ordinal of the value of the property for the entity that the cursor is at.
+     */
+    public final int getOrdinal(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return enumType.readOrdinal(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at to the enum value with the specified ordinal.
+     */
+    public final void setOrdinal(ComponentCursor cursor, int ordinal) {
+        checkOrdinal(ordinal);
+        final int componentIndex = getComponentIndex(cursor);
+        enumType.writeOrdinal(getDataBuffer(componentIndex), getDataOffset(componentIndex), ordinal);
+    }
+
+    /**
+     * Set the value of this property for the specified entity to the enum value with the specified ordinal.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param ordinal ordinal of the new value for the component property.
+     */
+    public final void setOrdinal(int entityId, int ordinal) {
+        checkOrdinal(ordinal);
+        final int componentIndex = getComponentIndex(entityId);
+        enumType.writeOrdinal(getDataBuffer(componentIndex), getDataOffset(componentIndex), ordinal);
+    }
+
+    private void checkOrdinal(int ordinal) {
+        if (ordinal < 0 || ordinal >= enumType.getValueCount()) throw new IllegalArgumentException("No value with the ordinal " + ordinal + " in " + enumType.getValueClass().getSimpleName());
+    }
+
+}
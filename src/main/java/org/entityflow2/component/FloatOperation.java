@@ -0,0 +1,14 @@
+package org.entityflow2.component;
+
+/**
+ * Operation applied to the values of a FloatProperty in bulk, see FloatProperty.apply.
+ */
+public interface FloatOperation {
+
+    /**
+     * @param value current value of the property for a component.
+     * @return new value of the property for the component.
+     */
+    float apply(float value);
+
+}
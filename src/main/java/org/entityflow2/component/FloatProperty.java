@@ -1,14 +1,29 @@
 package org.entityflow2.component;
 
+import org.entityflow2.group.EntityGroup;
+import org.entityflow2.group.SortedEntityIds;
+import org.entityflow2.memory.MemoryAccess;
 import org.entityflow2.range.FloatRange;
 import org.entityflow2.type.FloatType;
 import org.flowutils.Symbol;
 
+import java.nio.ByteBuffer;
+
+import static org.flowutils.Check.notNull;
+
 /**
  * Primitive property accessor.
+ * Also provides bulk operations that process the values of all components in one pass over the data columns.
  */
 public final class FloatProperty extends PropertyBase<Float> {
 
+    private static final int FILL = 0;
+    private static final int COPY = 1;
+    private static final int ADD_SCALED = 2;
+    private static final int SCALE = 3;
+    private static final int CLAMP = 4;
+    private static final int OPERATION = 5;
+
     /**
      * @param id                unique id of this property within the component type that it belongs to.
      * @param hostComponentType the componentType that this Property belongs to.
@@ -27,7 +42,30 @@ public final class FloatProperty extends PropertyBase<Float> {
      */
     public final float get(int entityId) {
         // Read value from buffer
-        return FloatType.TYPE.readFloatValue(getDataBuffer(), getParameterOffset(entityId));
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getFloat(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final float get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getFloat(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, float value) {
+        // Clamp value if needed
+        final FloatRange range = (FloatRange) getRange();
+        if (range != null) {
+            value = range.clampFloat(value);
+        }
+
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putFloat(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
     }
 
     /**
@@ -43,7 +81,171 @@ public final class FloatProperty extends PropertyBase<Float> {
         }
 
         // Write value to buffer
-        FloatType.TYPE.writeFloatValue(getDataBuffer(), getParameterOffset(entityId), value);
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putFloat(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+    /**
+     * Sets the value of this property to the specified value in all components.
+     */
+    public final void fill(float value) {
+        final FloatRange range = (FloatRange) getRange();
+        if (range != null) {
+            value = range.clampFloat(value);
+        }
+
+        applyKernel(FILL, value, null, null, null);
+    }
+
+    /**
+     * Copies the values of the source property to this property in all components.
+     * @param source property of the same component type to copy the values from.
+     */
+    public final void copyFrom(FloatProperty source) {
+        notNull(source, "source");
+        applyKernel(COPY, 0, source, null, null);
+    }
+
+    /**
+     * Adds the values of the source property multiplied by the factor to the values of this property, in all components.
+     * @param factor value to multiply the values of the source with.
+     * @param source property of the same component type to add to this property.  Can be this property.
+     */
+    public final void addScaled(float factor, FloatProperty source) {
+        notNull(source, "source");
+        applyKernel(ADD_SCALED, factor, source, null, null);
+    }
+
+    /**
+     * Multiplies the value of this property with the factor in all components.
+     */
+    public final void scale(float factor) {
+        applyKernel(SCALE, factor, null, null, null);
+    }
+
+    /**
+     * Clamps the value of this property to the specified range in all components.
+     */
+    public final void clamp(FloatRange range) {
+        notNull(range, "range");
+        applyKernel(CLAMP, 0, null, null, range);
+    }
+
+    /**
+     * Applies the operation to the value of this property in all components.
+     */
+    public final void apply(FloatOperation operation) {
+        notNull(operation, "operation");
+        applyKernel(OPERATION, 0, null, operation, null);
+    }
+
+    /**
+     * Applies the operation to the value of this property for all entities in the group.
+     * The group should only contain entities that have the component type of this property.
+     */
+    public final void apply(EntityGroup group, FloatOperation operation) {
+        notNull(group, "group");
+        notNull(operation, "operation");
+
+        final FloatRange range = (FloatRange) getRange();
+        final SortedEntityIds entities = group.getEntities();
+        final MemoryAccess memory = getMemoryAccess();
+        for (int i = 0; i < entities.size(); i++) {
+            final int componentIndex = getComponentIndex(entities.get(i));
+            final ByteBuffer buffer = getDataBuffer(componentIndex);
+            final int offset = getDataOffset(componentIndex);
+            float value = operation.apply(memory.getFloat(buffer, offset));
+            if (range != null) {
+                value = range.clampFloat(value);
+            }
+            memory.putFloat(buffer, offset, value);
+        }
+    }
+
+    private void applyKernel(final int kernel, final float a, final FloatProperty source, final FloatOperation operation, final FloatRange clampRange) {
+        final ComponentType componentType = getComponentType();
+        if (source != null && source.getComponentType() != componentType) {
+            throw new IllegalArgumentException("The source property should belong to the same component type " + componentType.getId() + ", but it belongs to " + source.getComponentType().getId());
+        }
+
+        // Also clamp the results of the other kernels to the range of the property, if it has one
+        final FloatRange range = kernel == FILL ? null : kernel == CLAMP ? clampRange : (FloatRange) getRange();
+
+        final MemoryAccess memory = getMemoryAccess();
+        final int stride = getDataStride();
+        final int sourceStride = source != null ? source.getDataStride() : 0;
+        final int end = componentType.getComponentIndexEnd();
+        int componentIndex = 0;
+        while (componentIndex < end) {
+            // Process runs of components that are stored after each other in the same buffers
+            final int count = componentType.getRunLength(componentIndex, end);
+            if (count == 0) {
+                componentIndex++;
+                continue;
+            }
+
+            final ByteBuffer buffer = getDataBuffer(componentIndex);
+            final int offset = getDataOffset(componentIndex);
+            switch (kernel) {
+                case FILL: fillRun(memory, buffer, offset, stride, count, a); break;
+                case COPY: copyRun(memory, source.getDataBuffer(componentIndex), source.getDataOffset(componentIndex), sourceStride, buffer, offset, stride, count); break;
+                case ADD_SCALED: addScaledRun(memory, a, source.getDataBuffer(componentIndex), source.getDataOffset(componentIndex), sourceStride, buffer, offset, stride, count); break;
+                case SCALE: scaleRun(memory, buffer, offset, stride, count, a); break;
+                case OPERATION: operationRun(memory, buffer, offset, stride, count, operation); break;
+                case CLAMP: break;
+                default: throw new IllegalStateException("Unknown kernel " + kernel);
+            }
+
+            if (range != null) {
+                clampRun(memory, buffer, offset, stride, count, range);
+            }
+
+            componentIndex += count;
+        }
+    }
+
+    private static void fillRun(MemoryAccess memory, ByteBuffer buffer, int offset, int stride, int count, float value) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(buffer, offset, value);
+            offset += stride;
+        }
+    }
+
+    private static void copyRun(MemoryAccess memory, ByteBuffer source, int sourceOffset, int sourceStride, ByteBuffer target, int offset, int stride, int count) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(target, offset, memory.getFloat(source, sourceOffset));
+            sourceOffset += sourceStride;
+            offset += stride;
+        }
+    }
+
+    private static void addScaledRun(MemoryAccess memory, float factor, ByteBuffer source, int sourceOffset, int sourceStride, ByteBuffer target, int offset, int stride, int count) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(target, offset, memory.getFloat(target, offset) + factor * memory.getFloat(source, sourceOffset));
+            sourceOffset += sourceStride;
+            offset += stride;
+        }
+    }
+
+    private static void scaleRun(MemoryAccess memory, ByteBuffer buffer, int offset, int stride, int count, float factor) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(buffer, offset, memory.getFloat(buffer, offset) * factor);
+            offset += stride;
+        }
+    }
+
+    private static void clampRun(MemoryAccess memory, ByteBuffer buffer, int offset, int stride, int count, FloatRange range) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(buffer, offset, range.clampFloat(memory.getFloat(buffer, offset)));
+            offset += stride;
+        }
+    }
+
+    private static void operationRun(MemoryAccess memory, ByteBuffer buffer, int offset, int stride, int count, FloatOperation operation) {
+        for (int i = 0; i < count; i++) {
+            memory.putFloat(buffer, offset, operation.apply(memory.getFloat(buffer, offset)));
+            offset += stride;
+        }
     }
 
 }
@@ -0,0 +1,78 @@
+package org.entityflow2.component;
+
+import org.entityflow2.type.IntArrayType;
+import org.flowutils.Symbol;
+
+/**
+ * Accessor for a fixed length int array property that is stored inline in the component.
+ * The whole array can be read into a reusable array with get(entityId, out) and written with set(entityId, value),
+ * and single elements can be accessed as primitives.
+ */
+public final class IntArrayProperty extends PropertyBase<int[]> {
+
+    private final IntArrayType arrayType;
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.  Determines the length of the array.
+     */
+    public IntArrayProperty(Symbol id,
+                            ComponentType hostComponentType,
+                            int[] defaultValue) {
+        this(id, hostComponentType, defaultValue, new IntArrayType(defaultValue.length));
+    }
+
+    private IntArrayProperty(Symbol id,
+                             ComponentType hostComponentType,
+                             int[] defaultValue,
+                             IntArrayType arrayType) {
+        super(id, hostComponentType, defaultValue, arrayType, null);
+        this.arrayType = arrayType;
+    }
+
+    /**
+     * @return number of elements in the array.
+     */
+    public final int getLength() {
+        return arrayType.getLength();
+    }
+
+    /**
+     * @return value of the specified element of the property for the specified entity
+     */
+    public final int getElement(int entityId, int index) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return arrayType.readElement(getDataBuffer(componentIndex), getDataOffset(componentIndex), index);
+    }
+
+    /**
+     * @return value of the specified element of the property for the entity that the cursor is at.
+     */
+    public final int getElement(ComponentCursor cursor, int index) {
+        final int componentIndex = getComponentIndex(cursor);
+        return arrayType.readElement(getDataBuffer(componentIndex), getDataOffset(componentIndex), index);
+    }
+
+    /**
+     * Set the value of the specified element of this property for the entity that the cursor is at.
+     */
+    public final void setElement(ComponentCursor cursor, int index, int value) {
+        final int componentIndex = getComponentIndex(cursor);
+        arrayType.writeElement(getDataBuffer(componentIndex), getDataOffset(componentIndex), index, value);
+    }
+
+    /**
+     * Set the value of the specified element of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param index index of the element to change.
+     * @param value new value for the element.
+     */
+    public final void setElement(int entityId, int index, int value) {
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        arrayType.writeElement(getDataBuffer(componentIndex), getDataOffset(componentIndex), index, value);
+    }
+
+}
@@ -0,0 +1,14 @@
+package org.entityflow2.component;
+
+/**
+ * Operation applied to the values of a IntProperty in bulk, see IntProperty.apply.
+ */
+public interface IntOperation {
+
+    /**
+     * @param value current value of the property for a component.
+     * @return new value of the property for the component.
+     */
+    int apply(int value);
+
+}
@@ -0,0 +1,73 @@
+package org.entityflow2.component;
+
+import org.entityflow2.range.LongRange;
+import org.entityflow2.type.LongType;
+import org.flowutils.Symbol;
+
+/**
+ * Primitive property accessor.
+ */
+public final class LongProperty extends PropertyBase<Long> {
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param range             allowed value range for this property, or null if no restrictions.
+     */
+    public LongProperty(Symbol id,
+                        ComponentType hostComponentType,
+                        long defaultValue,
+                        LongRange range) {
+        super(id, hostComponentType, defaultValue, LongType.TYPE, range);
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final long get(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getLong(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final long get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getLong(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, long value) {
+        // Clamp value if needed
+        final LongRange range = (LongRange) getRange();
+        if (range != null) {
+            value = range.clampLong(value);
+        }
+
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putLong(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+    /**
+     * Set the value of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param value new value for the component property.
+     */
+    public final void set(int entityId, long value) {
+        // Clamp value if needed
+        final LongRange range = (LongRange) getRange();
+        if (range != null) {
+            value = range.clampLong(value);
+        }
+
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putLong(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+}
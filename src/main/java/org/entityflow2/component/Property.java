@@ -33,4 +33,11 @@ public final class Property<T> extends PropertyBase<T> {
         return getObject(entityId);
     }
 
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final T get(ComponentCursor cursor) {
+        return getObject(cursor);
+    }
+
 }
@@ -1,8 +1,8 @@
 package org.entityflow2.component;
 
-import net.openhft.koloboke.collect.map.IntObjMap;
-import net.openhft.koloboke.collect.map.hash.HashIntObjMaps;
+import org.entityflow2.memory.MemoryAccess;
 import org.entityflow2.range.Range;
+import org.entityflow2.storage.BlockStorage;
 import org.entityflow2.type.Type;
 import org.flowutils.Check;
 import org.flowutils.Symbol;
@@ -24,11 +24,20 @@ public abstract class PropertyBase<T> {
     private int valueOffset;
 
     /**
-     * If the type stored in this property is a complex type (non-fixed length or large value), this map will hold the values
-     * of this property for each entity (key is entity id, value is the property value for that entity).
+     * Data column of the component type that the values of this property are stored in, and the offset of the value
+     * within a block of that column.
+     * Assigned by the component type when it allocates its data columns.
+     */
+    private BlockStorage column = null;
+    private int columnOffset = 0;
+
+    /**
+     * If the type stored in this property is a complex type (non-fixed length or large value), this array will hold the values
+     * of this property for each component, indexed by component index just like the data columns of the component type.
      * If the property type is a non-complex type, this is null and the property values are stored in byte buffers in the component types.
      */
-    private final IntObjMap<T> complexValues;
+    private Object[] complexValues = null;
+    private final boolean complex;
 
 
     /**
@@ -73,13 +82,8 @@ public abstract class PropertyBase<T> {
         this.range = range;
         this.valueOffset = valueOffset;
 
-        // Create map to store complex values in if needed
-        if (!type.isByteBufferStorable()) {
-            complexValues = HashIntObjMaps.newMutableMap();
-        }
-        else {
-            complexValues = null;
-        }
+        // The array for complex values is allocated along with the data columns of the component type
+        complex = !type.isByteBufferStorable();
     }
 
     /**
@@ -136,6 +140,16 @@ public abstract class PropertyBase<T> {
         this.valueOffset = valueOffset;
     }
 
+    /**
+     * Called by the component type when it allocates its data columns.
+     * @param column the data column that the values of this property are stored in.
+     * @param columnOffset offset of the value of this property within a block in the column.
+     */
+    final void setColumn(BlockStorage column, int columnOffset) {
+        this.column = column;
+        this.columnOffset = columnOffset;
+    }
+
     /**
      * @return value of the property for the specified entity, or defaultValue if the property has not yet been set for that entity.
      */
@@ -149,15 +163,54 @@ public abstract class PropertyBase<T> {
      * @return value of the property for the specified entity, or defaultValue if the property has not yet been set for that entity.
      */
     public final T get(int entityId, T out) {
-        ensureEntityHasComponentType(entityId);
-
-        if (complexValues != null) {
+        // Throws an exception if the entity does not have the component
+        final int componentIndex = getComponentIndex(entityId);
+        if (complex) {
             // Get from object storage
-            return complexValues.getOrDefault(entityId, defaultValue);
+            return getComplexValue(componentIndex);
         }
         else {
             // Read from data buffer
-            return type.readValue(getDataBuffer(), getParameterOffset(entityId), out);
+            return type.readValue(getDataBuffer(componentIndex), getDataOffset(componentIndex), out);
+        }
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final T getObject(ComponentCursor cursor) {
+        return get(cursor, null);
+    }
+
+    /**
+     * @param out if the type is mutable and out is not null, then out will be used to write the data to, and returned as a result.
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final T get(ComponentCursor cursor, T out) {
+        final int componentIndex = getComponentIndex(cursor);
+        if (complex) {
+            return getComplexValue(componentIndex);
+        }
+        else {
+            return type.readValue(getDataBuffer(componentIndex), getDataOffset(componentIndex), out);
+        }
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, T value) {
+        // Clamp value if needed
+        if (range != null) {
+            value = range.clamp(value);
+        }
+
+        final int componentIndex = getComponentIndex(cursor);
+        if (complex) {
+            complexValues[componentIndex] = value;
+        }
+        else {
+            type.writeValue(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
         }
     }
 
@@ -167,45 +220,116 @@ public abstract class PropertyBase<T> {
      * @param value new value for the component property.
      */
     public final void set(int entityId, T value) {
-        ensureEntityHasComponentType(entityId);
-
         // Clamp value if needed
         if (range != null) {
             value = range.clamp(value);
         }
 
-        if (complexValues != null) {
+        // Throws an exception if the entity does not have the component
+        final int componentIndex = getComponentIndex(entityId);
+        if (complex) {
             // Set to object storage
-            complexValues.put(entityId, value);
+            complexValues[componentIndex] = value;
         }
         else {
             // Write to data buffer
-            type.writeValue(getDataBuffer(), getParameterOffset(entityId), value);
+            type.writeValue(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
         }
     }
 
     /**
-     * @return data buffer where non-complex values are stored.
+     * @return index of the component of the specified entity in the data storage of the component type.
      */
-    protected final ByteBuffer getDataBuffer() {
-        return componentType.getDataBuffer();
+    protected final int getComponentIndex(int entityId) {
+        return componentType.getComponentIndex(entityId);
     }
 
     /**
-     * @return offset of this parameter for the specified entity in the data buffer.
+     * @return index of the component of the entity that the cursor is at in the data storage of the component type.
      */
-    protected final int getParameterOffset(int entityId) {
-        return componentType.getEntityOffset(entityId) + valueOffset;
+    protected final int getComponentIndex(ComponentCursor cursor) {
+        return cursor.getComponentIndex(componentType);
     }
 
-    void removeFromEntity(int entityId) {
-        if (!type.isByteBufferStorable()) {
-            complexValues.remove(entityId);
+    /**
+     * @return data buffer where the non-complex value of this parameter is stored for the component at the specified component index.
+     */
+    protected final ByteBuffer getDataBuffer(int componentIndex) {
+        return column.getBuffer(componentIndex);
+    }
+
+    /**
+     * @return offset of this parameter for the component at the specified component index in the data buffer.
+     */
+    protected final int getDataOffset(int componentIndex) {
+        return column.getOffset(componentIndex) + columnOffset;
+    }
+
+    /**
+     * @return memory access of the component type, used to read and write the primitive values of this property.
+     */
+    protected final MemoryAccess getMemoryAccess() {
+        return componentType.getMemoryAccess();
+    }
+
+    /**
+     * @return distance in bytes between the values of consecutive components in the data buffer.
+     */
+    protected final int getDataStride() {
+        return column.getBlockSize();
+    }
+
+    /**
+     * @return true if the values of this property are stored in an object array instead of the data columns.
+     */
+    final boolean isComplex() {
+        return complex;
+    }
+
+    /**
+     * Writes the default value of this property to the specified location, used to build template blocks for new components.
+     */
+    final void writeDefaultValue(ByteBuffer buffer, int offset) {
+        type.writeValue(buffer, offset, defaultValue);
+    }
+
+    /**
+     * Called by the component type when it allocates or resizes its data columns, if this is a complex property.
+     * @param capacity new number of components that can be stored.
+     * @param usedCount number of components at the start of the array that should be preserved.
+     */
+    final void setComplexCapacity(int capacity, int usedCount) {
+        final Object[] newValues = new Object[capacity];
+        if (complexValues != null) {
+            System.arraycopy(complexValues, 0, newValues, 0, Math.min(usedCount, capacity));
         }
+        complexValues = newValues;
     }
 
+    /**
+     * Initializes the complex value of a new component to the default value.
+     */
+    final void initComplexValue(int componentIndex) {
+        complexValues[componentIndex] = defaultValue;
+    }
+
+    /**
+     * Moves the complex value of a component along with its data block, and clears the source.
+     */
+    final void moveComplexValue(int sourceComponentIndex, int targetComponentIndex) {
+        complexValues[targetComponentIndex] = complexValues[sourceComponentIndex];
+        complexValues[sourceComponentIndex] = null;
+    }
+
+    /**
+     * Clears the complex value of a removed component, so that it can be garbage collected.
+     */
+    final void clearComplexValue(int componentIndex) {
+        complexValues[componentIndex] = null;
+    }
 
-    private void ensureEntityHasComponentType(int entityId) {
-        if (!componentType.containedInEntity(entityId)) throw new IllegalArgumentException("The entity with the id " + entityId + " does not have the component type " + componentType.getId());
+    @SuppressWarnings("unchecked")
+    private T getComplexValue(int componentIndex) {
+        return (T) complexValues[componentIndex];
     }
 }
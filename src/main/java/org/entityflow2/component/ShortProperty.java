@@ -0,0 +1,73 @@
+package org.entityflow2.component;
+
+import org.entityflow2.range.ShortRange;
+import org.entityflow2.type.ShortType;
+import org.flowutils.Symbol;
+
+/**
+ * Primitive property accessor.
+ */
+public final class ShortProperty extends PropertyBase<Short> {
+
+    /**
+     * @param id                unique id of this property within the component type that it belongs to.
+     * @param hostComponentType the componentType that this Property belongs to.
+     * @param defaultValue      default value of this property in new components.
+     * @param range             allowed value range for this property, or null if no restrictions.
+     */
+    public ShortProperty(Symbol id,
+                         ComponentType hostComponentType,
+                         short defaultValue,
+                         ShortRange range) {
+        super(id, hostComponentType, defaultValue, ShortType.TYPE, range);
+    }
+
+    /**
+     * @return value of the property for the specified entity
+     */
+    public final short get(int entityId) {
+        // Read value from buffer
+        final int componentIndex = getComponentIndex(entityId);
+        return getMemoryAccess().getShort(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * @return value of the property for the entity that the cursor is at.
+     */
+    public final short get(ComponentCursor cursor) {
+        final int componentIndex = getComponentIndex(cursor);
+        return getMemoryAccess().getShort(getDataBuffer(componentIndex), getDataOffset(componentIndex));
+    }
+
+    /**
+     * Set the value of this property for the entity that the cursor is at.
+     */
+    public final void set(ComponentCursor cursor, short value) {
+        // Clamp value if needed
+        final ShortRange range = (ShortRange) getRange();
+        if (range != null) {
+            value = range.clampShort(value);
+        }
+
+        final int componentIndex = getComponentIndex(cursor);
+        getMemoryAccess().putShort(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+    /**
+     * Set the value of this property for the specified entity.
+     * @param entityId id of the entity whose component property we want to change.
+     * @param value new value for the component property.
+     */
+    public final void set(int entityId, short value) {
+        // Clamp value if needed
+        final ShortRange range = (ShortRange) getRange();
+        if (range != null) {
+            value = range.clampShort(value);
+        }
+
+        // Write value to buffer
+        final int componentIndex = getComponentIndex(entityId);
+        getMemoryAccess().putShort(getDataBuffer(componentIndex), getDataOffset(componentIndex), value);
+    }
+
+}
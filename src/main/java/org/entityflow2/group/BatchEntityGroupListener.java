@@ -0,0 +1,28 @@
+package org.entityflow2.group;
+
+/**
+ * EntityGroupListener that is notified about all the entities added to or removed from a group during an update at once,
+ * e.g. to bulk insert them into a side index when a level is loaded.
+ *
+ * The entity group calls the batch methods instead of onEntityAdded and onEntityRemoved for listeners implementing this interface,
+ * so the per-entity methods can be left empty.
+ */
+public interface BatchEntityGroupListener extends EntityGroupListener {
+
+    /**
+     * Called when entities were added to the group.
+     * @param entityIds ids of the added entities, in increasing order.  Only the first count values are valid.
+     *                  The array is reused by the group, so it should not be retained or modified.
+     * @param count number of added entities, at least one.
+     */
+    void onEntitiesAdded(EntityGroup group, int[] entityIds, int count);
+
+    /**
+     * Called when entities were removed from the group.
+     * @param entityIds ids of the removed entities, in increasing order.  Only the first count values are valid.
+     *                  The array is reused by the group, so it should not be retained or modified.
+     * @param count number of removed entities, at least one.
+     */
+    void onEntitiesRemoved(EntityGroup group, int[] entityIds, int count);
+
+}
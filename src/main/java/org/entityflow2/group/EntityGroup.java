@@ -1,6 +1,5 @@
 package org.entityflow2.group;
 
-import it.unimi.dsi.fastutil.ints.IntSortedSet;
 import it.unimi.dsi.fastutil.ints.IntSortedSets;
 import net.openhft.koloboke.collect.set.IntSet;
 import org.entityflow2.component.ComponentType;
@@ -11,9 +10,24 @@ import org.entityflow2.component.ComponentType;
 public interface EntityGroup {
 
     /**
-     * @return a read only view of the entities in this group.
+     * @return a read only view of the ids of the entities in this group, in increasing order.
+     *         Membership changes become visible when the pending changes are flushed, which the entity manager
+     *         does before updating the processors and after applying structural changes.
+     *         Does not modify the group, so it can be called from several processor threads at the same time.
      */
-    IntSortedSet getEntities();
+    SortedEntityIds getEntities();
+
+    /**
+     * Merges the membership changes since the last flush into the entity ids returned by getEntities.
+     * Should only be called from the thread updating the entity manager, while no processors are running.
+     */
+    void flushPendingChanges();
+
+    /**
+     * @return true if entities have been added to or removed from this group since the pending changes were last flushed,
+     *         so that the entities returned by getEntities are not up to date.
+     */
+    boolean hasPendingChanges();
 
     /**
      * Called after a group has been created, for each entity that existed before the group was created.
@@ -26,11 +40,26 @@ public interface EntityGroup {
      */
     void handleEntityCreated(int entityId, ComponentType[] initialComponentTypes);
 
+    /**
+     * Called when a batch of entities has been created, all with the same component types.
+     * @param entityIds ids of the created entities.
+     * @param initialComponentTypes the component types that the entities currently have.
+     */
+    void handleEntitiesCreated(int[] entityIds, ComponentType[] initialComponentTypes);
+
     /**
      * Called when an entity is removed.
      */
     void handleEntityRemoved(int entityId);
 
+    /**
+     * Called once for a batch of removed entities.
+     * @param entityIds ids of removed entities in increasing order, including at least all removed members of this group.
+     *                  Only the first count values are valid.
+     * @param count number of removed entities.
+     */
+    void handleEntitiesRemoved(int[] entityIds, int count);
+
     /**
      * Called when the specified component types is added to an entity.
      */
@@ -48,6 +77,7 @@ public interface EntityGroup {
 
     /**
      * @param listener listener to notify about entities added and removed from this group.
+     *                 A BatchEntityGroupListener is notified about all the entities added or removed in an update with one call.
      */
     void addListener(EntityGroupListener listener);
 
@@ -56,6 +86,27 @@ public interface EntityGroup {
      */
     void removeListener(EntityGroupListener listener);
 
+    /**
+     * @return the query that entities must match to be part of this group.
+     */
+    EntityQuery getQuery();
+
+    /**
+     * @return the component types that an entity must have to be part of this group.  Should not be modified.
+     */
+    ComponentType[] getRequiredComponentTypes();
+
+    /**
+     * @return the component types that an entity can not have if it is part of this group.  Should not be modified.
+     */
+    ComponentType[] getForbiddenComponentTypes();
+
+    /**
+     * @return the component types of which an entity must have at least one to be part of this group,
+     *         or an empty array if there is no such condition.  Should not be modified.
+     */
+    ComponentType[] getAnyComponentTypes();
+
     /**
      * @return true if this group has exactly the specified required components, and no forbidden components.
      */
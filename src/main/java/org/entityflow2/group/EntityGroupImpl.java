@@ -1,12 +1,7 @@
 package org.entityflow2.group;
 
-import it.unimi.dsi.fastutil.ints.IntAVLTreeSet;
-import it.unimi.dsi.fastutil.ints.IntSortedSet;
-import it.unimi.dsi.fastutil.ints.IntSortedSets;
-import net.openhft.koloboke.collect.set.IntSet;
-import net.openhft.koloboke.collect.set.hash.HashIntSets;
-import net.openhft.koloboke.function.IntConsumer;
 import org.entityflow2.component.ComponentType;
+import org.entityflow2.utils.PagedBitSets;
 import org.flowutils.Check;
 
 import java.util.*;
@@ -14,38 +9,62 @@ import java.util.*;
 import static org.flowutils.Check.notNull;
 
 /**
- * All entities that have the specified component types.
+ * All entities that match an EntityQuery: entities that have the required component types, none of the forbidden ones,
+ * and at least one of the any-of types if the query has any.
  */
 public final class EntityGroupImpl implements EntityGroup {
 
     private static final int EXPECTED_GROUP_SIZE = 1000;
+    private static final long[] NO_MASK = new long[0];
 
-    private final IntSortedSet entities = new IntAVLTreeSet();
-    private final IntSortedSet readOnlyEntities = IntSortedSets.unmodifiable(entities);
+    private static final int MEMBER_BITS = 0;
+    private static final int NOTIFIED_BITS = 64;
+
+    private final SortedEntityIds entities = new SortedEntityIds();
+
+    /**
+     * Membership bits of the entities, packed 64 entity ids per key, so that membership checks need no hashing.
+     * The first 64 bits of a key are the current membership, including changes not yet merged into the sorted entity ids,
+     * and the next 64 bits the membership that the listeners were last notified about.
+     */
+    private final PagedBitSets memberBits = new PagedBitSets(128);
+
+    /**
+     * Ids of the entities whose membership has changed since the pending changes were last flushed, unsorted and possibly repeated.
+     * Sorted and merged into the sorted entity ids in one pass when the pending changes are flushed, or on update.
+     */
+    private int[] pendingIds = new int[16];
+    private int pendingCount = 0;
+
+    /**
+     * Ids of the entities whose membership has changed since the last update, unsorted and possibly repeated.
+     */
+    private int[] changedIds = new int[16];
+    private int changedCount = 0;
+
+    private final EntityQuery query;
     private final ComponentType[] requiredComponentTypes;
     private final ComponentType[] forbiddenComponentTypes;
+    private final ComponentType[] anyComponentTypes;
 
-    private final IntSet addedEntities = HashIntSets.newMutableSet();
-    private final IntSet removedEntities = HashIntSets.newMutableSet();
+    private final PagedBitSets signatures;
+    private final long[] requiredMask;
+    private final long[] forbiddenMask;
+    private final long[][] anyMasks;
 
+    private long evaluationCount = 0;
+    private long addCount = 0;
+    private long removeCount = 0;
 
     private final List<EntityGroupListener> listeners = new ArrayList<EntityGroupListener>(4);
 
-    private final IntConsumer additionNotifier = new IntConsumer() {
-        @Override public void accept(int value) {
-            for (int i = 0; i < listeners.size(); i++) {
-                listeners.get(i).onEntityAdded(EntityGroupImpl.this, value);
-            }
-        }
-    };
-
-    private final IntConsumer removalNotifier = new IntConsumer() {
-        @Override public void accept(int value) {
-            for (int i = 0; i < listeners.size(); i++) {
-                listeners.get(i).onEntityRemoved(EntityGroupImpl.this, value);
-            }
-        }
-    };
+    /**
+     * Added and removed entity ids collected when merging the pending changes and when notifying the listeners, reused between updates.
+     */
+    private int[] mergedAdditions = new int[16];
+    private int[] mergedRemovals = new int[16];
+    private int[] notifiedAdditions = new int[16];
+    private int[] notifiedRemovals = new int[16];
 
     /**
      * @param requiredComponentTypes the components that an entity must have to be part of this group.
@@ -67,72 +86,166 @@ public final class EntityGroupImpl implements EntityGroup {
      */
     public EntityGroupImpl(Collection<ComponentType> requiredComponentTypes,
                            Collection<ComponentType> forbiddenComponentTypes) {
-        notNull(requiredComponentTypes, "requiredComponentTypes");
-        notNull(forbiddenComponentTypes, "forbiddenComponentTypes");
+        this(requiredComponentTypes, forbiddenComponentTypes, null);
+    }
 
-        this.requiredComponentTypes = requiredComponentTypes.toArray(new ComponentType[requiredComponentTypes.size()]);
-        this.forbiddenComponentTypes = forbiddenComponentTypes.toArray(new ComponentType[forbiddenComponentTypes.size()]);
+    /**
+     * @param requiredComponentTypes the components that an entity must have to be part of this group.
+     * @param forbiddenComponentTypes the components that an entity can not have if it is part of this group.
+     * @param signatures the component types of each entity, with a bit set for the type index of each component type it has,
+     *                   or null to check the component types of entities one at a time.
+     *                   All the component types should have a type index if signatures are used.
+     */
+    public EntityGroupImpl(Collection<ComponentType> requiredComponentTypes,
+                           Collection<ComponentType> forbiddenComponentTypes,
+                           PagedBitSets signatures) {
+        this(new EntityQuery.Builder().all(toArray(requiredComponentTypes, "requiredComponentTypes"))
+                                      .none(toArray(forbiddenComponentTypes, "forbiddenComponentTypes"))
+                                      .build(),
+             signatures);
     }
 
-    @Override public IntSortedSet getEntities() {
-        return readOnlyEntities;
+    /**
+     * @param query the query that entities must match to be part of this group.
+     * @param signatures the component types of each entity, with a bit set for the type index of each component type it has,
+     *                   or null to check the component types of entities one at a time.
+     *                   All the component types should have a type index if signatures are used.
+     */
+    public EntityGroupImpl(EntityQuery query, PagedBitSets signatures) {
+        notNull(query, "query");
+
+        this.query = query;
+        requiredComponentTypes = query.getRequiredTypes();
+        forbiddenComponentTypes = query.getForbiddenTypes();
+        anyComponentTypes = query.getAnyTypes();
+
+        this.signatures = signatures;
+        if (signatures != null) {
+            requiredMask = createMask(requiredComponentTypes);
+            forbiddenMask = createMask(forbiddenComponentTypes);
+
+            // Each any-of type is checked as a required mask of its own
+            anyMasks = new long[anyComponentTypes.length][];
+            for (int i = 0; i < anyComponentTypes.length; i++) {
+                anyMasks[i] = createMask(new ComponentType[] {anyComponentTypes[i]});
+            }
+        }
+        else {
+            requiredMask = null;
+            forbiddenMask = null;
+            anyMasks = null;
+        }
+    }
+
+    /**
+     * @return the query that entities must match to be part of this group.
+     */
+    @Override public EntityQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * @return number of times an entity has been checked against the query of this group.
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * @return number of times an entity has been added to this group.
+     */
+    public long getAddCount() {
+        return addCount;
+    }
+
+    /**
+     * @return number of times an entity has been removed from this group.
+     */
+    public long getRemoveCount() {
+        return removeCount;
+    }
+
+    @Override public SortedEntityIds getEntities() {
+        return entities;
     }
 
     @Override public void handleExistingEntity(int entityId) {
-        if (matches(entityId)) entities.add(entityId);
+        if (matches(entityId) && !isMember(entityId)) {
+            // Existing entities are not reported to the listeners as added
+            memberBits.set(entityId >>> 6, MEMBER_BITS + (entityId & 63));
+            memberBits.set(entityId >>> 6, NOTIFIED_BITS + (entityId & 63));
+            logPendingChange(entityId);
+        }
     }
 
     @Override public void handleEntityCreated(int entityId, ComponentType[] initialComponentTypes) {
-        // Skip entity if it does not contain all of the required components for this group
-        for (int i = 0, len = requiredComponentTypes.length; i < len; i++) {
-            if (!contains(initialComponentTypes, requiredComponentTypes[i])) return;
+        if (acceptsComponents(initialComponentTypes) && !isMember(entityId)) {
+            // Entity was acceptable to this group, add it
+            addEntity(entityId);
         }
+    }
 
-        // Skip entity if it contains any of the forbidden components for this group
-        for (int i = 0, len = forbiddenComponentTypes.length; i < len; i++) {
-            if (contains(initialComponentTypes, forbiddenComponentTypes[i])) return;
+    @Override public void handleEntitiesCreated(int[] entityIds, ComponentType[] initialComponentTypes) {
+        // All the entities have the same components, so check them only once
+        if (acceptsComponents(initialComponentTypes)) {
+            for (int i = 0; i < entityIds.length; i++) {
+                if (!isMember(entityIds[i])) addEntity(entityIds[i]);
+            }
         }
+    }
 
-        // Entity was acceptable to this group, add it
-        entities.add(entityId);
-        addedEntities.add(entityId);
+    private boolean acceptsComponents(ComponentType[] componentTypes) {
+        evaluationCount++;
+        return query.matches(componentTypes);
     }
 
     @Override public void handleEntityRemoved(int entityId) {
-        if (entities.contains(entityId)) {
+        if (isMember(entityId)) {
             removeEntity(entityId);
         }
     }
 
-    @Override public void handleComponentAdded(int entityId, ComponentType addedComponentType) {
-        if (!entities.contains(entityId)) {
-            if (contains(requiredComponentTypes, addedComponentType) &&
-                !contains(forbiddenComponentTypes, addedComponentType) &&
-                matches(entityId)) {
-                addEntity(entityId);
-            }
-        } else {
-            if (contains(forbiddenComponentTypes, addedComponentType)) {
-                removeEntity(entityId);
+    @Override public void handleEntitiesRemoved(int[] entityIds, int count) {
+        for (int i = 0; i < count; i++) {
+            if (isMember(entityIds[i])) {
+                removeEntity(entityIds[i]);
             }
         }
     }
 
+    @Override public void handleComponentAdded(int entityId, ComponentType addedComponentType) {
+        handleComponentChanged(entityId, addedComponentType);
+    }
+
     @Override public void handleComponentRemoved(int entityId, ComponentType removedComponentType) {
-        if (!entities.contains(entityId)) {
-            if (!contains(requiredComponentTypes, removedComponentType) &&
-                contains(forbiddenComponentTypes, removedComponentType) &&
-                matches(entityId)) {
-                addEntity(entityId);
-            }
-        } else {
-            if (contains(requiredComponentTypes, removedComponentType)) {
-                removeEntity(entityId);
-            }
-        }
+        handleComponentChanged(entityId, removedComponentType);
+    }
+
+    private void handleComponentChanged(int entityId, ComponentType changedComponentType) {
+        // Optional and unrelated component types do not affect membership
+        if (!contains(requiredComponentTypes, changedComponentType) &&
+            !contains(forbiddenComponentTypes, changedComponentType) &&
+            !contains(anyComponentTypes, changedComponentType)) return;
+
+        final boolean matches = matches(entityId);
+        final boolean contained = isMember(entityId);
+        if (matches && !contained) addEntity(entityId);
+        else if (!matches && contained) removeEntity(entityId);
     }
 
     private boolean matches(int entityId) {
+        evaluationCount++;
+
+        if (signatures != null) {
+            if (!signatures.matches(entityId, requiredMask, forbiddenMask)) return false;
+            if (anyMasks.length == 0) return true;
+
+            for (int i = 0; i < anyMasks.length; i++) {
+                if (signatures.matches(entityId, anyMasks[i], NO_MASK)) return true;
+            }
+            return false;
+        }
+
         for (int i = 0, len = requiredComponentTypes.length; i < len; i++) {
             if (!requiredComponentTypes[i].containedInEntity(entityId)) return false;
         }
@@ -141,39 +254,135 @@ public final class EntityGroupImpl implements EntityGroup {
             if (forbiddenComponentTypes[i].containedInEntity(entityId)) return false;
         }
 
-        return true;
+        if (anyComponentTypes.length == 0) return true;
+        for (int i = 0, len = anyComponentTypes.length; i < len; i++) {
+            if (anyComponentTypes[i].containedInEntity(entityId)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the entity is in this group, taking into account changes not yet merged.
+     */
+    private boolean isMember(int entityId) {
+        return memberBits.get(entityId >>> 6, MEMBER_BITS + (entityId & 63));
     }
 
     private void addEntity(int entityId) {
-        entities.add(entityId);
-        addedEntities.add(entityId);
-        removedEntities.remove(entityId);
+        addCount++;
+        memberBits.set(entityId >>> 6, MEMBER_BITS + (entityId & 63));
+        logPendingChange(entityId);
+        logChange(entityId);
     }
 
     private void removeEntity(int entityId) {
-        entities.remove(entityId);
-        removedEntities.add(entityId);
-        addedEntities.remove(entityId);
+        removeCount++;
+        memberBits.clear(entityId >>> 6, MEMBER_BITS + (entityId & 63));
+        logPendingChange(entityId);
+        logChange(entityId);
+    }
+
+    private void logPendingChange(int entityId) {
+        if (pendingCount == pendingIds.length) pendingIds = Arrays.copyOf(pendingIds, pendingCount * 2);
+        pendingIds[pendingCount++] = entityId;
+    }
+
+    private void logChange(int entityId) {
+        if (changedCount == changedIds.length) changedIds = Arrays.copyOf(changedIds, changedCount * 2);
+        changedIds[changedCount++] = entityId;
+    }
+
+    @Override public boolean hasPendingChanges() {
+        return pendingCount > 0;
+    }
+
+    @Override public void flushPendingChanges() {
+        if (!hasPendingChanges()) return;
+
+        // Compare the current membership of each changed entity with the sorted ids, an entity may have changed back and forth
+        Arrays.sort(pendingIds, 0, pendingCount);
+        if (mergedAdditions.length < pendingCount) mergedAdditions = new int[Math.max(pendingCount, mergedAdditions.length * 2)];
+        if (mergedRemovals.length < pendingCount) mergedRemovals = new int[Math.max(pendingCount, mergedRemovals.length * 2)];
+        int addedCount = 0;
+        int removedCount = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            final int entityId = pendingIds[i];
+            if (i > 0 && entityId == pendingIds[i - 1]) continue;
+
+            final boolean member = isMember(entityId);
+            if (member != entities.contains(entityId)) {
+                if (member) mergedAdditions[addedCount++] = entityId;
+                else mergedRemovals[removedCount++] = entityId;
+            }
+        }
+        entities.merge(mergedAdditions, addedCount, mergedRemovals, removedCount);
+
+        pendingCount = 0;
     }
 
     @Override public void update() {
+        flushPendingChanges();
+        if (changedCount == 0) return;
+
+        // Compare the current membership of each changed entity with the membership the listeners were last notified about
+        Arrays.sort(changedIds, 0, changedCount);
+        if (notifiedAdditions.length < changedCount) notifiedAdditions = new int[Math.max(changedCount, notifiedAdditions.length * 2)];
+        if (notifiedRemovals.length < changedCount) notifiedRemovals = new int[Math.max(changedCount, notifiedRemovals.length * 2)];
+        int addedCount = 0;
+        int removedCount = 0;
+        for (int i = 0; i < changedCount; i++) {
+            final int entityId = changedIds[i];
+            if (i > 0 && entityId == changedIds[i - 1]) continue;
+
+            final int key = entityId >>> 6;
+            final int bit = entityId & 63;
+            final boolean member = memberBits.get(key, MEMBER_BITS + bit);
+            if (member != memberBits.get(key, NOTIFIED_BITS + bit)) {
+                if (member) {
+                    memberBits.set(key, NOTIFIED_BITS + bit);
+                    notifiedAdditions[addedCount++] = entityId;
+                }
+                else {
+                    memberBits.clear(key, NOTIFIED_BITS + bit);
+                    notifiedRemovals[removedCount++] = entityId;
+                }
+            }
+        }
+        changedCount = 0;
+
         // Notify listeners
-        removedEntities.forEach(removalNotifier);
-        addedEntities.forEach(additionNotifier);
+        if (!listeners.isEmpty()) {
+            notifyListeners(notifiedRemovals, removedCount, false);
+            notifyListeners(notifiedAdditions, addedCount, true);
+        }
+    }
+
+    @Override public ComponentType[] getRequiredComponentTypes() {
+        return requiredComponentTypes;
+    }
+
+    @Override public ComponentType[] getForbiddenComponentTypes() {
+        return forbiddenComponentTypes;
+    }
 
-        // Clear recently added and removed sets
-        removedEntities.clear();
-        addedEntities.clear();
+    @Override public ComponentType[] getAnyComponentTypes() {
+        return anyComponentTypes;
     }
 
     @Override public boolean matches(ComponentType[] requiredComponents) {
         return containSameComponents(requiredComponents, requiredComponentTypes) &&
-               this.forbiddenComponentTypes.length == 0;
+               forbiddenComponentTypes.length == 0 &&
+               anyComponentTypes.length == 0;
     }
 
     @Override public boolean matches(ComponentType[] requiredComponents, ComponentType[] forbiddenComponents) {
         return containSameComponents(requiredComponents, requiredComponentTypes) &&
-               containSameComponents(forbiddenComponents, forbiddenComponentTypes);
+               containSameComponents(forbiddenComponents, forbiddenComponentTypes) &&
+               anyComponentTypes.length == 0;
+    }
+
+    @Override public String toString() {
+        return "EntityGroup{" + query + ", " + getEntities().size() + " entities}";
     }
 
     @Override public final void addListener(EntityGroupListener listener) {
@@ -190,15 +399,37 @@ public final class EntityGroupImpl implements EntityGroup {
     }
 
     /**
-     * Notifies listeners about a removed entity
+     * Notifies listeners about added or removed entities, with one call per batch listener, and one call per entity for other listeners.
+     * @param entityIds the changed entities, in increasing order.
      */
-    private final void notifyEntityRemoved(int entityId) {
+    private void notifyListeners(int[] entityIds, int count, boolean added) {
+        if (count == 0) return;
+
         for (int i = 0; i < listeners.size(); i++) {
-            listeners.get(i).onEntityRemoved(this, entityId);
+            final EntityGroupListener listener = listeners.get(i);
+            if (listener instanceof BatchEntityGroupListener) {
+                if (added) ((BatchEntityGroupListener) listener).onEntitiesAdded(this, entityIds, count);
+                else ((BatchEntityGroupListener) listener).onEntitiesRemoved(this, entityIds, count);
+            }
+            else {
+                for (int e = 0; e < count; e++) {
+                    if (added) listener.onEntityAdded(this, entityIds[e]);
+                    else listener.onEntityRemoved(this, entityIds[e]);
+                }
+            }
         }
     }
 
 
+    private static long[] createMask(ComponentType[] componentTypes) {
+        final int[] typeIndexes = new int[componentTypes.length];
+        for (int i = 0; i < componentTypes.length; i++) {
+            typeIndexes[i] = componentTypes[i].getTypeIndex();
+            if (typeIndexes[i] < 0) throw new IllegalArgumentException("The component type " + componentTypes[i].getId() + " has no type index");
+        }
+        return PagedBitSets.createMask(typeIndexes);
+    }
+
     private boolean contains(ComponentType[] array, ComponentType value) {
         for (int i = 0, len = array.length; i < len; i++) {
             if (array[i] == value) return true;
@@ -208,18 +439,22 @@ public final class EntityGroupImpl implements EntityGroup {
 
     private boolean containSameComponents(final ComponentType[] as,
                                           final ComponentType[] bs) {
-        if (as.length == bs.length) {
-            for (ComponentType a : as) {
-                if (!contains(bs, a)) return false;
-            }
+        // Compare as sets, the arrays may contain duplicates
+        for (ComponentType a : as) {
+            if (!contains(bs, a)) return false;
+        }
 
-            for (ComponentType b : bs) {
-                if (!contains(as, b)) return false;
-            }
+        for (ComponentType b : bs) {
+            if (!contains(as, b)) return false;
         }
 
         return true;
     }
 
+    private static ComponentType[] toArray(Collection<ComponentType> componentTypes, String name) {
+        notNull(componentTypes, name);
+        return componentTypes.toArray(new ComponentType[componentTypes.size()]);
+    }
+
 
 }
@@ -0,0 +1,262 @@
+package org.entityflow2.group;
+
+import org.entityflow2.component.ComponentType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Describes which entities belong to an entity group, based on the component types they have:
+ * all of the required types, none of the forbidden types, and at least one of the any-of types, if there are any.
+ * Optional types do not affect which entities match, but tell processors which other components they may access.
+ *
+ * Queries are immutable.  The component types of each clause are kept in a canonical order without duplicates,
+ * so queries with the same clauses are equal regardless of the order the types were listed in,
+ * and the entity manager can share one group between them.
+ *
+ * Build queries with EntityQuery.Builder, e.g. new EntityQuery.Builder().all(position, velocity).none(frozen).build().
+ */
+public final class EntityQuery {
+
+    private static final ComponentType[] NO_TYPES = new ComponentType[0];
+
+    private static final Comparator<ComponentType> CANONICAL_ORDER = new Comparator<ComponentType>() {
+        @Override public int compare(ComponentType a, ComponentType b) {
+            // Order by type index, and by id for component types not yet added to an entity manager
+            if (a.getTypeIndex() != b.getTypeIndex()) return a.getTypeIndex() < b.getTypeIndex() ? -1 : 1;
+            return a.getId().toString().compareTo(b.getId().toString());
+        }
+    };
+
+    private final ComponentType[] requiredTypes;
+    private final ComponentType[] forbiddenTypes;
+    private final ComponentType[] anyTypes;
+    private final ComponentType[] optionalTypes;
+    private final int hashCode;
+
+    /**
+     * @return a query for the entities that have all the specified component types.
+     */
+    public static EntityQuery all(ComponentType... requiredTypes) {
+        return new Builder().all(requiredTypes).build();
+    }
+
+    private EntityQuery(List<ComponentType> requiredTypes,
+                        List<ComponentType> forbiddenTypes,
+                        List<ComponentType> anyTypes,
+                        List<ComponentType> optionalTypes) {
+        this.requiredTypes = canonical(requiredTypes);
+        this.forbiddenTypes = canonical(forbiddenTypes);
+        this.anyTypes = canonical(anyTypes);
+        this.optionalTypes = canonical(optionalTypes);
+
+        for (ComponentType type : this.requiredTypes) {
+            if (Arrays.asList(this.forbiddenTypes).contains(type)) throw new IllegalArgumentException("The component type " + type.getId() + " can not be both required and forbidden");
+        }
+
+        int hash = Arrays.hashCode(this.requiredTypes);
+        hash = 31 * hash + Arrays.hashCode(this.forbiddenTypes);
+        hash = 31 * hash + Arrays.hashCode(this.anyTypes);
+        hash = 31 * hash + Arrays.hashCode(this.optionalTypes);
+        hashCode = hash;
+    }
+
+    /**
+     * @return the component types that an entity must have to match.  Do not modify the returned array.
+     */
+    public ComponentType[] getRequiredTypes() {
+        return requiredTypes;
+    }
+
+    /**
+     * @return the component types that an entity can not have if it matches.  Do not modify the returned array.
+     */
+    public ComponentType[] getForbiddenTypes() {
+        return forbiddenTypes;
+    }
+
+    /**
+     * @return the component types of which an entity must have at least one to match, or an empty array if there is no such condition.
+     *         Do not modify the returned array.
+     */
+    public ComponentType[] getAnyTypes() {
+        return anyTypes;
+    }
+
+    /**
+     * @return component types that matching entities may have, that processors may access.  Do not modify the returned array.
+     */
+    public ComponentType[] getOptionalTypes() {
+        return optionalTypes;
+    }
+
+    /**
+     * @return true if the query has conditions besides the required types.
+     */
+    public boolean hasFilters() {
+        return forbiddenTypes.length > 0 || anyTypes.length > 0;
+    }
+
+    /**
+     * @return a query with the same conditions as this one, but without optional types.
+     *         Queries that only differ in their optional types match the same entities.
+     */
+    public EntityQuery withoutOptionalTypes() {
+        if (optionalTypes.length == 0) return this;
+
+        return new EntityQuery(Arrays.asList(requiredTypes),
+                               Arrays.asList(forbiddenTypes),
+                               Arrays.asList(anyTypes),
+                               Collections.<ComponentType>emptyList());
+    }
+
+    /**
+     * @return true if an entity with the specified component types matches this query.
+     */
+    public boolean matches(ComponentType[] componentTypes) {
+        for (ComponentType type : requiredTypes) {
+            if (!contains(componentTypes, type)) return false;
+        }
+
+        for (ComponentType type : forbiddenTypes) {
+            if (contains(componentTypes, type)) return false;
+        }
+
+        if (anyTypes.length > 0) {
+            for (ComponentType type : anyTypes) {
+                if (contains(componentTypes, type)) return true;
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if the specified component type is used in any clause of this query.
+     */
+    public boolean refersTo(ComponentType componentType) {
+        return contains(requiredTypes, componentType) ||
+               contains(forbiddenTypes, componentType) ||
+               contains(anyTypes, componentType) ||
+               contains(optionalTypes, componentType);
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final EntityQuery that = (EntityQuery) o;
+        return hashCode == that.hashCode &&
+               Arrays.equals(requiredTypes, that.requiredTypes) &&
+               Arrays.equals(forbiddenTypes, that.forbiddenTypes) &&
+               Arrays.equals(anyTypes, that.anyTypes) &&
+               Arrays.equals(optionalTypes, that.optionalTypes);
+    }
+
+    @Override public int hashCode() {
+        return hashCode;
+    }
+
+    @Override public String toString() {
+        final StringBuilder sb = new StringBuilder("EntityQuery{");
+        appendClause(sb, "all", requiredTypes);
+        appendClause(sb, "none", forbiddenTypes);
+        appendClause(sb, "any", anyTypes);
+        appendClause(sb, "optional", optionalTypes);
+        return sb.append("}").toString();
+    }
+
+    private static void appendClause(StringBuilder sb, String name, ComponentType[] types) {
+        if (types.length == 0) return;
+
+        if (sb.charAt(sb.length() - 1) != '{') sb.append(", ");
+        sb.append(name).append("(");
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(types[i].getId());
+        }
+        sb.append(")");
+    }
+
+    private static ComponentType[] canonical(List<ComponentType> types) {
+        if (types.isEmpty()) return NO_TYPES;
+
+        final List<ComponentType> unique = new ArrayList<ComponentType>(types.size());
+        for (ComponentType type : types) {
+            if (!unique.contains(type)) unique.add(type);
+        }
+        Collections.sort(unique, CANONICAL_ORDER);
+
+        return unique.toArray(new ComponentType[unique.size()]);
+    }
+
+    private static boolean contains(ComponentType[] array, ComponentType value) {
+        for (int i = 0, len = array.length; i < len; i++) {
+            if (array[i] == value) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Collects the clauses of a query.  The methods can be called several times, the types are added to the clause.
+     */
+    public static final class Builder {
+        private final List<ComponentType> requiredTypes = new ArrayList<ComponentType>();
+        private final List<ComponentType> forbiddenTypes = new ArrayList<ComponentType>();
+        private final List<ComponentType> anyTypes = new ArrayList<ComponentType>();
+        private final List<ComponentType> optionalTypes = new ArrayList<ComponentType>();
+
+        /**
+         * @param componentTypes component types that matching entities must have.
+         */
+        public Builder all(ComponentType... componentTypes) {
+            add(requiredTypes, componentTypes, "all");
+            return this;
+        }
+
+        /**
+         * @param componentTypes component types that matching entities can not have.
+         */
+        public Builder none(ComponentType... componentTypes) {
+            add(forbiddenTypes, componentTypes, "none");
+            return this;
+        }
+
+        /**
+         * @param componentTypes component types of which matching entities must have at least one.
+         */
+        public Builder any(ComponentType... componentTypes) {
+            add(anyTypes, componentTypes, "any");
+            return this;
+        }
+
+        /**
+         * @param componentTypes component types that matching entities may have, that processors may access.
+         */
+        public Builder optional(ComponentType... componentTypes) {
+            add(optionalTypes, componentTypes, "optional");
+            return this;
+        }
+
+        /**
+         * @return a new query with the clauses added to this builder.
+         */
+        public EntityQuery build() {
+            return new EntityQuery(requiredTypes, forbiddenTypes, anyTypes, optionalTypes);
+        }
+
+        private static void add(List<ComponentType> clause, ComponentType[] componentTypes, String clauseName) {
+            notNull(componentTypes, clauseName);
+            for (int i = 0; i < componentTypes.length; i++) {
+                notNull(componentTypes[i], clauseName + " componentType " + i);
+                clause.add(componentTypes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.entityflow2.group;
+
+import java.util.Arrays;
+
+/**
+ * The ids of the entities in a group, stored in increasing order in a primitive int array.
+ * Iterating is a linear scan over the array with get(index), and membership checks are binary searches.
+ * Uses about four bytes per entity, and creates no objects per entity.
+ *
+ * The group collects added and removed entities and merges them in batches, so the array is only rebuilt
+ * once per batch instead of once per change.
+ *
+ * Not thread safe.  Read only outside the group package.
+ */
+public final class SortedEntityIds {
+
+    private static final int[] NO_IDS = new int[0];
+
+    private int[] ids = NO_IDS;
+    private int size = 0;
+
+    /**
+     * @return number of entities.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if there are no entities.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * @param index index of the entity, from 0 (inclusive) to size (exclusive).
+     * @return the entity id at the specified index.  The ids are in increasing order.
+     */
+    public int get(int index) {
+        if (index < 0 || index >= size) throw new IndexOutOfBoundsException("Index " + index + " is out of range, size is " + size);
+        return ids[index];
+    }
+
+    /**
+     * @return true if the specified entity is included.
+     */
+    public boolean contains(int entityId) {
+        return Arrays.binarySearch(ids, 0, size, entityId) >= 0;
+    }
+
+    /**
+     * @return index of the specified entity, or a negative value if it is not included.
+     */
+    public int indexOf(int entityId) {
+        final int index = Arrays.binarySearch(ids, 0, size, entityId);
+        return index >= 0 ? index : -1;
+    }
+
+    /**
+     * @return a new array with the entity ids, in increasing order.
+     */
+    public int[] toIntArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * @return approximate number of bytes used for storing the entity ids.
+     */
+    public long getMemoryUsageBytes() {
+        return (long) ids.length * 4;
+    }
+
+    @Override public String toString() {
+        final StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(ids[i]);
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * Removes and adds the specified entities in one linear pass over the array.
+     * @param added ids to add, sorted in increasing order, not already included.
+     * @param removed ids to remove, sorted in increasing order, all included.
+     */
+    void merge(int[] added, int[] removed) {
+        merge(added, added.length, removed, removed.length);
+    }
+
+    /**
+     * Removes and adds the specified entities in one linear pass over the array.
+     * @param added ids to add, sorted in increasing order, not already included.
+     * @param addedCount number of ids to add from the start of the added array.
+     * @param removed ids to remove, sorted in increasing order, all included.
+     * @param removedCount number of ids to remove from the start of the removed array.
+     */
+    void merge(int[] added, int addedCount, int[] removed, int removedCount) {
+        // Remove in place
+        if (removedCount > 0) {
+            int write = 0;
+            int r = 0;
+            for (int read = 0; read < size; read++) {
+                final int id = ids[read];
+                while (r < removedCount && removed[r] < id) r++;
+                if (r < removedCount && removed[r] == id) {
+                    r++;
+                }
+                else {
+                    ids[write++] = id;
+                }
+            }
+            size = write;
+        }
+
+        if (addedCount > 0) {
+            final int newSize = size + addedCount;
+            if (newSize > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(newSize, ids.length + (ids.length >> 1)));
+            }
+
+            // Merge from the end, so that no temporary array is needed
+            int a = addedCount - 1;
+            int existing = size - 1;
+            for (int write = newSize - 1; a >= 0; write--) {
+                if (existing >= 0 && ids[existing] > added[a]) {
+                    ids[write] = ids[existing--];
+                }
+                else {
+                    ids[write] = added[a--];
+                }
+            }
+            size = newSize;
+        }
+
+        // Release memory if most of the entities were removed
+        if (size < ids.length >> 2) {
+            ids = size == 0 ? NO_IDS : Arrays.copyOf(ids, size + (size >> 1));
+        }
+    }
+}
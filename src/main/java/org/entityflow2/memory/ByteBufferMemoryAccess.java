@@ -0,0 +1,77 @@
+package org.entityflow2.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Memory access through the absolute get and put methods of ByteBuffer, which check the bounds and byte order on each access.
+ * Works with any ByteBuffer.
+ */
+public final class ByteBufferMemoryAccess extends MemoryAccess {
+
+    @Override public byte getByte(ByteBuffer buffer, int offset) {
+        return buffer.get(offset);
+    }
+
+    @Override public void putByte(ByteBuffer buffer, int offset, byte value) {
+        buffer.put(offset, value);
+    }
+
+    @Override public short getShort(ByteBuffer buffer, int offset) {
+        return buffer.getShort(offset);
+    }
+
+    @Override public void putShort(ByteBuffer buffer, int offset, short value) {
+        buffer.putShort(offset, value);
+    }
+
+    @Override public char getChar(ByteBuffer buffer, int offset) {
+        return buffer.getChar(offset);
+    }
+
+    @Override public void putChar(ByteBuffer buffer, int offset, char value) {
+        buffer.putChar(offset, value);
+    }
+
+    @Override public int getInt(ByteBuffer buffer, int offset) {
+        return buffer.getInt(offset);
+    }
+
+    @Override public void putInt(ByteBuffer buffer, int offset, int value) {
+        buffer.putInt(offset, value);
+    }
+
+    @Override public long getLong(ByteBuffer buffer, int offset) {
+        return buffer.getLong(offset);
+    }
+
+    @Override public void putLong(ByteBuffer buffer, int offset, long value) {
+        buffer.putLong(offset, value);
+    }
+
+    @Override public float getFloat(ByteBuffer buffer, int offset) {
+        return buffer.getFloat(offset);
+    }
+
+    @Override public void putFloat(ByteBuffer buffer, int offset, float value) {
+        buffer.putFloat(offset, value);
+    }
+
+    @Override public double getDouble(ByteBuffer buffer, int offset) {
+        return buffer.getDouble(offset);
+    }
+
+    @Override public void putDouble(ByteBuffer buffer, int offset, double value) {
+        buffer.putDouble(offset, value);
+    }
+
+    @Override public void copy(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset, int length) {
+        // Copy eight bytes at a time, and any remaining bytes one by one
+        int index = 0;
+        for (; index + 8 <= length; index += 8) {
+            target.putLong(targetOffset + index, source.getLong(sourceOffset + index));
+        }
+        for (; index < length; index++) {
+            target.put(targetOffset + index, source.get(sourceOffset + index));
+        }
+    }
+}
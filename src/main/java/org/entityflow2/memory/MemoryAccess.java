@@ -0,0 +1,83 @@
+package org.entityflow2.memory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes primitive values at absolute offsets in the direct ByteBuffers that component data is stored in.
+ * Only used by component types and block storages on the direct, native order buffers that they allocate themselves;
+ * the public Type classes always use the bounds checked ByteBuffer accessors, as they may be given any kind of buffer.
+ *
+ * The implementation used by the library is selected with the system property "entityflow.memoryAccess",
+ * which can be "buffer" (default) for the bounds checked ByteBuffer accessors, or "unsafe" for unchecked native memory access.
+ * If unsafe access is requested but not available, the ByteBuffer accessors are used.
+ * Individual component types can use another implementation than the default, see ComponentType.setMemoryAccess.
+ *
+ * The unchecked implementation references sun.misc.Unsafe, which makes javac emit a warning that can not be suppressed.
+ * To keep the default build free of warnings it is kept in the separate src/unsafe source root, compiled only with the
+ * "unsafe" Maven profile, and loaded by name here.  Without it unchecked access is simply not available.
+ */
+public abstract class MemoryAccess {
+
+    /**
+     * Name of the system property used to select the memory access implementation.
+     */
+    public static final String MEMORY_ACCESS_PROPERTY = "entityflow.memoryAccess";
+
+    private static final String UNCHECKED_CLASS_NAME = "org.entityflow2.memory.UnsafeMemoryAccess";
+
+    /**
+     * The memory access implementation used by component types that do not specify their own.
+     */
+    public static final MemoryAccess DEFAULT = createDefault();
+
+    public abstract byte getByte(ByteBuffer buffer, int offset);
+    public abstract void putByte(ByteBuffer buffer, int offset, byte value);
+
+    public abstract short getShort(ByteBuffer buffer, int offset);
+    public abstract void putShort(ByteBuffer buffer, int offset, short value);
+
+    public abstract char getChar(ByteBuffer buffer, int offset);
+    public abstract void putChar(ByteBuffer buffer, int offset, char value);
+
+    public abstract int getInt(ByteBuffer buffer, int offset);
+    public abstract void putInt(ByteBuffer buffer, int offset, int value);
+
+    public abstract long getLong(ByteBuffer buffer, int offset);
+    public abstract void putLong(ByteBuffer buffer, int offset, long value);
+
+    public abstract float getFloat(ByteBuffer buffer, int offset);
+    public abstract void putFloat(ByteBuffer buffer, int offset, float value);
+
+    public abstract double getDouble(ByteBuffer buffer, int offset);
+    public abstract void putDouble(ByteBuffer buffer, int offset, double value);
+
+    /**
+     * Copies length bytes from the source buffer to the target buffer.
+     * The source and target ranges may be in the same buffer, but should not overlap.
+     */
+    public abstract void copy(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset, int length);
+
+    /**
+     * @return a new memory access that reads and writes at the native address of direct buffers without bounds checks,
+     *         or null if it was not compiled in (see the "unsafe" Maven profile) or is not supported on this platform.
+     *         Only safe to use on direct buffers in the native byte order, such as the ones allocated by the block storages.
+     */
+    public static MemoryAccess createUnchecked() {
+        try {
+            return (MemoryAccess) Class.forName(UNCHECKED_CLASS_NAME).getConstructor().newInstance();
+        }
+        catch (Throwable e) {
+            // Not compiled in, or not available on this platform
+            return null;
+        }
+    }
+
+    private static MemoryAccess createDefault() {
+        final String selected = System.getProperty(MEMORY_ACCESS_PROPERTY, "buffer");
+        if ("unsafe".equalsIgnoreCase(selected.trim())) {
+            final MemoryAccess unchecked = createUnchecked();
+            if (unchecked != null) return unchecked;
+        }
+        return new ByteBufferMemoryAccess();
+    }
+}
@@ -37,21 +37,8 @@ public abstract class EntityProcessor1Base<C extends ComponentType> extends Enti
         return componentType;
     }
 
-    @Override protected final void loopEntities(final Time time) {
-        // This may be a bit faster than iterating the entities using the entityGroup, and produces a bit less garbage per frame
-        int currentEntityId = 0;
-        int componentIndex = 0;
-        while (currentEntityId >= 0) {
-            currentEntityId = componentType.getEntityAtComponentIndex(componentIndex++);
-
-            if (currentEntityId > 0) {
-                updateEntity(time, currentEntityId, componentType);
-            }
-        }
-    }
-
     @Override protected final void updateEntity(Time time, int entityId) {
-        // Not used
+        updateEntity(time, entityId, componentType);
     }
 
     protected abstract void updateEntity(Time time, int entityId, C componentType);
@@ -1,12 +1,16 @@
 package org.entityflow2.processor;
 
-import it.unimi.dsi.fastutil.ints.IntBidirectionalIterator;
 import org.entityflow2.EntityManager;
+import org.entityflow2.component.ComponentCursor;
 import org.entityflow2.component.ComponentType;
 import org.entityflow2.group.EntityGroup;
+import org.entityflow2.group.EntityQuery;
+import org.entityflow2.group.SortedEntityIds;
 import org.flowutils.time.Time;
 import org.flowutils.updating.strategies.UpdateStrategy;
 
+import java.util.concurrent.ExecutorService;
+
 import static org.flowutils.Check.notNull;
 
 /**
@@ -16,6 +20,9 @@ public abstract class EntityProcessorBase extends ProcessorBase {
 
     private ComponentType[] componentTypes;
     private EntityGroup processedEntities;
+    private final ComponentCursor cursor;
+    private boolean cursorLoop = false;
+    private ParallelEntityLoop parallelLoop;
 
     public EntityProcessorBase(UpdateStrategy updateStrategy, ComponentType ... componentTypes) {
         super(updateStrategy);
@@ -26,6 +33,60 @@ public abstract class EntityProcessorBase extends ProcessorBase {
         }
 
         this.componentTypes = componentTypes;
+        cursor = componentTypes.length > 0 ? new ComponentCursor(componentTypes) : null;
+    }
+
+    /**
+     * @return cursor positioned at the entity that is currently being updated.
+     *         Can be passed to the property accessors instead of the entity id, to avoid looking up the component of the entity.
+     * @throws IllegalStateException if the entities are not currently looped with the cursor, see isCursorLoop.
+     */
+    protected final ComponentCursor getCursor() {
+        if (!cursorLoop) throw new IllegalStateException("The entities of " + this + " are not looped with the cursor, use the entity id instead");
+        return cursor;
+    }
+
+    /**
+     * @return true while updateEntity is called from a loop over the component blocks, where getCursor can be used.
+     *         The blocks are only walked directly when the dependencies of the processor declare it structurally read only,
+     *         the group has no changes that are not yet visible, the cursor can find the components without lookups,
+     *         and the entities are not updated in parallel.  Otherwise the entity ids of the group are looped.
+     */
+    protected final boolean isCursorLoop() {
+        return cursorLoop;
+    }
+
+    /**
+     * Enables or disables updating the entities of this processor in parallel.
+     *
+     * Enabling it declares that updateEntity only writes the components of the entity it is called for,
+     * and only reads data that no other entity update writes, so that entities can be updated in any order from several threads.
+     * updateEntity should not create or remove entities or components either.
+     * The cursor can not be used when updating in parallel, updateEntity is called with the entity ids only.
+     * beforeEntityUpdate and afterEntityUpdate are still called in the thread updating the processor.
+     *
+     * @param executor executor to run the workers on, or null to update the entities one at a time in the thread updating the processor.
+     *                 Should have workerCount - 1 threads available, and not be the executor this processor is itself updated on,
+     *                 as a processor waiting for workers queued behind it would never complete.
+     * @param workerCount number of workers, including the thread updating the processor.
+     */
+    public final void setParallelUpdate(ExecutorService executor, int workerCount) {
+        parallelLoop = executor == null ? null : new ParallelEntityLoop(this, executor, workerCount);
+    }
+
+    /**
+     * @return true if the entities of this processor are updated in parallel.
+     */
+    public final boolean isParallelUpdate() {
+        return parallelLoop != null;
+    }
+
+    /**
+     * @return number of entities that each worker claims at a time when updating in parallel, adapted to the time entity updates took,
+     *         or 0 if parallel updates are not enabled.
+     */
+    public final int getParallelChunkSize() {
+        return parallelLoop != null ? parallelLoop.getChunkSize() : 0;
     }
 
     /**
@@ -45,7 +106,17 @@ public abstract class EntityProcessorBase extends ProcessorBase {
     }
 
     @Override public final void init(EntityManager entityManager) {
-        processedEntities = entityManager.getEntityGroup(getComponentTypes());
+        final EntityQuery.Builder query = new EntityQuery.Builder().all(getComponentTypes());
+        configureQuery(query);
+        processedEntities = entityManager.getEntityGroup(query.build());
+    }
+
+    /**
+     * Override to add further conditions to the query that selects the processed entities, e.g. forbidden component types,
+     * instead of checking them in updateEntity.  The required component types of this processor have already been added.
+     * Called when the processor is initialized.
+     */
+    protected void configureQuery(EntityQuery.Builder query) {
     }
 
     @Override protected final void doUpdate(final Time time) {
@@ -53,15 +124,47 @@ public abstract class EntityProcessorBase extends ProcessorBase {
         beforeEntityUpdate(time);
 
         // Loop the entities that have the component
-        loopEntities(time);
+        if (parallelLoop != null) {
+            parallelLoop.loop(time, getProcessedEntities().getEntities());
+        }
+        else {
+            loopEntities(time);
+        }
 
         // Do any post-loop work
         afterEntityUpdate(time);
     }
 
     protected void loopEntities(final Time time) {
-        for (IntBidirectionalIterator iterator = getProcessedEntities().getEntities().iterator(); iterator.hasNext(); ) {
-            updateEntity(time, iterator.nextInt());
+        final EntityGroup group = getProcessedEntities();
+
+        // Blocks move when components are added or removed, and the group does not yet contain entities with pending changes,
+        // so only walk the blocks when the processor does not change them and they match the group
+        if (cursor != null && getDependencies().isStructurallyReadOnly() && !group.hasPendingChanges()) {
+            cursor.reset();
+            if (cursor.isLookupFree()) {
+                // Walk the component blocks directly, e.g. as a merge join over sorted component types
+                final boolean filtered = group.getQuery().hasFilters();
+                cursorLoop = true;
+                try {
+                    while (cursor.next()) {
+                        // The cursor visits all entities with the components, skip any excluded by the other conditions of the query
+                        if (filtered && !group.getEntities().contains(cursor.getEntityId())) continue;
+
+                        updateEntity(time, cursor.getEntityId());
+                    }
+                }
+                finally {
+                    cursorLoop = false;
+                }
+                return;
+            }
+        }
+
+        // The entity ids of the group do not change while it is looped, changes are pending until the next flush
+        final SortedEntityIds entities = group.getEntities();
+        for (int i = 0; i < entities.size(); i++) {
+            updateEntity(time, entities.get(i));
         }
     }
 
@@ -0,0 +1,212 @@
+package org.entityflow2.processor;
+
+import org.entityflow2.group.SortedEntityIds;
+import org.flowutils.time.Time;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.flowutils.Check.notNull;
+import static org.flowutils.Check.positive;
+
+/**
+ * Calls updateEntity of an EntityProcessorBase for the processed entities from several threads.
+ *
+ * The entities are split into chunks, and each worker is given a contiguous range of the chunks,
+ * the same range on every update as long as the number of entities stays the same, so that a worker keeps processing
+ * the same part of the component data.  Workers that finish their own range early steal chunks from the ranges of the others.
+ *
+ * The chunk size adapts to the time updating an entity took on earlier updates, so that a chunk takes about TARGET_CHUNK_NANOS.
+ * The first worker runs in the thread that updates the processor, the others are submitted to the executor.
+ */
+final class ParallelEntityLoop {
+
+    /**
+     * Approximate time that processing one chunk should take.
+     * Long enough that the overhead of claiming chunks is small, short enough that idle workers can steal work.
+     */
+    static final long TARGET_CHUNK_NANOS = 100000;
+
+    static final int MIN_CHUNK_SIZE = 64;
+    static final int INITIAL_CHUNK_SIZE = 1024;
+
+    /**
+     * Weight of the latest measurement in the smoothed per-entity cost.
+     */
+    private static final double COST_SMOOTHING = 0.25;
+
+    private final EntityProcessorBase processor;
+    private final ExecutorService executor;
+    private final Worker[] workers;
+    private final List<Future<?>> futures;
+
+    private double nanosPerEntity = 0;
+    private int chunkSize = INITIAL_CHUNK_SIZE;
+
+    // State of the update in progress, written before the workers are started
+    private Time time;
+    private SortedEntityIds entities;
+    private int entityCount;
+    private int processorPosition;
+
+    ParallelEntityLoop(EntityProcessorBase processor, ExecutorService executor, int workerCount) {
+        notNull(processor, "processor");
+        notNull(executor, "executor");
+        positive(workerCount, "workerCount");
+
+        this.processor = processor;
+        this.executor = executor;
+
+        workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker(i);
+        }
+        futures = new ArrayList<Future<?>>(workerCount);
+    }
+
+    int getWorkerCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return number of entities in each chunk on the next update.
+     */
+    int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * @return smoothed time in nanoseconds that updating one entity took on earlier updates, or 0 if not yet measured.
+     */
+    double getNanosPerEntity() {
+        return nanosPerEntity;
+    }
+
+    /**
+     * Updates the specified entities, returning when all have been updated.
+     * The entities may not change during the update.
+     */
+    void loop(Time time, SortedEntityIds entities) {
+        entityCount = entities.size();
+        if (entityCount == 0) return;
+
+        this.time = time;
+        this.entities = entities;
+        processorPosition = UpdateSlot.current().getProcessorPosition();
+
+        // Give each worker a contiguous range of chunks
+        final int chunkCount = (entityCount + chunkSize - 1) / chunkSize;
+        final int activeWorkers = Math.min(workers.length, chunkCount);
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].assign((int) ((long) i * chunkCount / activeWorkers),
+                              i < activeWorkers ? (int) ((long) (i + 1) * chunkCount / activeWorkers) : 0);
+        }
+
+        futures.clear();
+        Throwable failure = null;
+        try {
+            for (int i = 1; i < activeWorkers; i++) {
+                futures.add(executor.submit(workers[i]));
+            }
+
+            workers[0].run();
+        }
+        catch (RuntimeException e) {
+            failure = e;
+        }
+        catch (Error e) {
+            failure = e;
+        }
+        finally {
+            // Wait for the other workers even if this one failed, so no entities are updated after this returns
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) failure = e.getCause();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) failure = new IllegalStateException("Interrupted while waiting for entity updates to complete", e);
+                }
+            }
+
+            this.time = null;
+            this.entities = null;
+        }
+
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new IllegalStateException("Entity update failed: " + failure.getMessage(), failure);
+
+        adaptChunkSize(activeWorkers);
+    }
+
+    private void adaptChunkSize(int activeWorkers) {
+        long busyNanos = 0;
+        for (int i = 0; i < activeWorkers; i++) {
+            busyNanos += workers[i].busyNanos;
+        }
+
+        final double measured = (double) busyNanos / entityCount;
+        nanosPerEntity = nanosPerEntity <= 0 ? measured : nanosPerEntity + COST_SMOOTHING * (measured - nanosPerEntity);
+
+        // Aim for chunks of about the target duration, but at least one chunk per worker
+        final double targetSize = nanosPerEntity > 0 ? TARGET_CHUNK_NANOS / nanosPerEntity : INITIAL_CHUNK_SIZE;
+        final int maxSize = Math.max(MIN_CHUNK_SIZE, (entityCount + workers.length - 1) / workers.length);
+        chunkSize = (int) Math.max(MIN_CHUNK_SIZE, Math.min(maxSize, targetSize));
+    }
+
+    private final class Worker implements Runnable {
+        private final int index;
+        private final AtomicInteger nextChunk = new AtomicInteger();
+        private int endChunk;
+        private long busyNanos;
+
+        private Worker(int index) {
+            this.index = index;
+        }
+
+        void assign(int firstChunk, int endChunk) {
+            nextChunk.set(firstChunk);
+            this.endChunk = endChunk;
+            busyNanos = 0;
+        }
+
+        @Override public void run() {
+            final long start = System.nanoTime();
+
+            // Workers on other threads run in a slot of their own under the processor, the first one is already in the processor slot
+            final UpdateSlot slot = UpdateSlot.current();
+            final boolean entered = !slot.isActive() && processorPosition >= 0;
+            if (entered) slot.enter(processorPosition, index);
+            try {
+                // Own chunks first
+                processChunks(this);
+
+                // Then steal from the others, starting with the following worker
+                for (int i = 1; i < workers.length; i++) {
+                    processChunks(workers[(index + i) % workers.length]);
+                }
+            }
+            finally {
+                if (entered) slot.exit();
+            }
+
+            busyNanos = System.nanoTime() - start;
+        }
+
+        private void processChunks(Worker owner) {
+            int chunk;
+            while ((chunk = owner.nextChunk.getAndIncrement()) < owner.endChunk) {
+                final int end = (int) Math.min(entityCount, (long) (chunk + 1) * chunkSize);
+                for (int i = chunk * chunkSize; i < end; i++) {
+                    processor.updateEntity(time, entities.get(i));
+                }
+            }
+        }
+    }
+}
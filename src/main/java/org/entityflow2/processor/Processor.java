@@ -38,4 +38,10 @@ public interface Processor extends Updating {
      *                      Called by the EntityManager when the processor is registered.
      */
     void setEntityManager(EntityManager entityManager);
+
+    /**
+     * @return the component types this processor reads and writes, and the processors it should run before or after.
+     *         Used to decide which processors can be updated in parallel.
+     */
+    ProcessorDependencies getDependencies();
 }
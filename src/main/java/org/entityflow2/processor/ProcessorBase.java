@@ -13,6 +13,7 @@ import static org.flowutils.Check.notNull;
 public abstract class ProcessorBase extends UpdatingWithStrategy implements Processor {
 
     private EntityManager entityManager;
+    private final ProcessorDependencies dependencies = new ProcessorDependencies();
 
     protected ProcessorBase() {
         this(null);
@@ -36,4 +37,8 @@ public abstract class ProcessorBase extends UpdatingWithStrategy implements Proc
         this.entityManager = entityManager;
     }
 
+    @Override public final ProcessorDependencies getDependencies() {
+        return dependencies;
+    }
+
 }
@@ -0,0 +1,168 @@
+package org.entityflow2.processor;
+
+import org.entityflow2.component.ComponentType;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Declares which component types a Processor reads and writes, and which other processors it should run before or after.
+ * Used by the ProcessorScheduler to run processors that do not conflict in parallel.
+ *
+ * Two processors conflict if one writes a component type that the other reads or writes.  Conflicting processors
+ * run in the order they were added to the entity manager, unless explicit before / after constraints order them differently.
+ *
+ * A processor that has not declared any component types runs exclusively, as nothing is known about what it accesses.
+ * Processors that run in parallel should not create or remove entities, or add or remove components, directly.
+ * They can record such changes in the command buffer returned by EntityManager.getThreadCommandBuffer, or in one created
+ * with EntityManager.createCommandBuffer; the entity manager applies them after all processors have been updated.
+ *
+ * Should be set up before the entity manager is updated for the first time.
+ */
+public final class ProcessorDependencies {
+
+    private final Set<ComponentType> readTypes = new LinkedHashSet<ComponentType>();
+    private final Set<ComponentType> writtenTypes = new LinkedHashSet<ComponentType>();
+    private final Set<Processor> runAfter = new LinkedHashSet<Processor>();
+    private final Set<Processor> runBefore = new LinkedHashSet<Processor>();
+    private boolean exclusive = false;
+    private boolean structurallyReadOnly = false;
+    private int modificationCount = 0;
+
+    /**
+     * @param componentTypes component types whose data the processor reads, but does not modify.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies reads(ComponentType... componentTypes) {
+        addAll(readTypes, componentTypes, "componentTypes");
+        return this;
+    }
+
+    /**
+     * @param componentTypes component types whose data the processor modifies.  A written type may also be read.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies writes(ComponentType... componentTypes) {
+        addAll(writtenTypes, componentTypes, "componentTypes");
+        return this;
+    }
+
+    /**
+     * @param processors processors that should have completed their update before the processor is updated.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies runAfter(Processor... processors) {
+        addAll(runAfter, processors, "processors");
+        return this;
+    }
+
+    /**
+     * @param processors processors that should only be updated after the processor has completed its update.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies runBefore(Processor... processors) {
+        addAll(runBefore, processors, "processors");
+        return this;
+    }
+
+    /**
+     * Marks the processor as one that can not run in parallel with any other processor,
+     * e.g. because it creates entities or adds or removes components.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies exclusive() {
+        exclusive = true;
+        modificationCount++;
+        return this;
+    }
+
+    /**
+     * Declares that the processor does not create or remove entities, or add or remove components, directly while it is updated.
+     * It may still record such changes in a command buffer, as those are applied after all processors have been updated.
+     * Lets entity processors walk the component blocks of their component types instead of the entity ids of their group,
+     * as the blocks do not move while the processor is updated.
+     * @return this, for chaining.
+     */
+    public ProcessorDependencies structurallyReadOnly() {
+        structurallyReadOnly = true;
+        return this;
+    }
+
+    /**
+     * @return true if the processor has declared that it does not make structural changes directly while it is updated.
+     */
+    public boolean isStructurallyReadOnly() {
+        return structurallyReadOnly;
+    }
+
+    /**
+     * @return true if the processor can not run in parallel with other processors,
+     *         either because it was marked exclusive, or because it has not declared which component types it accesses.
+     */
+    public boolean isExclusive() {
+        return exclusive || (readTypes.isEmpty() && writtenTypes.isEmpty());
+    }
+
+    /**
+     * @return the component types that the processor reads but does not write.
+     */
+    public Set<ComponentType> getReadTypes() {
+        return Collections.unmodifiableSet(readTypes);
+    }
+
+    /**
+     * @return the component types that the processor writes.
+     */
+    public Set<ComponentType> getWrittenTypes() {
+        return Collections.unmodifiableSet(writtenTypes);
+    }
+
+    /**
+     * @return processors that should be updated before the processor.
+     */
+    public Set<Processor> getRunAfter() {
+        return Collections.unmodifiableSet(runAfter);
+    }
+
+    /**
+     * @return processors that should be updated after the processor.
+     */
+    public Set<Processor> getRunBefore() {
+        return Collections.unmodifiableSet(runBefore);
+    }
+
+    /**
+     * @return true if the processor and a processor with the other dependencies may not run at the same time.
+     */
+    public boolean conflictsWith(ProcessorDependencies other) {
+        if (isExclusive() || other.isExclusive()) return true;
+
+        for (ComponentType type : writtenTypes) {
+            if (other.readTypes.contains(type) || other.writtenTypes.contains(type)) return true;
+        }
+        for (ComponentType type : other.writtenTypes) {
+            if (readTypes.contains(type)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return number of changes made to these dependencies, used to detect when the schedule needs to be rebuilt.
+     */
+    public int getModificationCount() {
+        return modificationCount;
+    }
+
+    private <T> void addAll(Set<T> target, T[] values, String name) {
+        notNull(values, name);
+        for (int i = 0; i < values.length; i++) {
+            notNull(values[i], name + " " + i);
+            target.add(values[i]);
+        }
+        modificationCount++;
+    }
+}
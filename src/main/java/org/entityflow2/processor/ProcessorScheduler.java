@@ -0,0 +1,418 @@
+package org.entityflow2.processor;
+
+import org.flowutils.time.Time;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Updates a list of processors, running processors that do not conflict in parallel on an ExecutorService.
+ *
+ * The schedule is a dependency graph built from the ProcessorDependencies of the processors:
+ * conflicting processors run in the order they are listed in, unless explicit before / after constraints
+ * order them differently, and other processors may run at the same time.
+ *
+ * Records when each processor started and how long it took on the latest update, and can describe the schedule
+ * along with its critical path, the chain of dependent processors that took the longest time to run.
+ *
+ * While a processor is updated, UpdateSlot.current() holds its position in the schedule order.
+ *
+ * The schedule is built when the scheduler is created, create a new one when processors or their dependencies change.
+ */
+public final class ProcessorScheduler {
+
+    private static final byte PLACING = 1;
+    private static final byte PLACED = 2;
+
+    private final Processor[] processors;
+    private final int[] order;
+    private final int[] positions;
+    private final int[][] predecessors;
+    private final int[][] successors;
+    private final int dependencyModificationCount;
+
+    private final Callable<Integer>[] tasks;
+    private final long[] startNanos;
+    private final long[] durationNanos;
+    private final long[] threadIds;
+    private Time currentTime;
+    private long currentUpdateStart;
+    private long lastUpdateNanos;
+
+    /**
+     * @param processors processors to schedule, in the order they were registered.
+     * @throws IllegalStateException if the before / after constraints of the processors contain a cycle.
+     */
+    @SuppressWarnings("unchecked")
+    public ProcessorScheduler(List<? extends Processor> processors) {
+        notNull(processors, "processors");
+
+        final int count = processors.size();
+        this.processors = processors.toArray(new Processor[count]);
+
+        final Map<Processor, Integer> indexes = new IdentityHashMap<Processor, Integer>();
+        int modificationCount = 0;
+        for (int i = 0; i < count; i++) {
+            indexes.put(this.processors[i], i);
+            modificationCount += this.processors[i].getDependencies().getModificationCount();
+        }
+        dependencyModificationCount = modificationCount;
+
+        // Explicit constraints, ignoring processors that are not scheduled
+        final boolean[][] edges = new boolean[count][count];
+        for (int i = 0; i < count; i++) {
+            final ProcessorDependencies dependencies = this.processors[i].getDependencies();
+            for (Processor processor : dependencies.getRunAfter()) {
+                final Integer index = indexes.get(processor);
+                if (index != null) edges[checkNotSelf(index, i)][i] = true;
+            }
+            for (Processor processor : dependencies.getRunBefore()) {
+                final Integer index = indexes.get(processor);
+                if (index != null) edges[i][checkNotSelf(index, i)] = true;
+            }
+        }
+
+        // Order by the explicit constraints, keeping the registration order where they allow,
+        // by placing each processor in turn, preceded by any processors it must run after that are not yet placed
+        order = new int[count];
+        positions = new int[count];
+        final byte[] state = new byte[count];
+        int placedCount = 0;
+        for (int i = 0; i < count; i++) {
+            placedCount = place(i, edges, state, order, placedCount);
+        }
+        for (int position = 0; position < count; position++) {
+            positions[order[position]] = position;
+        }
+
+        // Conflicting processors run in that order
+        for (int a = 0; a < count; a++) {
+            for (int b = a + 1; b < count; b++) {
+                if (this.processors[a].getDependencies().conflictsWith(this.processors[b].getDependencies())) {
+                    if (positions[a] < positions[b]) edges[a][b] = true;
+                    else edges[b][a] = true;
+                }
+            }
+        }
+
+        predecessors = new int[count][];
+        successors = new int[count][];
+        for (int i = 0; i < count; i++) {
+            predecessors[i] = connected(edges, i, false);
+            successors[i] = connected(edges, i, true);
+        }
+
+        tasks = new Callable[count];
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            tasks[i] = new Callable<Integer>() {
+                @Override public Integer call() throws Exception {
+                    runProcessor(index);
+                    return index;
+                }
+            };
+        }
+        startNanos = new long[count];
+        durationNanos = new long[count];
+        threadIds = new long[count];
+    }
+
+    /**
+     * Updates all the processors, respecting their dependencies.
+     * Returns when all processors have completed their update.
+     * If a processor throws an exception, no further processors are started, and the exception is rethrown
+     * after the processors already running have completed.
+     *
+     * @param time time to pass to the processors.
+     * @param executor executor to run the processors on, or null to run them one at a time in the calling thread.
+     */
+    public void update(Time time, ExecutorService executor) {
+        notNull(time, "time");
+
+        currentTime = time;
+        currentUpdateStart = System.nanoTime();
+        if (executor == null || processors.length <= 1) {
+            for (int i = 0; i < order.length; i++) {
+                runProcessor(order[i]);
+            }
+        }
+        else {
+            updateInParallel(executor);
+        }
+        lastUpdateNanos = System.nanoTime() - currentUpdateStart;
+        currentTime = null;
+    }
+
+    /**
+     * @return true if the dependencies of the scheduled processors have changed after this schedule was built.
+     */
+    public boolean isOutdated() {
+        int modificationCount = 0;
+        for (Processor processor : processors) {
+            modificationCount += processor.getDependencies().getModificationCount();
+        }
+        return modificationCount != dependencyModificationCount;
+    }
+
+    /**
+     * @return the scheduled processors in an order that satisfies their dependencies.
+     *         Processors are updated in this order when no executor is used.
+     */
+    public List<Processor> getOrder() {
+        final List<Processor> result = new ArrayList<Processor>(order.length);
+        for (int index : order) {
+            result.add(processors[index]);
+        }
+        return result;
+    }
+
+    /**
+     * @return the processors that need to complete before the specified processor can start.
+     */
+    public List<Processor> getPredecessors(Processor processor) {
+        final List<Processor> result = new ArrayList<Processor>();
+        for (int index : predecessors[indexOf(processor)]) {
+            result.add(processors[index]);
+        }
+        return result;
+    }
+
+    /**
+     * @return nanoseconds that the latest update took.
+     */
+    public long getLastUpdateNanos() {
+        return lastUpdateNanos;
+    }
+
+    /**
+     * @return nanoseconds that the specified processor took on the latest update.
+     */
+    public long getLastDurationNanos(Processor processor) {
+        return durationNanos[indexOf(processor)];
+    }
+
+    /**
+     * @return the chain of dependent processors that took the longest time to run on the latest update.
+     *         The update can not complete faster than this, regardless of the number of threads.
+     */
+    public List<Processor> getCriticalPath() {
+        final int[] previous = new int[processors.length];
+        final long[] pathNanos = new long[processors.length];
+        final int end = calculateCriticalPath(previous, pathNanos);
+
+        final LinkedList<Processor> path = new LinkedList<Processor>();
+        for (int index = end; index >= 0; index = previous[index]) {
+            path.addFirst(processors[index]);
+        }
+        return path;
+    }
+
+    /**
+     * @return nanoseconds taken by the processors on the critical path on the latest update.
+     */
+    public long getCriticalPathNanos() {
+        final int[] previous = new int[processors.length];
+        final long[] pathNanos = new long[processors.length];
+        final int end = calculateCriticalPath(previous, pathNanos);
+        return end < 0 ? 0 : pathNanos[end];
+    }
+
+    /**
+     * @return a multi line description of the schedule, with the start times and durations of the processors on the latest update,
+     *         the processors each one waited for, and the critical path.
+     */
+    public String describe() {
+        final Set<Long> threads = new HashSet<Long>();
+        for (long threadId : threadIds) {
+            threads.add(threadId);
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Processor schedule: ").append(processors.length).append(" processors on ").append(threads.size())
+          .append(" threads, update took ").append(formatMillis(lastUpdateNanos)).append("\n");
+
+        for (int index : order) {
+            sb.append(String.format(Locale.ROOT, "  %-32s start %10s, took %10s",
+                                    getName(processors[index]),
+                                    formatMillis(startNanos[index]),
+                                    formatMillis(durationNanos[index])));
+            if (predecessors[index].length > 0) {
+                sb.append(", after ");
+                appendNames(sb, predecessors[index], ", ");
+            }
+            sb.append("\n");
+        }
+
+        final int[] previous = new int[processors.length];
+        final long[] pathNanos = new long[processors.length];
+        final int end = calculateCriticalPath(previous, pathNanos);
+        if (end >= 0) {
+            final LinkedList<Integer> path = new LinkedList<Integer>();
+            for (int index = end; index >= 0; index = previous[index]) {
+                path.addFirst(index);
+            }
+            final int[] pathIndexes = new int[path.size()];
+            for (int i = 0; i < pathIndexes.length; i++) {
+                pathIndexes[i] = path.get(i);
+            }
+
+            sb.append("Critical path ").append(formatMillis(pathNanos[end])).append(": ");
+            appendNames(sb, pathIndexes, " -> ");
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    @Override public String toString() {
+        return describe();
+    }
+
+    private void runProcessor(int index) {
+        // Lets the processor key per thread state by its position in the schedule
+        final UpdateSlot slot = UpdateSlot.current();
+        slot.enter(positions[index], 0);
+
+        final long start = System.nanoTime();
+        try {
+            processors[index].update(currentTime);
+        }
+        finally {
+            slot.exit();
+        }
+        final long end = System.nanoTime();
+
+        startNanos[index] = start - currentUpdateStart;
+        durationNanos[index] = end - start;
+        threadIds[index] = Thread.currentThread().getId();
+    }
+
+    private void updateInParallel(ExecutorService executor) {
+        final CompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executor);
+
+        final int[] remainingPredecessors = new int[processors.length];
+        int running = 0;
+        for (int index : order) {
+            remainingPredecessors[index] = predecessors[index].length;
+            if (remainingPredecessors[index] == 0) {
+                completionService.submit(tasks[index]);
+                running++;
+            }
+        }
+
+        Throwable failure = null;
+        while (running > 0) {
+            final Future<Integer> completed;
+            try {
+                completed = completionService.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for processors to complete", e);
+            }
+            running--;
+
+            final int index;
+            try {
+                index = completed.get();
+            } catch (ExecutionException e) {
+                if (failure == null) failure = e.getCause();
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for processors to complete", e);
+            }
+
+            // Start the processors that were waiting only for this one
+            if (failure == null) {
+                for (int successor : successors[index]) {
+                    if (--remainingPredecessors[successor] == 0) {
+                        completionService.submit(tasks[successor]);
+                        running++;
+                    }
+                }
+            }
+        }
+
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new IllegalStateException("Processor update failed: " + failure.getMessage(), failure);
+    }
+
+    /**
+     * @return index of the last processor on the critical path, or -1 if there are no processors.
+     */
+    private int calculateCriticalPath(int[] previous, long[] pathNanos) {
+        int end = -1;
+        for (int index : order) {
+            previous[index] = -1;
+            long longestPredecessorPath = 0;
+            for (int predecessor : predecessors[index]) {
+                if (previous[index] < 0 || pathNanos[predecessor] > longestPredecessorPath) {
+                    previous[index] = predecessor;
+                    longestPredecessorPath = pathNanos[predecessor];
+                }
+            }
+            pathNanos[index] = longestPredecessorPath + durationNanos[index];
+
+            if (end < 0 || pathNanos[index] > pathNanos[end]) end = index;
+        }
+        return end;
+    }
+
+    private int indexOf(Processor processor) {
+        for (int i = 0; i < processors.length; i++) {
+            if (processors[i] == processor) return i;
+        }
+        throw new IllegalArgumentException("The processor " + processor + " is not scheduled by this scheduler");
+    }
+
+    private void appendNames(StringBuilder sb, int[] indexes, String separator) {
+        for (int i = 0; i < indexes.length; i++) {
+            if (i > 0) sb.append(separator);
+            sb.append(getName(processors[indexes[i]]));
+        }
+    }
+
+    private static String getName(Processor processor) {
+        final String simpleName = processor.getClass().getSimpleName();
+        return simpleName.isEmpty() ? processor.getClass().getName() : simpleName;
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f ms", nanos / 1000000.0);
+    }
+
+    private static int checkNotSelf(int index, int processorIndex) {
+        if (index == processorIndex) throw new IllegalArgumentException("A processor can not be ordered relative to itself");
+        return index;
+    }
+
+    private static int place(int index, boolean[][] edges, byte[] state, int[] order, int placedCount) {
+        if (state[index] == PLACED) return placedCount;
+        if (state[index] == PLACING) throw new IllegalStateException("The run before / after constraints of the processors contain a cycle");
+
+        state[index] = PLACING;
+        for (int i = 0; i < edges.length; i++) {
+            if (edges[i][index]) placedCount = place(i, edges, state, order, placedCount);
+        }
+        state[index] = PLACED;
+        order[placedCount] = index;
+        return placedCount + 1;
+    }
+
+    private static int[] connected(boolean[][] edges, int index, boolean outgoing) {
+        int count = 0;
+        for (int i = 0; i < edges.length; i++) {
+            if (outgoing ? edges[index][i] : edges[i][index]) count++;
+        }
+
+        final int[] result = new int[count];
+        int pos = 0;
+        for (int i = 0; i < edges.length; i++) {
+            if (outgoing ? edges[index][i] : edges[i][index]) result[pos++] = i;
+        }
+        return result;
+    }
+}
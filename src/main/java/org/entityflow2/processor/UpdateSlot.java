@@ -0,0 +1,79 @@
+package org.entityflow2.processor;
+
+/**
+ * The part of the processor schedule that the current thread is running: the position of the processor in the schedule order,
+ * and the worker of its parallel entity loop.
+ *
+ * Unlike the thread, the slot that a piece of work runs in is the same on every update, so per thread state such as
+ * command buffers can be keyed by it to get a deterministic order even when processors run on a thread pool.
+ */
+public final class UpdateSlot {
+
+    private static final ThreadLocal<UpdateSlot> CURRENT = new ThreadLocal<UpdateSlot>() {
+        @Override protected UpdateSlot initialValue() {
+            return new UpdateSlot();
+        }
+    };
+
+    private int processorPosition = -1;
+    private int workerIndex = 0;
+    private Object attachmentOwner;
+    private Object attachment;
+
+    private UpdateSlot() {
+    }
+
+    /**
+     * @return the slot of the calling thread.
+     */
+    public static UpdateSlot current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return true if the thread is updating a processor scheduled by a ProcessorScheduler.
+     */
+    public boolean isActive() {
+        return processorPosition >= 0;
+    }
+
+    /**
+     * @return position in the schedule order of the processor being updated, or -1 if the thread is not updating a scheduled processor.
+     */
+    public int getProcessorPosition() {
+        return processorPosition;
+    }
+
+    /**
+     * @return index of the parallel entity loop worker that the thread is running, 0 for the thread updating the processor.
+     */
+    public int getWorkerIndex() {
+        return workerIndex;
+    }
+
+    /**
+     * @return object attached to this slot by the specified owner, or null if none.  Cleared when the thread leaves the slot.
+     */
+    public Object getAttachment(Object owner) {
+        return attachmentOwner == owner ? attachment : null;
+    }
+
+    /**
+     * Attaches an object to this slot until the thread leaves it, e.g. to avoid looking up state keyed by the slot repeatedly.
+     */
+    public void setAttachment(Object owner, Object attachment) {
+        attachmentOwner = owner;
+        this.attachment = attachment;
+    }
+
+    void enter(int processorPosition, int workerIndex) {
+        this.processorPosition = processorPosition;
+        this.workerIndex = workerIndex;
+        attachmentOwner = null;
+        attachment = null;
+    }
+
+    void exit() {
+        enter(-1, 0);
+    }
+}
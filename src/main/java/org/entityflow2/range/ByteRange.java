@@ -0,0 +1,41 @@
+package org.entityflow2.range;
+
+/**
+ *
+ */
+public final class ByteRange implements Range<Byte> {
+
+    private final byte minValue;
+    private final byte maxValue;
+
+    public static final ByteRange FULL = new ByteRange();
+    public static final ByteRange ZERO_TO_ONE = new ByteRange((byte) 0, (byte) 1);
+    public static final ByteRange MINUS_ONE_TO_ONE = new ByteRange((byte) -1, (byte) 1);
+    public static final ByteRange ZERO_OR_LARGER = new ByteRange((byte) 0, Byte.MAX_VALUE);
+    public static final ByteRange ONE_OR_LARGER = new ByteRange((byte) 1, Byte.MAX_VALUE);
+
+    public ByteRange() {
+        this(Byte.MIN_VALUE, Byte.MAX_VALUE);
+    }
+
+    public ByteRange(final byte minValue, final byte maxValue) {
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    @Override
+    public Class<Byte> getValueClass() {
+        return Byte.class;
+    }
+
+    @Override
+    public Byte clamp(final Byte value) {
+        return clampByte(value);
+    }
+
+    public byte clampByte(final byte value) {
+        if (value < minValue) return minValue;
+        else if (value > maxValue) return maxValue;
+        else return value;
+    }
+}
@@ -0,0 +1,41 @@
+package org.entityflow2.range;
+
+/**
+ *
+ */
+public final class ShortRange implements Range<Short> {
+
+    private final short minValue;
+    private final short maxValue;
+
+    public static final ShortRange FULL = new ShortRange();
+    public static final ShortRange ZERO_TO_ONE = new ShortRange((short) 0, (short) 1);
+    public static final ShortRange MINUS_ONE_TO_ONE = new ShortRange((short) -1, (short) 1);
+    public static final ShortRange ZERO_OR_LARGER = new ShortRange((short) 0, Short.MAX_VALUE);
+    public static final ShortRange ONE_OR_LARGER = new ShortRange((short) 1, Short.MAX_VALUE);
+
+    public ShortRange() {
+        this(Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    public ShortRange(final short minValue, final short maxValue) {
+        this.minValue = minValue;
+        this.maxValue = maxValue;
+    }
+
+    @Override
+    public Class<Short> getValueClass() {
+        return Short.class;
+    }
+
+    @Override
+    public Short clamp(final Short value) {
+        return clampShort(value);
+    }
+
+    public short clampShort(final short value) {
+        if (value < minValue) return minValue;
+        else if (value > maxValue) return maxValue;
+        else return value;
+    }
+}
@@ -0,0 +1,109 @@
+package org.entityflow2.storage;
+
+import org.entityflow2.memory.MemoryAccess;
+import org.flowutils.Check;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Stores a number of fixed size data blocks, addressed by block index.
+ * Each block is located completely inside one ByteBuffer, at the offset returned by getOffset.
+ * The buffers are direct buffers that use the native byte order.
+ */
+public abstract class BlockStorage {
+
+    private final int blockSize;
+
+    /**
+     * @param blockSize size of one block in bytes.
+     */
+    protected BlockStorage(int blockSize) {
+        Check.positive(blockSize, "blockSize");
+
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @return size of one block in bytes.
+     */
+    public final int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * @return number of blocks that currently fit in this storage.
+     */
+    public abstract int getCapacity();
+
+    /**
+     * Changes the number of blocks that fit in this storage.
+     * The storage may round the capacity up to some suitable amount, use getCapacity to get the actual capacity.
+     *
+     * @param newCapacity minimum number of blocks that should fit in the storage.
+     * @param preservedBlockCount number of blocks from the start of the storage whose contents should be preserved.
+     */
+    public abstract void setCapacity(int newCapacity, int preservedBlockCount);
+
+    /**
+     * @param growthFactor the factor that the storage should grow with, if it grows by re-allocating its contents.
+     * @return the capacity to grow this storage to when it gets full.
+     */
+    public int getExpandedCapacity(double growthFactor) {
+        return (int) (getCapacity() * growthFactor);
+    }
+
+    /**
+     * @return the buffer that the block with the specified index is located in.
+     */
+    public abstract ByteBuffer getBuffer(int blockIndex);
+
+    /**
+     * @return offset of the start of the block with the specified index in the buffer returned by getBuffer.
+     */
+    public abstract int getOffset(int blockIndex);
+
+    /**
+     * @return number of blocks, starting from the specified block, that are located directly after each other in the same buffer.
+     *         Bulk operations can step through such a run of blocks by adding the block size to the offset.
+     */
+    public int getContiguousBlockCount(int blockIndex) {
+        return 1;
+    }
+
+    /**
+     * Copies the contents of the source block over the target block.
+     */
+    public void copyBlock(int sourceBlockIndex, int targetBlockIndex) {
+        copyBlock(sourceBlockIndex, targetBlockIndex, MemoryAccess.DEFAULT);
+    }
+
+    /**
+     * Copies the contents of the source block over the target block, using the specified memory access.
+     */
+    public void copyBlock(int sourceBlockIndex, int targetBlockIndex, MemoryAccess memoryAccess) {
+        memoryAccess.copy(getBuffer(sourceBlockIndex), getOffset(sourceBlockIndex),
+                          getBuffer(targetBlockIndex), getOffset(targetBlockIndex),
+                          blockSize);
+    }
+
+    /**
+     * @return a new zeroed direct buffer of the specified size, using the native byte order.
+     */
+    protected static ByteBuffer allocateBuffer(int sizeBytes) {
+        return ByteBuffer.allocateDirect(sizeBytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes any changes to persistent storage, if this storage is backed by one.
+     */
+    public void flush() {
+    }
+
+    /**
+     * Releases any resources held by this storage.  The storage should not be used after this.
+     */
+    public void release() {
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.entityflow2.storage;
+
+/**
+ * Creates the BlockStorages that component types store their data in.
+ */
+public interface BlockStorageFactory {
+
+    /**
+     * @param name name identifying the stored data, e.g. the component type id, followed by the property id for columnar storage.
+     * @param blockSize size of one block in bytes.
+     * @param initialCapacity number of blocks that should initially fit in the storage.
+     * @return a new BlockStorage.
+     */
+    BlockStorage createBlockStorage(String name, int blockSize, int initialCapacity);
+
+}
@@ -0,0 +1,192 @@
+package org.entityflow2.storage;
+
+import org.flowutils.Check;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stores blocks in a list of fixed size chunks, each a separate direct ByteBuffer.
+ * Growing the storage adds chunks and shrinking it releases trailing chunks, existing blocks are never copied,
+ * so the location of a block stays the same as the storage grows.
+ * As each chunk is a separate buffer, the total size of the storage is not limited by the maximum size of a ByteBuffer.
+ *
+ * Chunks can also be allocated and released individually, in which case the storage can have unallocated chunks
+ * in the middle, whose blocks can not be accessed (getBuffer returns null for them).
+ */
+public class ChunkedBlockStorage extends BlockStorage {
+
+    /**
+     * Default number of blocks in one chunk.
+     */
+    public static final int DEFAULT_BLOCKS_PER_CHUNK = 4096;
+
+    /**
+     * Factory that creates ChunkedBlockStorages with the default number of blocks per chunk.
+     */
+    public static final BlockStorageFactory FACTORY = createFactory(DEFAULT_BLOCKS_PER_CHUNK);
+
+    private final int blocksPerChunk;
+    private final int chunkShift;
+    private final int chunkMask;
+
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int chunkCount = 0;
+
+    /**
+     * @param blocksPerChunk number of blocks in one chunk.  Must be a power of two.
+     * @return a factory that creates ChunkedBlockStorages with the specified number of blocks per chunk.
+     */
+    public static BlockStorageFactory createFactory(final int blocksPerChunk) {
+        checkBlocksPerChunk(blocksPerChunk);
+
+        return new BlockStorageFactory() {
+            @Override public BlockStorage createBlockStorage(String name, int blockSize, int initialCapacity) {
+                return new ChunkedBlockStorage(blockSize, blocksPerChunk, initialCapacity);
+            }
+        };
+    }
+
+    /**
+     * @param blockSize size of one block in bytes.
+     * @param blocksPerChunk number of blocks in one chunk.  Must be a power of two.
+     * @param initialCapacity number of blocks that should initially fit in the storage.
+     */
+    public ChunkedBlockStorage(int blockSize, int blocksPerChunk, int initialCapacity) {
+        this(blockSize, blocksPerChunk);
+
+        setCapacity(initialCapacity, 0);
+    }
+
+    /**
+     * Creates a storage without any chunks, derived classes should set the capacity after they are initialized.
+     * @param blockSize size of one block in bytes.
+     * @param blocksPerChunk number of blocks in one chunk.  Must be a power of two.
+     */
+    protected ChunkedBlockStorage(int blockSize, int blocksPerChunk) {
+        super(blockSize);
+        checkBlocksPerChunk(blocksPerChunk);
+        if ((long) blocksPerChunk * blockSize > Integer.MAX_VALUE) throw new IllegalArgumentException("The size of one chunk must fit in a ByteBuffer");
+
+        this.blocksPerChunk = blocksPerChunk;
+        chunkShift = Integer.numberOfTrailingZeros(blocksPerChunk);
+        chunkMask = blocksPerChunk - 1;
+    }
+
+    /**
+     * @return number of blocks in one chunk.
+     */
+    public final int getBlocksPerChunk() {
+        return blocksPerChunk;
+    }
+
+    /**
+     * @return number of currently allocated chunks.
+     */
+    public final int getChunkCount() {
+        return chunkCount;
+    }
+
+    @Override public final int getCapacity() {
+        return chunkCount * blocksPerChunk;
+    }
+
+    @Override public final void setCapacity(int newCapacity, int preservedBlockCount) {
+        if (newCapacity < preservedBlockCount) throw new IllegalArgumentException("Existing blocks will not fit");
+
+        final int newChunkCount = (int) (((long) newCapacity + blocksPerChunk - 1) / blocksPerChunk);
+        if ((long) newChunkCount * blocksPerChunk > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many blocks, the number of blocks must fit in an int");
+
+        if (newChunkCount > chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(newChunkCount, chunks.length * 2));
+        }
+
+        // Allocate any added chunks
+        for (int i = chunkCount; i < newChunkCount; i++) {
+            if (chunks[i] == null) chunks[i] = createChunk(i, blocksPerChunk * getBlockSize());
+        }
+
+        // Release any removed chunks
+        for (int i = newChunkCount; i < chunkCount; i++) {
+            chunks[i] = null;
+        }
+
+        chunkCount = newChunkCount;
+    }
+
+    /**
+     * Allocates the chunk with the specified index, if it is not already allocated.
+     * Grows the capacity to include the chunk if needed, without allocating any other chunks.
+     */
+    public final void allocateChunk(int chunkIndex) {
+        Check.positiveOrZero(chunkIndex, "chunkIndex");
+        if ((long) (chunkIndex + 1) * blocksPerChunk > Integer.MAX_VALUE) throw new IllegalArgumentException("Too many blocks, the number of blocks must fit in an int");
+
+        if (chunkIndex >= chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(chunkIndex + 1, chunks.length * 2));
+        }
+
+        if (chunks[chunkIndex] == null) {
+            chunks[chunkIndex] = createChunk(chunkIndex, blocksPerChunk * getBlockSize());
+        }
+
+        chunkCount = Math.max(chunkCount, chunkIndex + 1);
+    }
+
+    /**
+     * Releases the chunk with the specified index.  The blocks in it can not be accessed until it is allocated again.
+     */
+    public final void releaseChunk(int chunkIndex) {
+        if (chunkIndex < 0 || chunkIndex >= chunkCount) return;
+
+        chunks[chunkIndex] = null;
+
+        // Drop trailing unallocated chunks from the capacity
+        while (chunkCount > 0 && chunks[chunkCount - 1] == null) {
+            chunkCount--;
+        }
+    }
+
+    /**
+     * @return true if the chunk with the specified index is allocated.
+     */
+    public final boolean isChunkAllocated(int chunkIndex) {
+        return chunkIndex >= 0 && chunkIndex < chunkCount && chunks[chunkIndex] != null;
+    }
+
+    @Override public int getExpandedCapacity(double growthFactor) {
+        // Growing is cheap, so add one chunk at a time
+        return getCapacity() + blocksPerChunk;
+    }
+
+    @Override public final ByteBuffer getBuffer(int blockIndex) {
+        return chunks[blockIndex >>> chunkShift];
+    }
+
+    @Override public final int getOffset(int blockIndex) {
+        return (blockIndex & chunkMask) * getBlockSize();
+    }
+
+    @Override public final int getContiguousBlockCount(int blockIndex) {
+        return blocksPerChunk - (blockIndex & chunkMask);
+    }
+
+    @Override public void release() {
+        Arrays.fill(chunks, null);
+        chunkCount = 0;
+    }
+
+    /**
+     * @param chunkIndex index of the chunk to create.
+     * @param chunkSizeBytes size of the chunk in bytes.
+     * @return a new zeroed chunk buffer.
+     */
+    protected ByteBuffer createChunk(int chunkIndex, int chunkSizeBytes) {
+        return allocateBuffer(chunkSizeBytes);
+    }
+
+    private static void checkBlocksPerChunk(int blocksPerChunk) {
+        Check.positive(blocksPerChunk, "blocksPerChunk");
+        if (Integer.bitCount(blocksPerChunk) != 1) throw new IllegalArgumentException("blocksPerChunk must be a power of two, but was " + blocksPerChunk);
+    }
+}
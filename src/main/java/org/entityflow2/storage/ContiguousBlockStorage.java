@@ -0,0 +1,73 @@
+package org.entityflow2.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores all blocks in one direct ByteBuffer.
+ * Changing the capacity allocates a new buffer and copies the preserved blocks to it.
+ * The total size is limited to Integer.MAX_VALUE bytes.
+ */
+public final class ContiguousBlockStorage extends BlockStorage {
+
+    /**
+     * Factory that creates ContiguousBlockStorages.
+     */
+    public static final BlockStorageFactory FACTORY = new BlockStorageFactory() {
+        @Override public BlockStorage createBlockStorage(String name, int blockSize, int initialCapacity) {
+            return new ContiguousBlockStorage(blockSize, initialCapacity);
+        }
+    };
+
+    private ByteBuffer buffer;
+    private int capacity;
+
+    /**
+     * @param blockSize size of one block in bytes.
+     * @param initialCapacity number of blocks that initially fit in the storage.
+     */
+    public ContiguousBlockStorage(int blockSize, int initialCapacity) {
+        super(blockSize);
+
+        buffer = allocate(initialCapacity);
+        capacity = initialCapacity;
+    }
+
+    @Override public int getCapacity() {
+        return capacity;
+    }
+
+    @Override public void setCapacity(int newCapacity, int preservedBlockCount) {
+        if (newCapacity < preservedBlockCount) throw new IllegalArgumentException("Existing blocks will not fit");
+
+        // Allocate new buffer
+        final ByteBuffer newBuffer = allocate(newCapacity);
+
+        // Copy over existing values
+        buffer.clear();
+        buffer.limit(preservedBlockCount * getBlockSize());
+        newBuffer.put(buffer);
+        newBuffer.clear();
+
+        buffer = newBuffer;
+        capacity = newCapacity;
+    }
+
+    @Override public ByteBuffer getBuffer(int blockIndex) {
+        return buffer;
+    }
+
+    @Override public int getOffset(int blockIndex) {
+        return blockIndex * getBlockSize();
+    }
+
+    @Override public int getContiguousBlockCount(int blockIndex) {
+        return capacity - blockIndex;
+    }
+
+    private ByteBuffer allocate(int blockCount) {
+        final long sizeBytes = (long) blockCount * getBlockSize();
+        if (sizeBytes > Integer.MAX_VALUE) throw new IllegalStateException("Can not allocate " + sizeBytes + " bytes in one buffer, use a ChunkedBlockStorage for larger storages");
+
+        return allocateBuffer((int) sizeBytes);
+    }
+}
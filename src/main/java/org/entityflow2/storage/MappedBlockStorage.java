@@ -0,0 +1,140 @@
+package org.entityflow2.storage;
+
+import org.flowutils.Check;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Stores blocks in a file, mapped into memory one chunk at a time.
+ *
+ * If the file already exists, its contents are mapped when the storage is created, so the data stored in an earlier run
+ * is available immediately, and the operating system page cache takes care of loading and evicting the data as it is used.
+ * Growing the storage maps more chunks of the file, existing blocks are never copied.
+ * Shrinking the storage unmaps trailing chunks, but does not truncate the file.
+ *
+ * The data is stored in the native byte order, so the files are not portable between platforms with different byte orders.
+ */
+public final class MappedBlockStorage extends ChunkedBlockStorage {
+
+    /**
+     * Extension used for the data files.
+     */
+    public static final String FILE_EXTENSION = ".data";
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final FileChannel channel;
+
+    /**
+     * @param directory directory to store the data files in.  Created if it does not exist.
+     * @return a factory that creates MappedBlockStorages that store their data in the specified directory,
+     *         in files named after the storage name.
+     */
+    public static BlockStorageFactory createFactory(File directory) {
+        return createFactory(directory, DEFAULT_BLOCKS_PER_CHUNK);
+    }
+
+    /**
+     * @param directory directory to store the data files in.  Created if it does not exist.
+     * @param blocksPerChunk number of blocks mapped in one chunk.  Must be a power of two.
+     * @return a factory that creates MappedBlockStorages that store their data in the specified directory,
+     *         in files named after the storage name.
+     */
+    public static BlockStorageFactory createFactory(final File directory, final int blocksPerChunk) {
+        notNull(directory, "directory");
+
+        return new BlockStorageFactory() {
+            @Override public BlockStorage createBlockStorage(String name, int blockSize, int initialCapacity) {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    throw new IllegalStateException("Could not create the directory " + directory);
+                }
+
+                return new MappedBlockStorage(new File(directory, toFileName(name)), blockSize, blocksPerChunk, initialCapacity);
+            }
+        };
+    }
+
+    /**
+     * @param file file to store the blocks in.  If it exists, the existing contents are mapped.
+     * @param blockSize size of one block in bytes.
+     * @param blocksPerChunk number of blocks mapped in one chunk.  Must be a power of two.
+     * @param initialCapacity minimum number of blocks that should initially fit in the storage.
+     *                        If the file is larger, the capacity covers the whole file.
+     */
+    public MappedBlockStorage(File file, int blockSize, int blocksPerChunk, int initialCapacity) {
+        super(blockSize, blocksPerChunk);
+        notNull(file, "file");
+        Check.positiveOrZero(initialCapacity, "initialCapacity");
+
+        this.file = file;
+
+        try {
+            randomAccessFile = new RandomAccessFile(file, "rw");
+            channel = randomAccessFile.getChannel();
+
+            final long existingLength = channel.size();
+            if (existingLength % blockSize != 0) {
+                throw new IllegalStateException("The length of the existing file " + file + " is not a multiple of the block size " +
+                                                blockSize + ", it was probably created for a component type with different properties");
+            }
+
+            final long existingBlocks = existingLength / blockSize;
+            if (existingBlocks > Integer.MAX_VALUE) throw new IllegalStateException("The existing file " + file + " contains too many blocks");
+
+            setCapacity(Math.max(initialCapacity, (int) existingBlocks), 0);
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not open the file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the file that the blocks are stored in.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    @Override protected ByteBuffer createChunk(int chunkIndex, int chunkSizeBytes) {
+        try {
+            // Mapping past the end of the file extends the file
+            final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) chunkIndex * chunkSizeBytes, chunkSizeBytes);
+            chunk.order(ByteOrder.nativeOrder());
+            return chunk;
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not map chunk " + chunkIndex + " of the file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override public void flush() {
+        for (int i = 0; i < getChunkCount(); i++) {
+            // Chunks released by a placement are not mapped
+            if (isChunkAllocated(i)) ((MappedByteBuffer) getBuffer(i * getBlocksPerChunk())).force();
+        }
+    }
+
+    @Override public void release() {
+        flush();
+        super.release();
+
+        try {
+            randomAccessFile.close();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not close the file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static String toFileName(String name) {
+        return name.replaceAll("[^a-zA-Z0-9._-]", "_") + FILE_EXTENSION;
+    }
+}
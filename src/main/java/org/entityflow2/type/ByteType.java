@@ -0,0 +1,57 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ */
+public final class ByteType implements Type<Byte> {
+
+    public static final ByteType TYPE = new ByteType();
+
+    @Override
+    public Class<Byte> getValueClass() {
+        return Byte.class;
+    }
+
+    @Override public int getDataLengthBytes() {
+        return 1;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public Byte readValue(final ByteBuffer buffer, final int offset, Byte out) {
+        return readByteValue(buffer, offset);
+    }
+
+    public byte readByteValue(final ByteBuffer buffer, final int offset) {
+        return buffer.get(offset);
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final Byte value) {
+        writeByteValue(buffer, offset, value);
+    }
+
+    public void writeByteValue(final ByteBuffer buffer, final int offset, final byte value) {
+        buffer.put(offset, value);
+    }
+
+    @Override
+    public Byte fromString(final String source) {
+        try {
+            return Byte.parseByte(source.trim());
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(final Byte value) {
+        return "" + value;
+    }
+}
@@ -0,0 +1,57 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+/**
+ *
+ */
+public final class CharType implements Type<Character> {
+
+    public static final CharType TYPE = new CharType();
+
+    @Override
+    public Class<Character> getValueClass() {
+        return Character.class;
+    }
+
+    @Override public int getDataLengthBytes() {
+        return 2;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public Character readValue(final ByteBuffer buffer, final int offset, Character out) {
+        return readCharValue(buffer, offset);
+    }
+
+    public char readCharValue(final ByteBuffer buffer, final int offset) {
+        return buffer.getChar(offset);
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final Character value) {
+        writeCharValue(buffer, offset, value);
+    }
+
+    public void writeCharValue(final ByteBuffer buffer, final int offset, final char value) {
+        buffer.putChar(offset, value);
+    }
+
+    @Override
+    public Character fromString(final String source) {
+        try {
+            return source.length() == 1 ? source.charAt(0) : null;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(final Character value) {
+        return "" + value;
+    }
+}
@@ -0,0 +1,125 @@
+package org.entityflow2.type;
+
+import net.openhft.koloboke.collect.map.ObjIntMap;
+import net.openhft.koloboke.collect.map.hash.HashObjIntMaps;
+
+import java.util.Arrays;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Interns values into a table and assigns each distinct value an int code, so that properties with values from a small
+ * repeated set can store just the code in the data buffer (see DictionaryType).
+ *
+ * The code 0 is reserved for null.  Codes are assigned in the order values are first encoded, and are never removed,
+ * so the dictionary should only be used for values that come from a limited set.
+ * A dictionary can be shared by several properties.
+ *
+ * Encoding is synchronized, decoding is a plain array lookup.
+ * Note that the dictionary itself is not stored in the data buffer, so if the component data is persisted,
+ * the dictionary contents need to be restored separately, in the same order.
+ */
+public final class Dictionary<T> {
+
+    /**
+     * Maximum number of codes that fit in two bytes.
+     */
+    public static final int SHORT_CODE_LIMIT = 1 << 16;
+
+    private final Class<T> valueClass;
+    private final int maxSize;
+    private final ObjIntMap<T> codes = HashObjIntMaps.newMutableMap();
+    private volatile Object[] values = new Object[16];
+    private int size = 1;
+
+    /**
+     * Creates a dictionary with up to 65536 codes (including the null code), which can be stored in two bytes.
+     * @param valueClass type of the values in the dictionary.
+     */
+    public Dictionary(Class<T> valueClass) {
+        this(valueClass, SHORT_CODE_LIMIT);
+    }
+
+    /**
+     * @param valueClass type of the values in the dictionary.
+     * @param maxSize maximum number of codes in the dictionary, including the null code.
+     *                If larger than 65536, the codes are stored in four bytes instead of two.
+     */
+    public Dictionary(Class<T> valueClass, int maxSize) {
+        notNull(valueClass, "valueClass");
+        if (maxSize < 2) throw new IllegalArgumentException("maxSize should be at least 2, but was " + maxSize);
+
+        this.valueClass = valueClass;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return type of the values in the dictionary.
+     */
+    public Class<T> getValueClass() {
+        return valueClass;
+    }
+
+    /**
+     * @return maximum number of codes in the dictionary, including the null code.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return number of bytes needed to store a code of this dictionary.
+     */
+    public int getCodeSizeBytes() {
+        return maxSize <= SHORT_CODE_LIMIT ? 2 : 4;
+    }
+
+    /**
+     * @return number of codes currently in the dictionary, including the null code.
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the code for the value, adding the value to the dictionary if it was not already present.
+     * @throws IllegalStateException if the dictionary is full.
+     */
+    public synchronized int encode(T value) {
+        if (value == null) return 0;
+
+        int code = codes.getOrDefault(value, -1);
+        if (code < 0) {
+            if (size >= maxSize) throw new IllegalStateException("The dictionary for " + valueClass.getSimpleName() + " values is full, it can hold at most " + maxSize + " codes");
+
+            code = size++;
+            Object[] newValues = values;
+            if (code >= newValues.length) {
+                newValues = Arrays.copyOf(newValues, Math.min(newValues.length * 2, maxSize));
+            }
+            newValues[code] = value;
+            codes.put(value, code);
+
+            // Publish the value to readers
+            values = newValues;
+        }
+
+        return code;
+    }
+
+    /**
+     * @return the code for the value, or -1 if the value is not in the dictionary.
+     */
+    public synchronized int getCode(T value) {
+        if (value == null) return 0;
+        return codes.getOrDefault(value, -1);
+    }
+
+    /**
+     * @return the value with the specified code.
+     */
+    @SuppressWarnings("unchecked")
+    public T decode(int code) {
+        return (T) values[code];
+    }
+}
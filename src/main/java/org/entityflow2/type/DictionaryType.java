@@ -0,0 +1,85 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Stores values as their code in a Dictionary, using two or four bytes depending on the maximum size of the dictionary.
+ */
+public final class DictionaryType<T> implements Type<T> {
+
+    private final Dictionary<T> dictionary;
+    private final Type<T> valueType;
+    private final int codeSize;
+
+    /**
+     * @param dictionary dictionary used to encode and decode the values.  Can be shared with other properties.
+     */
+    public DictionaryType(Dictionary<T> dictionary) {
+        this(dictionary, null);
+    }
+
+    /**
+     * @param dictionary dictionary used to encode and decode the values.  Can be shared with other properties.
+     * @param valueType type used to convert the values to and from strings, or null if they can not be parsed from strings.
+     */
+    public DictionaryType(Dictionary<T> dictionary, Type<T> valueType) {
+        notNull(dictionary, "dictionary");
+
+        this.dictionary = dictionary;
+        this.valueType = valueType;
+        codeSize = dictionary.getCodeSizeBytes();
+    }
+
+    /**
+     * @return dictionary used to encode and decode the values.
+     */
+    public Dictionary<T> getDictionary() {
+        return dictionary;
+    }
+
+    @Override
+    public Class<T> getValueClass() {
+        return dictionary.getValueClass();
+    }
+
+    @Override public int getDataLengthBytes() {
+        return codeSize;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public T readValue(final ByteBuffer buffer, final int offset, T out) {
+        return dictionary.decode(readCode(buffer, offset));
+    }
+
+    public int readCode(final ByteBuffer buffer, final int offset) {
+        if (codeSize == 2) return buffer.getChar(offset);
+        else return buffer.getInt(offset);
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final T value) {
+        writeCode(buffer, offset, dictionary.encode(value));
+    }
+
+    public void writeCode(final ByteBuffer buffer, final int offset, final int code) {
+        if (codeSize == 2) buffer.putChar(offset, (char) code);
+        else buffer.putInt(offset, code);
+    }
+
+    @Override
+    public T fromString(final String source) {
+        if (valueType == null) throw new UnsupportedOperationException("No value type specified for parsing " + getValueClass().getSimpleName() + " values");
+        return valueType.fromString(source);
+    }
+
+    @Override
+    public String toString(final T value) {
+        return valueType == null ? "" + value : valueType.toString(value);
+    }
+}
@@ -0,0 +1,112 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a fixed length double array inline, as consecutive double values.
+ */
+public final class DoubleArrayType implements Type<double[]> {
+
+    private static final int ELEMENT_SIZE = 8;
+
+    private final int length;
+
+    /**
+     * @param length number of elements in the stored arrays.
+     */
+    public DoubleArrayType(int length) {
+        if (length <= 0) throw new IllegalArgumentException("length should be positive, but was " + length);
+
+        this.length = length;
+    }
+
+    /**
+     * @return number of elements in the stored arrays.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public Class<double[]> getValueClass() {
+        return double[].class;
+    }
+
+    @Override public int getDataLengthBytes() {
+        return length * ELEMENT_SIZE;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public double[] readValue(final ByteBuffer buffer, final int offset, double[] out) {
+        if (out == null || out.length != length) out = new double[length];
+
+        for (int i = 0; i < length; i++) {
+            out[i] = buffer.getDouble(offset + i * ELEMENT_SIZE);
+        }
+
+        return out;
+    }
+
+    /**
+     * @return the element at the specified index of the array stored at the offset.
+     */
+    public double readElement(final ByteBuffer buffer, final int offset, final int index) {
+        checkIndex(index);
+        return buffer.getDouble(offset + index * ELEMENT_SIZE);
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final double[] value) {
+        if (value.length != length) throw new IllegalArgumentException("Expected an array of length " + length + ", but the length was " + value.length);
+
+        for (int i = 0; i < length; i++) {
+            buffer.putDouble(offset + i * ELEMENT_SIZE, value[i]);
+        }
+    }
+
+    /**
+     * Sets the element at the specified index of the array stored at the offset.
+     */
+    public void writeElement(final ByteBuffer buffer, final int offset, final int index, final double value) {
+        checkIndex(index);
+        buffer.putDouble(offset + index * ELEMENT_SIZE, value);
+    }
+
+    /**
+     * Parses a comma separated list of values.
+     */
+    @Override
+    public double[] fromString(final String source) {
+        try {
+            final String[] parts = source.trim().split(",");
+            if (parts.length != length) return null;
+
+            final double[] value = new double[length];
+            for (int i = 0; i < length; i++) {
+                value[i] = Double.parseDouble(parts[i].trim());
+            }
+            return value;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(final double[] value) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(value[i]);
+        }
+        return sb.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) throw new IllegalArgumentException("No index " + index + " in an array of length " + length);
+    }
+}
@@ -0,0 +1,146 @@
+package org.entityflow2.type;
+
+import org.entityflow2.vector.DoubleVector;
+import org.entityflow2.vector.Quat;
+import org.entityflow2.vector.Vec2;
+import org.entityflow2.vector.Vec3;
+import org.entityflow2.vector.Vec4;
+
+import java.nio.ByteBuffer;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Stores a fixed size vector of doubles inline, as consecutive double values.
+ */
+public abstract class DoubleVectorType<V extends DoubleVector> implements Type<V> {
+
+    public static final DoubleVectorType<Vec2> VEC2 = new DoubleVectorType<Vec2>(Vec2.class, 2) {
+        @Override public Vec2 createValue() {
+            return new Vec2();
+        }
+    };
+
+    public static final DoubleVectorType<Vec3> VEC3 = new DoubleVectorType<Vec3>(Vec3.class, 3) {
+        @Override public Vec3 createValue() {
+            return new Vec3();
+        }
+    };
+
+    public static final DoubleVectorType<Vec4> VEC4 = new DoubleVectorType<Vec4>(Vec4.class, 4) {
+        @Override public Vec4 createValue() {
+            return new Vec4();
+        }
+    };
+
+    public static final DoubleVectorType<Quat> QUAT = new DoubleVectorType<Quat>(Quat.class, 4) {
+        @Override public Quat createValue() {
+            return new Quat();
+        }
+    };
+
+    private static final int LANE_SIZE = 8;
+
+    private final Class<V> valueClass;
+    private final int laneCount;
+
+    /**
+     * @param valueClass class of the vector holders.
+     * @param laneCount number of doubles in the vector.
+     */
+    protected DoubleVectorType(Class<V> valueClass, int laneCount) {
+        notNull(valueClass, "valueClass");
+        if (laneCount <= 0) throw new IllegalArgumentException("laneCount should be positive, but was " + laneCount);
+
+        this.valueClass = valueClass;
+        this.laneCount = laneCount;
+    }
+
+    /**
+     * @return a new vector holder.
+     */
+    public abstract V createValue();
+
+    /**
+     * @return number of doubles in the vector.
+     */
+    public final int getLaneCount() {
+        return laneCount;
+    }
+
+    @Override
+    public final Class<V> getValueClass() {
+        return valueClass;
+    }
+
+    @Override public final int getDataLengthBytes() {
+        return laneCount * LANE_SIZE;
+    }
+
+    @Override public final boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public final V readValue(final ByteBuffer buffer, final int offset, V out) {
+        if (out == null) out = createValue();
+
+        for (int lane = 0; lane < laneCount; lane++) {
+            out.setLane(lane, buffer.getDouble(offset + lane * LANE_SIZE));
+        }
+
+        return out;
+    }
+
+    /**
+     * @return the value of the specified lane of the vector stored at the offset.
+     */
+    public final double readLane(final ByteBuffer buffer, final int offset, final int lane) {
+        checkLane(lane);
+        return buffer.getDouble(offset + lane * LANE_SIZE);
+    }
+
+    @Override
+    public final void writeValue(final ByteBuffer buffer, final int offset, final V value) {
+        for (int lane = 0; lane < laneCount; lane++) {
+            buffer.putDouble(offset + lane * LANE_SIZE, value.getLane(lane));
+        }
+    }
+
+    /**
+     * Sets the value of the specified lane of the vector stored at the offset.
+     */
+    public final void writeLane(final ByteBuffer buffer, final int offset, final int lane, final double value) {
+        checkLane(lane);
+        buffer.putDouble(offset + lane * LANE_SIZE, value);
+    }
+
+    /**
+     * Parses a comma separated list of lane values, optionally surrounded by parenthesis.
+     */
+    @Override
+    public final V fromString(final String source) {
+        try {
+            final String[] parts = source.trim().replace("(", "").replace(")", "").split(",");
+            if (parts.length != laneCount) return null;
+
+            final V value = createValue();
+            for (int lane = 0; lane < laneCount; lane++) {
+                value.setLane(lane, Double.parseDouble(parts[lane].trim()));
+            }
+            return value;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public final String toString(final V value) {
+        return "" + value;
+    }
+
+    private void checkLane(int lane) {
+        if (lane < 0 || lane >= laneCount) throw new IllegalArgumentException("No lane " + lane + " in a vector with " + laneCount + " lanes");
+    }
+}
@@ -0,0 +1,98 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+import static org.flowutils.Check.notNull;
+
+/**
+ * Stores enum values as their ordinal.
+ * Uses one byte for enums with up to 256 values, two bytes for enums with up to 65536 values, and four bytes otherwise.
+ */
+public final class EnumType<E extends Enum<E>> implements Type<E> {
+
+    private final Class<E> enumClass;
+    private final E[] values;
+    private final int dataLengthBytes;
+
+    /**
+     * @param enumClass the enum that this type stores.
+     */
+    public EnumType(Class<E> enumClass) {
+        notNull(enumClass, "enumClass");
+
+        this.enumClass = enumClass;
+        values = enumClass.getEnumConstants();
+
+        if (values.length <= 1 << 8) dataLengthBytes = 1;
+        else if (values.length <= 1 << 16) dataLengthBytes = 2;
+        else dataLengthBytes = 4;
+    }
+
+    @Override
+    public Class<E> getValueClass() {
+        return enumClass;
+    }
+
+    @Override public int getDataLengthBytes() {
+        return dataLengthBytes;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    /**
+     * @return the enum value with the specified ordinal.
+     */
+    public E getValue(int ordinal) {
+        return values[ordinal];
+    }
+
+    /**
+     * @return number of values in the enum.
+     */
+    public int getValueCount() {
+        return values.length;
+    }
+
+    @Override
+    public E readValue(final ByteBuffer buffer, final int offset, E out) {
+        return values[readOrdinal(buffer, offset)];
+    }
+
+    public int readOrdinal(final ByteBuffer buffer, final int offset) {
+        switch (dataLengthBytes) {
+            case 1: return buffer.get(offset) & 0xFF;
+            case 2: return buffer.getChar(offset);
+            default: return buffer.getInt(offset);
+        }
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final E value) {
+        writeOrdinal(buffer, offset, value.ordinal());
+    }
+
+    public void writeOrdinal(final ByteBuffer buffer, final int offset, final int ordinal) {
+        switch (dataLengthBytes) {
+            case 1: buffer.put(offset, (byte) ordinal); break;
+            case 2: buffer.putChar(offset, (char) ordinal); break;
+            default: buffer.putInt(offset, ordinal); break;
+        }
+    }
+
+    @Override
+    public E fromString(final String source) {
+        try {
+            return Enum.valueOf(enumClass, source.trim());
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(final E value) {
+        return value == null ? "" : value.name();
+    }
+}
@@ -0,0 +1,112 @@
+package org.entityflow2.type;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a fixed length float array inline, as consecutive float values.
+ */
+public final class FloatArrayType implements Type<float[]> {
+
+    private static final int ELEMENT_SIZE = 4;
+
+    private final int length;
+
+    /**
+     * @param length number of elements in the stored arrays.
+     */
+    public FloatArrayType(int length) {
+        if (length <= 0) throw new IllegalArgumentException("length should be positive, but was " + length);
+
+        this.length = length;
+    }
+
+    /**
+     * @return number of elements in the stored arrays.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public Class<float[]> getValueClass() {
+        return float[].class;
+    }
+
+    @Override public int getDataLengthBytes() {
+        return length * ELEMENT_SIZE;
+    }
+
+    @Override public boolean isByteBufferStorable() {
+        return true;
+    }
+
+    @Override
+    public float[] readValue(final ByteBuffer buffer, final int offset, float[] out) {
+        if (out == null || out.length != length) out = new float[length];
+
+        for (int i = 0; i < length; i++) {
+            out[i] = buffer.getFloat(offset + i * ELEMENT_SIZE);
+        }
+
+        return out;
+    }
+
+    /**
+     * @return the element at the specified index of the array stored at the offset.
+     */
+    public float readElement(final ByteBuffer buffer, final int offset, final int index) {
+        checkIndex(index);
+        return buffer.getFloat(offset + index * ELEMENT_SIZE);
+    }
+
+    @Override
+    public void writeValue(final ByteBuffer buffer, final int offset, final float[] value) {
+        if (value.length != length) throw new IllegalArgumentException("Expected an array of length " + length + ", but the length was " + value.length);
+
+        for (int i = 0; i < length; i++) {
+            buffer.putFloat(offset + i * ELEMENT_SIZE, value[i]);
+        }
+    }
+
+    /**
+     * Sets the element at the specified index of the array stored at the offset.
+     */
+    public void writeElement(final ByteBuffer buffer, final int offset, final int index, final float value) {
+        checkIndex(index);
+        buffer.putFloat(offset + index * ELEMENT_SIZE, value);
+    }
+
+    /**
+     * Parses a comma separated list of values.
+     */
+    @Override
+    public float[] fromString(final String source) {
+        try {
+            final String[] parts = source.trim().split(",");
+            if (parts.length != length) return null;
+
+            final float[] value = new float[length];
+            for (int i = 0; i < length; i++) {
+                value[i] = Float.parseFloat(parts[i].trim());
+            }
+            return value;
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString(final float[] value) {
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < value.length; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append(value[i]);
+        }
+        return sb.toString();
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= length) throw new IllegalArgumentException("No index " + index + " in an array of length " + length);
+    }
+}
@@ -0,0 +1,375 @@
+package org.entityflow2.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Hands out entity ids and reuses freed ones, without locking.
+ *
+ * Freed ids are kept in a paged bitmap of atomic longs, one bit per id.  Ids that have never been handed out
+ * are taken from an atomic counter, so allocation never needs to probe for unused ids.
+ *
+ * By default each thread claims ids in blocks of up to 64, either a whole word of freed ids from the bitmap or a range of new ids,
+ * and hands them out from its block without touching shared state, so threads creating entities do not contend.
+ * A thread can return the unused ids of its block with releaseThreadBlock, and the blocks of threads that have terminated
+ * are returned by reclaimFinishedThreadBlocks, so that the ids of e.g. replaced pool threads are reused.
+ *
+ * If low ids are preferred, each allocation instead claims the lowest freed id, or the next new id if none are free,
+ * so that the ids stay dense and tables indexed by entity id stay small, at the cost of some contention between threads.
+ *
+ * Thread safe.
+ */
+public final class EntityIdAllocator {
+
+    /**
+     * Number of ids a thread claims at a time, when low ids are not preferred.
+     */
+    public static final int BLOCK_SIZE = 64;
+
+    private static final int PAGE_SHIFT = 10;
+    private static final int WORDS_PER_PAGE = 1 << PAGE_SHIFT;
+    private static final int PAGE_MASK = WORDS_PER_PAGE - 1;
+
+    private final int minId;
+    private final int maxId;
+    private final boolean preferLowIds;
+
+    /**
+     * Bits set for freed ids, in pages of words created when ids in them are first freed.
+     */
+    private final AtomicReferenceArray<AtomicLongArray> freePages;
+    private final AtomicInteger freeIdCount = new AtomicInteger();
+
+    /**
+     * Words below this have no freed ids, except for ids freed while a scan moved past them.
+     */
+    private final AtomicInteger lowestFreeWord = new AtomicInteger();
+
+    /**
+     * Offset from minId of the next id that has never been handed out.
+     */
+    private final AtomicInteger nextNewIdOffset = new AtomicInteger();
+
+    private final ThreadLocal<Block> blocks = new ThreadLocal<Block>() {
+        @Override protected Block initialValue() {
+            final Block block = new Block(Thread.currentThread());
+            synchronized (threadBlocks) {
+                threadBlocks.add(block);
+            }
+            return block;
+        }
+    };
+
+    /**
+     * The blocks of all threads that have allocated ids, so that the blocks of terminated threads can be returned.
+     */
+    private final List<Block> threadBlocks = new ArrayList<Block>();
+
+    /**
+     * @param minId smallest id to hand out.
+     * @param maxId largest id to hand out.
+     * @param preferLowIds if true, always hand out the lowest free id instead of claiming blocks of ids per thread.
+     */
+    public EntityIdAllocator(int minId, int maxId, boolean preferLowIds) {
+        if (maxId < minId) throw new IllegalArgumentException("maxId should not be smaller than minId");
+        if ((long) maxId - minId >= Integer.MAX_VALUE) throw new IllegalArgumentException("The id range is too large");
+
+        this.minId = minId;
+        this.maxId = maxId;
+        this.preferLowIds = preferLowIds;
+
+        final long wordCount = (((long) maxId - minId) >>> 6) + 1;
+        freePages = new AtomicReferenceArray<AtomicLongArray>((int) ((wordCount + WORDS_PER_PAGE - 1) >>> PAGE_SHIFT));
+    }
+
+    /**
+     * @return true if the lowest free id is always handed out.
+     */
+    public boolean isPreferLowIds() {
+        return preferLowIds;
+    }
+
+    /**
+     * @return approximate number of freed ids available for reuse, not counting ids claimed by threads.
+     */
+    public int getFreeIdCount() {
+        return freeIdCount.get();
+    }
+
+    /**
+     * @return one larger than the largest id handed out so far.
+     */
+    public long getIdLimit() {
+        return minId + (long) nextNewIdOffset.get();
+    }
+
+    /**
+     * @return an id that is not in use.
+     * @throws IllegalStateException if all ids are in use.
+     */
+    public int allocate() {
+        if (preferLowIds) {
+            final int freedId = claimLowestFreeId();
+            return freedId != Integer.MIN_VALUE ? freedId : minId + claimNewIds(1);
+        }
+
+        final Block block = blocks.get();
+        if (block.isEmpty()) refill(block);
+        return block.take();
+    }
+
+    /**
+     * Returns an id for reuse.  The id should have been handed out by this allocator, and not freed since.
+     */
+    public void free(int id) {
+        final long offset = (long) id - minId;
+        if (offset < 0 || offset >= nextNewIdOffset.get()) throw new IllegalArgumentException("The id " + id + " has not been handed out by this allocator");
+
+        final int word = (int) (offset >>> 6);
+        final long bit = 1L << (offset & 63);
+        final AtomicLongArray page = getOrCreatePage(word >>> PAGE_SHIFT);
+        final int index = word & PAGE_MASK;
+        while (true) {
+            final long bits = page.get(index);
+            if ((bits & bit) != 0) throw new IllegalArgumentException("The id " + id + " is already free");
+            if (page.compareAndSet(index, bits, bits | bit)) break;
+        }
+        freeIdCount.incrementAndGet();
+
+        lowerLowestFreeWord(word);
+    }
+
+    /**
+     * Returns the ids that the calling thread has claimed but not yet handed out, so that other threads can use them.
+     * Call this e.g. when a thread is done creating entities.  The thread claims a new block if it allocates more ids.
+     * @return number of returned ids.
+     */
+    public int releaseThreadBlock() {
+        if (preferLowIds) return 0;
+
+        final Block block = blocks.get();
+        blocks.remove();
+        synchronized (threadBlocks) {
+            threadBlocks.remove(block);
+        }
+        return returnIds(block);
+    }
+
+    /**
+     * Returns the unused ids claimed by threads that have terminated since the last call.
+     * Cheap when no threads have terminated, so it can be called regularly, e.g. once per update.
+     * @return number of returned ids.
+     */
+    public int reclaimFinishedThreadBlocks() {
+        int returnedCount = 0;
+        synchronized (threadBlocks) {
+            for (int i = threadBlocks.size() - 1; i >= 0; i--) {
+                final Block block = threadBlocks.get(i);
+                // A terminated thread no longer touches its block, and its writes to it are visible once it is seen as not alive
+                if (!block.owner.isAlive()) {
+                    threadBlocks.remove(i);
+                    returnedCount += returnIds(block);
+                }
+            }
+        }
+        return returnedCount;
+    }
+
+    /**
+     * Continues handing out new ids after the largest of the specified ids, e.g. after restoring stored entities.
+     * Unused ids below it are not handed out.
+     * Can only be called before any ids have been handed out.
+     */
+    public void restore(int[] usedIds) {
+        if (nextNewIdOffset.get() != 0) throw new IllegalStateException("Ids can only be restored before any ids have been handed out");
+
+        long maxOffset = -1;
+        for (int id : usedIds) {
+            final long offset = (long) id - minId;
+            if (offset < 0 || id > maxId) throw new IllegalArgumentException("The id " + id + " is out of range");
+            maxOffset = Math.max(maxOffset, offset);
+        }
+        nextNewIdOffset.set((int) (maxOffset + 1));
+    }
+
+    private void refill(Block block) {
+        // Prefer freed ids, claiming a whole word of them
+        if (freeIdCount.get() > 0) {
+            final int startWord = lowestFreeWord.get();
+            if (claimFreeWord(block, startWord) || (startWord > 0 && claimFreeWord(block, 0))) return;
+        }
+
+        // Otherwise take a range of new ids
+        final long idLimit = (long) maxId - minId + 1;
+        while (true) {
+            final int offset = nextNewIdOffset.get();
+            if (offset >= idLimit) throw new IllegalStateException("Out of entity ids");
+
+            final int end = (int) Math.min(idLimit, (long) offset + BLOCK_SIZE);
+            if (nextNewIdOffset.compareAndSet(offset, end)) {
+                block.newIdNext = minId + offset;
+                block.newIdEnd = minId + (long) end;
+                return;
+            }
+        }
+    }
+
+    private int returnIds(Block block) {
+        int returnedCount = 0;
+
+        // Give back the rest of the new ids by moving the new id counter back, if no other thread has claimed new ids after them
+        if (block.newIdNext < block.newIdEnd) {
+            final int count = (int) (block.newIdEnd - block.newIdNext);
+            if (nextNewIdOffset.compareAndSet((int) (block.newIdEnd - minId), (int) (block.newIdNext - minId))) {
+                block.newIdNext = block.newIdEnd;
+                returnedCount += count;
+            }
+            else {
+                while (block.newIdNext < block.newIdEnd) {
+                    free((int) block.newIdNext++);
+                    returnedCount++;
+                }
+            }
+        }
+
+        // Put the rest of the claimed freed ids back into their word
+        if (block.freeBits != 0) {
+            final long offset = block.freeBitsBase - minId;
+            final int word = (int) (offset >>> 6);
+            final AtomicLongArray page = getOrCreatePage(word >>> PAGE_SHIFT);
+            final int index = word & PAGE_MASK;
+            while (true) {
+                final long bits = page.get(index);
+                if (page.compareAndSet(index, bits, bits | block.freeBits)) break;
+            }
+            final int count = Long.bitCount(block.freeBits);
+            freeIdCount.addAndGet(count);
+            returnedCount += count;
+            block.freeBits = 0;
+
+            lowerLowestFreeWord(word);
+        }
+
+        return returnedCount;
+    }
+
+    private void lowerLowestFreeWord(int word) {
+        // Lower the scan start if needed
+        while (true) {
+            final int lowest = lowestFreeWord.get();
+            if (lowest <= word || lowestFreeWord.compareAndSet(lowest, word)) break;
+        }
+    }
+
+    private boolean claimFreeWord(Block block, int startWord) {
+        final int wordLimit = (int) (((long) nextNewIdOffset.get() + 63) >>> 6);
+        for (int word = startWord; word < wordLimit; word++) {
+            final AtomicLongArray page = freePages.get(word >>> PAGE_SHIFT);
+            if (page == null) {
+                // No freed ids in the whole page
+                word |= PAGE_MASK;
+                continue;
+            }
+
+            final int index = word & PAGE_MASK;
+            if (page.get(index) != 0) {
+                final long bits = page.getAndSet(index, 0);
+                if (bits != 0) {
+                    freeIdCount.addAndGet(-Long.bitCount(bits));
+                    lowestFreeWord.compareAndSet(startWord, word);
+                    block.freeBits = bits;
+                    block.freeBitsBase = minId + ((long) word << 6);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the claimed id, or Integer.MIN_VALUE if there were no freed ids.
+     */
+    private int claimLowestFreeId() {
+        if (freeIdCount.get() <= 0) return Integer.MIN_VALUE;
+
+        final int startWord = lowestFreeWord.get();
+        int id = claimLowestFreeId(startWord);
+        if (id == Integer.MIN_VALUE && startWord > 0) id = claimLowestFreeId(0);
+        return id;
+    }
+
+    private int claimLowestFreeId(int startWord) {
+        final int wordLimit = (int) (((long) nextNewIdOffset.get() + 63) >>> 6);
+        for (int word = startWord; word < wordLimit; word++) {
+            final AtomicLongArray page = freePages.get(word >>> PAGE_SHIFT);
+            if (page == null) {
+                word |= PAGE_MASK;
+                continue;
+            }
+
+            final int index = word & PAGE_MASK;
+            long bits;
+            while ((bits = page.get(index)) != 0) {
+                final long lowestBit = bits & -bits;
+                if (page.compareAndSet(index, bits, bits & ~lowestBit)) {
+                    freeIdCount.decrementAndGet();
+                    lowestFreeWord.compareAndSet(startWord, word);
+                    return (int) (minId + ((long) word << 6) + Long.numberOfTrailingZeros(lowestBit));
+                }
+            }
+        }
+        return Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return offset of the first of the claimed new ids.
+     */
+    private int claimNewIds(int count) {
+        final long idLimit = (long) maxId - minId + 1;
+        while (true) {
+            final int offset = nextNewIdOffset.get();
+            if (offset + (long) count > idLimit) throw new IllegalStateException("Out of entity ids");
+            if (nextNewIdOffset.compareAndSet(offset, offset + count)) return offset;
+        }
+    }
+
+    private AtomicLongArray getOrCreatePage(int pageIndex) {
+        AtomicLongArray page = freePages.get(pageIndex);
+        if (page == null) {
+            freePages.compareAndSet(pageIndex, null, new AtomicLongArray(WORDS_PER_PAGE));
+            page = freePages.get(pageIndex);
+        }
+        return page;
+    }
+
+    /**
+     * Ids claimed by a thread.
+     */
+    private static final class Block {
+        final Thread owner;
+        long freeBits;
+        long freeBitsBase;
+        long newIdNext;
+        long newIdEnd;
+
+        Block(Thread owner) {
+            this.owner = owner;
+        }
+
+        boolean isEmpty() {
+            return freeBits == 0 && newIdNext >= newIdEnd;
+        }
+
+        int take() {
+            if (freeBits != 0) {
+                final int bit = Long.numberOfTrailingZeros(freeBits);
+                freeBits &= freeBits - 1;
+                return (int) (freeBitsBase + bit);
+            }
+            return (int) newIdNext++;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.entityflow2.utils;
+
+import net.openhft.koloboke.function.IntConsumer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Unbounded queue of non-zero int values, that any number of threads can add to without locking,
+ * and that one thread at a time drains.  Stores the values in linked segments of primitive int arrays, without boxing.
+ *
+ * Producers claim a slot in the last segment with an atomic increment and write the value to it.
+ * A zero in a claimed slot means that the producer has not yet written it, so zero can not be queued.
+ *
+ * Drained segments are cleared and kept for reuse, so a queue that is drained regularly does not allocate
+ * once it has grown to its peak size.  Linking a new segment takes a lock, which happens once per segment.
+ */
+public final class IntMpscQueue {
+
+    private static final int SEGMENT_SIZE = 1024;
+    private static final int MAX_FREE_SEGMENTS = 64;
+
+    private final AtomicReference<Segment> tail;
+
+    // Guards linking new segments after the tail, and the free segments
+    private final Object segmentLock = new Object();
+    private Segment freeSegments;
+    private int freeSegmentCount;
+
+    // Only accessed by the draining thread
+    private Segment head;
+    private int headPosition;
+
+    public IntMpscQueue() {
+        head = new Segment();
+        tail = new AtomicReference<Segment>(head);
+    }
+
+    /**
+     * Adds a value to the queue.  Can be called from any thread.
+     * @param value value to add, can not be zero.
+     */
+    public void offer(int value) {
+        if (value == 0) throw new IllegalArgumentException("Zero can not be added to the queue");
+
+        while (true) {
+            final Segment segment = tail.get();
+            final int index = segment.claimed.getAndIncrement();
+            if (index < SEGMENT_SIZE) {
+                segment.values.set(index, value);
+                return;
+            }
+
+            // The segment is full, link a new one after it unless another producer already did, and retry there.
+            // The segment may also be an already drained one that has been recycled, in that case the tail has moved on.
+            synchronized (segmentLock) {
+                if (tail.get() == segment) {
+                    final Segment next = takeFreeSegment();
+                    segment.next.set(next);
+                    tail.set(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if no values have been added since the last drain.  Only reliable in the draining thread.
+     */
+    public boolean isEmpty() {
+        return Math.min(head.claimed.get(), SEGMENT_SIZE) <= headPosition && head.next.get() == null;
+    }
+
+    /**
+     * Passes the values added to the queue to the consumer, in the order they were added, and removes them from the queue.
+     * Only one thread may drain the queue at a time.
+     * @return number of drained values.
+     */
+    public int drain(IntConsumer consumer) {
+        int count = 0;
+        while (true) {
+            final int end = Math.min(head.claimed.get(), SEGMENT_SIZE);
+            while (headPosition < end) {
+                int value;
+                while ((value = head.values.get(headPosition)) == 0) {
+                    // Claimed, but the producer has not yet written the value
+                    Thread.yield();
+                }
+                headPosition++;
+                consumer.accept(value);
+                count++;
+            }
+
+            if (headPosition < SEGMENT_SIZE) return count;
+
+            // Continue in the next segment, if any producer has created it
+            final Segment next = head.next.get();
+            if (next == null) return count;
+            final Segment drained = head;
+            head = next;
+            headPosition = 0;
+            recycleSegment(drained);
+        }
+    }
+
+    private Segment takeFreeSegment() {
+        final Segment segment = freeSegments;
+        if (segment == null) return new Segment();
+
+        freeSegments = segment.nextFree;
+        segment.nextFree = null;
+        freeSegmentCount--;
+
+        // Open the slots only now that the segment becomes the tail
+        segment.claimed.set(0);
+        return segment;
+    }
+
+    private void recycleSegment(Segment segment) {
+        synchronized (segmentLock) {
+            // The tail is always past a segment with a next segment, as linking moves the tail in the same lock
+            if (freeSegmentCount >= MAX_FREE_SEGMENTS) return;
+
+            // A producer that still holds the segment finds it full, as the claimed count is only reset when it is reused
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                segment.values.lazySet(i, 0);
+            }
+            segment.next.set(null);
+
+            segment.nextFree = freeSegments;
+            freeSegments = segment;
+            freeSegmentCount++;
+        }
+    }
+
+    private static final class Segment {
+        final AtomicIntegerArray values = new AtomicIntegerArray(SEGMENT_SIZE);
+        final AtomicInteger claimed = new AtomicInteger();
+        final AtomicReference<Segment> next = new AtomicReference<Segment>();
+
+        // Guarded by segmentLock
+        Segment nextFree;
+    }
+}
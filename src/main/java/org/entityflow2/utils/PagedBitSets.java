@@ -0,0 +1,249 @@
+package org.entityflow2.utils;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Maps non-negative int keys, such as entity ids, to small fixed width bit sets, such as the set of component types of an entity.
+ * The bits of each key are stored in consecutive longs in directly indexed pages, so a lookup is two array loads,
+ * and a bit set can be compared against a mask one long at a time.
+ *
+ * Pages are allocated when the first bit of a key in them is set, and released when the last key in them becomes empty.
+ * The width of the bit sets can be increased, which reallocates the allocated pages.
+ *
+ * Not thread safe.
+ */
+public final class PagedBitSets {
+
+    /**
+     * Default page size, as a power of two.
+     */
+    public static final int DEFAULT_PAGE_SIZE_SHIFT = 10;
+
+    private static final long[][] NO_PAGES = new long[0][];
+    private static final int[] NO_COUNTS = new int[0];
+
+    private final int pageShift;
+    private final int pageMask;
+
+    private int wordsPerKey;
+    private long[][] pages = NO_PAGES;
+    private int[] pageKeyCounts = NO_COUNTS;
+
+    /**
+     * Creates a new set of bit sets with the default page size.
+     * @param bitCount initial number of bits in each bit set.
+     */
+    public PagedBitSets(int bitCount) {
+        this(bitCount, DEFAULT_PAGE_SIZE_SHIFT);
+    }
+
+    /**
+     * @param bitCount initial number of bits in each bit set.
+     * @param pageSizeShift the number of keys in one page is two to the power of pageSizeShift.
+     */
+    public PagedBitSets(int bitCount, int pageSizeShift) {
+        Check.positiveOrZero(bitCount, "bitCount");
+        if (pageSizeShift < 1 || pageSizeShift > 24) throw new IllegalArgumentException("pageSizeShift should be in the range 1 to 24, but was " + pageSizeShift);
+
+        pageShift = pageSizeShift;
+        pageMask = (1 << pageSizeShift) - 1;
+        wordsPerKey = wordsFor(bitCount);
+    }
+
+    /**
+     * @return number of bits that fit in each bit set.
+     */
+    public int getBitCount() {
+        return wordsPerKey * 64;
+    }
+
+    /**
+     * Makes room for at least the specified number of bits in each bit set, preserving the existing bits.
+     */
+    public void ensureBitCount(int bitCount) {
+        final int newWordsPerKey = wordsFor(bitCount);
+        if (newWordsPerKey <= wordsPerKey) return;
+
+        // Widen the allocated pages
+        final int keysPerPage = pageMask + 1;
+        for (int p = 0; p < pages.length; p++) {
+            final long[] page = pages[p];
+            if (page != null) {
+                final long[] newPage = new long[keysPerPage * newWordsPerKey];
+                for (int i = 0; i < keysPerPage; i++) {
+                    System.arraycopy(page, i * wordsPerKey, newPage, i * newWordsPerKey, wordsPerKey);
+                }
+                pages[p] = newPage;
+            }
+        }
+
+        wordsPerKey = newWordsPerKey;
+    }
+
+    /**
+     * @return true if the specified bit is set for the key.
+     */
+    public boolean get(int key, int bit) {
+        final long[] page = getPage(key);
+        if (page == null || bit >= wordsPerKey * 64) return false;
+
+        return (page[(key & pageMask) * wordsPerKey + (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Sets the specified bit for the key.
+     * @param key non-negative key.
+     */
+    public void set(int key, int bit) {
+        Check.positiveOrZero(key, "key");
+        Check.positiveOrZero(bit, "bit");
+        if (bit >= wordsPerKey * 64) ensureBitCount(bit + 1);
+
+        final int pageIndex = key >>> pageShift;
+
+        // Grow page directory if needed
+        if (pageIndex >= pages.length) {
+            final int newLength = (int) Math.min(Math.max(pageIndex + 1L, pages.length * 2L), (Integer.MAX_VALUE >>> pageShift) + 1L);
+            pages = Arrays.copyOf(pages, newLength);
+            pageKeyCounts = Arrays.copyOf(pageKeyCounts, newLength);
+        }
+
+        // Allocate page if needed
+        long[] page = pages[pageIndex];
+        if (page == null) {
+            page = new long[(pageMask + 1) * wordsPerKey];
+            pages[pageIndex] = page;
+        }
+
+        final int start = (key & pageMask) * wordsPerKey;
+        if (isEmpty(page, start)) pageKeyCounts[pageIndex]++;
+        page[start + (bit >>> 6)] |= 1L << bit;
+    }
+
+    /**
+     * Clears the specified bit for the key.
+     */
+    public void clear(int key, int bit) {
+        final long[] page = getPage(key);
+        if (page == null || bit >= wordsPerKey * 64) return;
+
+        final int start = (key & pageMask) * wordsPerKey;
+        final int word = start + (bit >>> 6);
+        if ((page[word] & (1L << bit)) != 0) {
+            page[word] &= ~(1L << bit);
+            if (isEmpty(page, start)) releaseKey(key >>> pageShift);
+        }
+    }
+
+    /**
+     * Clears all bits of the key.
+     */
+    public void clear(int key) {
+        final long[] page = getPage(key);
+        if (page == null) return;
+
+        final int start = (key & pageMask) * wordsPerKey;
+        if (!isEmpty(page, start)) {
+            Arrays.fill(page, start, start + wordsPerKey, 0L);
+            releaseKey(key >>> pageShift);
+        }
+    }
+
+    /**
+     * @return true if no bits are set for the key.
+     */
+    public boolean isEmpty(int key) {
+        final long[] page = getPage(key);
+        return page == null || isEmpty(page, (key & pageMask) * wordsPerKey);
+    }
+
+    /**
+     * @return the index of the first bit set for the key at or after the specified bit, or -1 if there is none.
+     */
+    public int nextSetBit(int key, int fromBit) {
+        final long[] page = getPage(key);
+        if (page == null || fromBit >= wordsPerKey * 64) return -1;
+
+        final int start = (key & pageMask) * wordsPerKey;
+        int wordIndex = fromBit >>> 6;
+        long word = page[start + wordIndex] & (-1L << fromBit);
+        while (true) {
+            if (word != 0) return wordIndex * 64 + Long.numberOfTrailingZeros(word);
+            if (++wordIndex >= wordsPerKey) return -1;
+            word = page[start + wordIndex];
+        }
+    }
+
+    /**
+     * @param key the key whose bits to check.
+     * @param required mask created with createMask, with the bits that should be set.
+     * @param forbidden mask created with createMask, with the bits that should not be set.
+     * @return true if all the required bits and none of the forbidden bits are set for the key.
+     */
+    public boolean matches(int key, long[] required, long[] forbidden) {
+        final long[] page = getPage(key);
+        if (page == null) return isEmptyMask(required);
+
+        final int start = (key & pageMask) * wordsPerKey;
+        for (int i = 0; i < required.length; i++) {
+            final long bits = i < wordsPerKey ? page[start + i] : 0L;
+            if ((bits & required[i]) != required[i]) return false;
+        }
+        final int forbiddenWords = Math.min(forbidden.length, wordsPerKey);
+        for (int i = 0; i < forbiddenWords; i++) {
+            if ((page[start + i] & forbidden[i]) != 0) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return a mask with the specified bits set, for use with matches.
+     */
+    public static long[] createMask(int... bits) {
+        int maxBit = -1;
+        for (int bit : bits) {
+            Check.positiveOrZero(bit, "bit");
+            maxBit = Math.max(maxBit, bit);
+        }
+
+        final long[] mask = new long[wordsFor(maxBit + 1)];
+        for (int bit : bits) {
+            mask[bit >>> 6] |= 1L << bit;
+        }
+        return mask;
+    }
+
+    private long[] getPage(int key) {
+        // Negative keys map to page indexes past the end of the page directory
+        final int pageIndex = key >>> pageShift;
+        return pageIndex < pages.length ? pages[pageIndex] : null;
+    }
+
+    private boolean isEmpty(long[] page, int start) {
+        for (int i = 0; i < wordsPerKey; i++) {
+            if (page[start + i] != 0) return false;
+        }
+        return true;
+    }
+
+    private void releaseKey(int pageIndex) {
+        // Release the page if it became empty
+        if (--pageKeyCounts[pageIndex] == 0) {
+            pages[pageIndex] = null;
+        }
+    }
+
+    private static boolean isEmptyMask(long[] mask) {
+        for (long word : mask) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    private static int wordsFor(int bitCount) {
+        return Math.max(1, (bitCount + 63) >>> 6);
+    }
+}
@@ -0,0 +1,173 @@
+package org.entityflow2.utils;
+
+import org.flowutils.Check;
+
+import java.util.Arrays;
+
+/**
+ * Maps non-negative int keys, such as entity ids, to int values, using directly indexed pages of values instead of hashing.
+ * A lookup is two array loads.
+ *
+ * Pages are allocated when the first key in them is stored, and released when the last key in them is removed.
+ * The memory used is bounded by the page size times the number of pages that contain keys, plus a few bytes per page
+ * in the page directory for the largest stored key.  For densely allocated keys, such as entity ids, this is close to
+ * four bytes per stored key.
+ *
+ * Not thread safe.
+ */
+public final class PagedIntMap {
+
+    /**
+     * Default page size, as a power of two.
+     */
+    public static final int DEFAULT_PAGE_SIZE_SHIFT = 10;
+
+    private static final int[][] NO_PAGES = new int[0][];
+    private static final int[] NO_COUNTS = new int[0];
+
+    private final int pageShift;
+    private final int pageMask;
+    private final int missingValue;
+
+    private int[][] pages = NO_PAGES;
+    private int[] pageKeyCounts = NO_COUNTS;
+    private int size = 0;
+    private int allocatedPageCount = 0;
+
+    /**
+     * Creates a new map with the default page size.
+     * @param missingValue value returned for keys that are not present in the map.  Can not be stored in the map.
+     */
+    public PagedIntMap(int missingValue) {
+        this(missingValue, DEFAULT_PAGE_SIZE_SHIFT);
+    }
+
+    /**
+     * @param missingValue value returned for keys that are not present in the map.  Can not be stored in the map.
+     * @param pageSizeShift the number of values in one page is two to the power of pageSizeShift.
+     */
+    public PagedIntMap(int missingValue, int pageSizeShift) {
+        if (pageSizeShift < 1 || pageSizeShift > 30) throw new IllegalArgumentException("pageSizeShift should be in the range 1 to 30, but was " + pageSizeShift);
+
+        this.missingValue = missingValue;
+        pageShift = pageSizeShift;
+        pageMask = (1 << pageSizeShift) - 1;
+    }
+
+    /**
+     * @return the value for the specified key, or the missing value if the key is not present.
+     */
+    public int get(int key) {
+        // Negative keys map to page indexes past the end of the page directory
+        final int pageIndex = key >>> pageShift;
+        if (pageIndex >= pages.length) return missingValue;
+
+        final int[] page = pages[pageIndex];
+        if (page == null) return missingValue;
+
+        return page[key & pageMask];
+    }
+
+    /**
+     * @return true if the specified key has a value in this map.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != missingValue;
+    }
+
+    /**
+     * @param key non-negative key.
+     * @param value value to store for the key.  Can not be the missing value.
+     * @return the previous value for the key, or the missing value if it was not present.
+     */
+    public int put(int key, int value) {
+        Check.positiveOrZero(key, "key");
+        if (value == missingValue) throw new IllegalArgumentException("Can not store the missing value " + missingValue);
+
+        final int pageIndex = key >>> pageShift;
+
+        // Grow page directory if needed
+        if (pageIndex >= pages.length) {
+            final int newLength = (int) Math.min(Math.max(pageIndex + 1L, pages.length * 2L), (Integer.MAX_VALUE >>> pageShift) + 1L);
+            pages = Arrays.copyOf(pages, newLength);
+            pageKeyCounts = Arrays.copyOf(pageKeyCounts, newLength);
+        }
+
+        // Allocate page if needed
+        int[] page = pages[pageIndex];
+        if (page == null) {
+            page = new int[pageMask + 1];
+            if (missingValue != 0) Arrays.fill(page, missingValue);
+            pages[pageIndex] = page;
+            allocatedPageCount++;
+        }
+
+        final int index = key & pageMask;
+        final int oldValue = page[index];
+        page[index] = value;
+
+        if (oldValue == missingValue) {
+            pageKeyCounts[pageIndex]++;
+            size++;
+        }
+
+        return oldValue;
+    }
+
+    /**
+     * @return the removed value for the key, or the missing value if the key was not present.
+     */
+    public int remove(int key) {
+        final int pageIndex = key >>> pageShift;
+        if (pageIndex >= pages.length) return missingValue;
+
+        final int[] page = pages[pageIndex];
+        if (page == null) return missingValue;
+
+        final int index = key & pageMask;
+        final int oldValue = page[index];
+        if (oldValue != missingValue) {
+            page[index] = missingValue;
+            size--;
+
+            // Release the page if it became empty
+            if (--pageKeyCounts[pageIndex] == 0) {
+                pages[pageIndex] = null;
+                allocatedPageCount--;
+            }
+        }
+
+        return oldValue;
+    }
+
+    /**
+     * Removes all keys and releases all pages.
+     */
+    public void clear() {
+        pages = NO_PAGES;
+        pageKeyCounts = NO_COUNTS;
+        size = 0;
+        allocatedPageCount = 0;
+    }
+
+    /**
+     * @return number of keys stored in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return value returned for keys that are not present in the map.
+     */
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    /**
+     * @return approximate number of bytes used by the pages and page directory of this map.
+     */
+    public long getMemoryUsageBytes() {
+        return (long) allocatedPageCount * (pageMask + 1) * 4 + (long) pages.length * 12;
+    }
+}
@@ -0,0 +1,23 @@
+package org.entityflow2.vector;
+
+/**
+ * A mutable fixed size vector of double values, that can be stored inline in a component.
+ */
+public interface DoubleVector {
+
+    /**
+     * @return number of values in this vector.
+     */
+    int getLaneCount();
+
+    /**
+     * @return the value at the specified lane, 0 to laneCount - 1.
+     */
+    double getLane(int lane);
+
+    /**
+     * Sets the value at the specified lane, 0 to laneCount - 1.
+     */
+    void setLane(int lane, double value);
+
+}
@@ -0,0 +1,84 @@
+package org.entityflow2.vector;
+
+/**
+ * Mutable quaternion, with the vector part in x, y, z and the scalar part in w.
+ * Used as a holder when reading and writing inline vector properties, so that the same instance can be reused.
+ */
+public final class Quat implements DoubleVector {
+
+    public double x, y, z, w;
+
+    /**
+     * Creates an identity rotation.
+     */
+    public Quat() {
+        w = 1;
+    }
+
+    public Quat(double x, double y, double z, double w) {
+        set(x, y, z, w);
+    }
+
+    public Quat(Quat source) {
+        set(source);
+    }
+
+    public Quat set(double x, double y, double z, double w) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.w = w;
+        return this;
+    }
+
+    public Quat set(Quat source) {
+        return set(source.x, source.y, source.z, source.w);
+    }
+
+    @Override public int getLaneCount() {
+        return 4;
+    }
+
+    @Override public double getLane(int lane) {
+        switch (lane) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return z;
+            case 3: return w;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Quat");
+        }
+    }
+
+    @Override public void setLane(int lane, double value) {
+        switch (lane) {
+            case 0: x = value; break;
+            case 1: y = value; break;
+            case 2: z = value; break;
+            case 3: w = value; break;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Quat");
+        }
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final Quat other = (Quat) o;
+        return Double.compare(other.x, x) == 0 &&
+               Double.compare(other.y, y) == 0 &&
+               Double.compare(other.z, z) == 0 &&
+               Double.compare(other.w, w) == 0;
+    }
+
+    @Override public int hashCode() {
+        long bits = Double.doubleToLongBits(x);
+        bits = 31 * bits + Double.doubleToLongBits(y);
+        bits = 31 * bits + Double.doubleToLongBits(z);
+        bits = 31 * bits + Double.doubleToLongBits(w);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override public String toString() {
+        return "(" + x + ", " + y + ", " + z + ", " + w + ")";
+    }
+}
@@ -0,0 +1,70 @@
+package org.entityflow2.vector;
+
+/**
+ * Mutable two dimensional vector.
+ * Used as a holder when reading and writing inline vector properties, so that the same instance can be reused.
+ */
+public final class Vec2 implements DoubleVector {
+
+    public double x, y;
+
+    public Vec2() {
+    }
+
+    public Vec2(double x, double y) {
+        set(x, y);
+    }
+
+    public Vec2(Vec2 source) {
+        set(source);
+    }
+
+    public Vec2 set(double x, double y) {
+        this.x = x;
+        this.y = y;
+        return this;
+    }
+
+    public Vec2 set(Vec2 source) {
+        return set(source.x, source.y);
+    }
+
+    @Override public int getLaneCount() {
+        return 2;
+    }
+
+    @Override public double getLane(int lane) {
+        switch (lane) {
+            case 0: return x;
+            case 1: return y;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Vec2");
+        }
+    }
+
+    @Override public void setLane(int lane, double value) {
+        switch (lane) {
+            case 0: x = value; break;
+            case 1: y = value; break;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Vec2");
+        }
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final Vec2 other = (Vec2) o;
+        return Double.compare(other.x, x) == 0 &&
+               Double.compare(other.y, y) == 0;
+    }
+
+    @Override public int hashCode() {
+        long bits = Double.doubleToLongBits(x);
+        bits = 31 * bits + Double.doubleToLongBits(y);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override public String toString() {
+        return "(" + x + ", " + y + ")";
+    }
+}
@@ -0,0 +1,75 @@
+package org.entityflow2.vector;
+
+/**
+ * Mutable three dimensional vector.
+ * Used as a holder when reading and writing inline vector properties, so that the same instance can be reused.
+ */
+public final class Vec3 implements DoubleVector {
+
+    public double x, y, z;
+
+    public Vec3() {
+    }
+
+    public Vec3(double x, double y, double z) {
+        set(x, y, z);
+    }
+
+    public Vec3(Vec3 source) {
+        set(source);
+    }
+
+    public Vec3 set(double x, double y, double z) {
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        return this;
+    }
+
+    public Vec3 set(Vec3 source) {
+        return set(source.x, source.y, source.z);
+    }
+
+    @Override public int getLaneCount() {
+        return 3;
+    }
+
+    @Override public double getLane(int lane) {
+        switch (lane) {
+            case 0: return x;
+            case 1: return y;
+            case 2: return z;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Vec3");
+        }
+    }
+
+    @Override public void setLane(int lane, double value) {
+        switch (lane) {
+            case 0: x = value; break;
+            case 1: y = value; break;
+            case 2: z = value; break;
+            default: throw new IllegalArgumentException("No lane " + lane + " in a Vec3");
+        }
+    }
+
+    @Override public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        final Vec3 other = (Vec3) o;
+        return Double.compare(other.x, x) == 0 &&
+               Double.compare(other.y, y) == 0 &&
+               Double.compare(other.z, z) == 0;
+    }
+
+    @Override public int hashCode() {
+        long bits = Double.doubleToLongBits(x);
+        bits = 31 * bits + Double.doubleToLongBits(y);
+        bits = 31 * bits + Double.doubleToLongBits(z);
+        return (int) (bits ^ (bits >>> 32));
+    }
+
+    @Override public String toString() {
+        return "(" + x + ", " + y + ", " + z + ")";
+    }
+}
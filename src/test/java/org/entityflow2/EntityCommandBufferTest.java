@@ -0,0 +1,273 @@
+package org.entityflow2;
+
+import org.entityflow2.component.*;
+import org.entityflow2.group.EntityGroup;
+import org.entityflow2.processor.ProcessorBase;
+import org.entityflow2.type.Dictionary;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class EntityCommandBufferTest {
+
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+    private ComponentType marker;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+        marker = entityManager.addComponentType(new ComponentType(Symbol.get("Marker")));
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testPlayback() throws Exception {
+        final int existing = entityManager.createEntity(testComponent);
+        final int removed = entityManager.createEntity(testComponent);
+        final EntityGroup markedGroup = entityManager.getEntityGroup(testComponent, marker);
+
+        final EntityCommandBuffer commands = entityManager.createCommandBuffer();
+
+        final int first = commands.createEntity(testComponent);
+        commands.set(testComponent.number, first, 7);
+        commands.set(testComponent.horror, first, 1.5);
+        final int second = commands.createEntity(testComponent);
+        commands.addComponent(second, marker);
+        commands.addComponent(existing, marker);
+        commands.set(testComponent.number, existing, 3);
+        commands.removeEntity(removed);
+        assertTrue(EntityCommandBuffer.isPlaceholderId(first));
+        assertEquals(2, commands.getCreatedEntityCount());
+
+        // Nothing is applied before the update
+        assertEquals(2, entityManager.getEntityCount());
+        assertFalse(marker.containedInEntity(existing));
+
+        entityManager.update(new ManualTime());
+
+        assertTrue(commands.isEmpty());
+        assertEquals(3, entityManager.getEntityCount());
+        assertEquals(3, testComponent.number.get(existing));
+        assertTrue(marker.containedInEntity(existing));
+        assertEquals(2, markedGroup.getEntities().size());
+        assertTrue(markedGroup.getEntities().contains(existing));
+
+        final int created = markedGroup.getEntities().get(0) == existing ? markedGroup.getEntities().get(1) : markedGroup.getEntities().get(0);
+        assertEquals(0, testComponent.number.get(created));
+        assertEquals(7, testComponent.number.get(created - 1));
+        assertEquals(1.5, testComponent.horror.get(created - 1), 0);
+    }
+
+    @Test
+    public void testComponentChangesOfCreatedEntityFollowRecordedOrder() throws Exception {
+        final EntityCommandBuffer commands = entityManager.createCommandBuffer();
+
+        final int readded = commands.createEntity(testComponent);
+        commands.addComponent(readded, marker);
+        commands.removeComponent(readded, marker);
+        commands.addComponent(readded, marker);
+        commands.set(testComponent.number, readded, 1);
+
+        final int removed = commands.createEntity(testComponent);
+        commands.addComponent(removed, marker);
+        commands.removeComponent(removed, marker);
+        commands.set(testComponent.number, removed, 2);
+
+        entityManager.update(new ManualTime());
+
+        assertEquals(2, entityManager.getEntityCount());
+        int readdedCount = 0;
+        for (int entityId : testComponent.getEntities()) {
+            if (testComponent.number.get(entityId) == 1) {
+                assertTrue(marker.containedInEntity(entityId));
+                readdedCount++;
+            }
+            else {
+                assertEquals(2, testComponent.number.get(entityId));
+                assertFalse(marker.containedInEntity(entityId));
+            }
+        }
+        assertEquals(1, readdedCount);
+    }
+
+    @Test
+    public void testProcessorBuffersPlayBackInScheduleOrder() throws Exception {
+        final int processorCount = 4;
+        final CreatingProcessor[] processors = new CreatingProcessor[processorCount];
+        for (int i = 0; i < processorCount; i++) {
+            processors[i] = entityManager.addProcessor(new CreatingProcessor(i, processorCount - i));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(processorCount);
+        entityManager.setProcessorExecutor(executor);
+        try {
+            for (int update = 1; update <= 3; update++) {
+                entityManager.update(new ManualTime());
+
+                // Later processors finish first, but their entities are created in schedule order
+                final int[] entityIds = testComponent.getEntities();
+                Arrays.sort(entityIds);
+                assertEquals(processorCount * update, entityIds.length);
+                for (int i = 0; i < processorCount; i++) {
+                    assertEquals(i, testComponent.number.get(entityIds[processorCount * (update - 1) + i]));
+                }
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+
+        // Each processor keeps its buffer between updates
+        for (CreatingProcessor processor : processors) {
+            assertEquals(1, processor.usedBuffers.size());
+        }
+    }
+
+    @Test
+    public void testSmallAndEncodedValues() throws Exception {
+        final ComponentType unit = new ComponentType(Symbol.get("Unit"));
+        final ShortProperty armor = unit.addProperty("armor", (short) 1);
+        final ByteProperty level = unit.addProperty("level", (byte) 1);
+        final CharProperty glyph = unit.addProperty("glyph", '?');
+        final EnumProperty<Stance> stance = unit.addProperty("stance", Stance.IDLE);
+        final DictionaryProperty<String> faction = unit.addProperty("faction", "neutral", new Dictionary<String>(String.class));
+        final ConcurrentEntityManager unitManager = new ConcurrentEntityManager();
+        unitManager.addComponentType(unit);
+        unitManager.init();
+        try {
+            final EntityCommandBuffer commands = unitManager.createCommandBuffer();
+            final int placeholder = commands.createEntity(unit);
+            commands.set(armor, placeholder, (short) 300);
+            commands.set(level, placeholder, (byte) -3);
+            commands.set(glyph, placeholder, 'x');
+            commands.set(stance, placeholder, Stance.GUARDING);
+            commands.set(faction, placeholder, "cult");
+            unitManager.update(new ManualTime());
+
+            final int entityId = unit.getEntities()[0];
+            assertEquals(300, armor.get(entityId));
+            assertEquals(-3, level.get(entityId));
+            assertEquals('x', glyph.get(entityId));
+            assertEquals(Stance.GUARDING, stance.get(entityId));
+            assertEquals("cult", faction.get(entityId));
+        }
+        finally {
+            unitManager.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testThreadBufferOutsideProcessors() throws Exception {
+        entityManager.getThreadCommandBuffer();
+    }
+
+    @Test
+    public void testReleasedBufferIsNotPlayedBack() throws Exception {
+        final EntityCommandBuffer commands = entityManager.createCommandBuffer();
+        commands.createEntity(testComponent);
+        entityManager.update(new ManualTime());
+        assertEquals(1, entityManager.getEntityCount());
+
+        commands.createEntity(testComponent);
+        entityManager.releaseCommandBuffer(commands);
+        assertTrue(commands.isEmpty());
+        entityManager.update(new ManualTime());
+        assertEquals(1, entityManager.getEntityCount());
+
+        try {
+            entityManager.releaseCommandBuffer(commands);
+            fail("Should not be possible to release a buffer twice");
+        }
+        catch (IllegalArgumentException e) {
+            // Ok
+        }
+    }
+
+    @Test
+    public void testFailingBufferDoesNotStopPlayback() throws Exception {
+        final EntityCommandBuffer failing = entityManager.createCommandBuffer();
+        final EntityCommandBuffer later = entityManager.createCommandBuffer();
+        final int withoutComponent = entityManager.createEntity();
+        failing.set(testComponent.number, withoutComponent, 1);
+        later.createEntity(testComponent);
+
+        try {
+            entityManager.update(new ManualTime());
+            fail("Setting a property of an entity without the component should fail");
+        }
+        catch (RuntimeException e) {
+            // Ok
+        }
+
+        // The buffer after the failing one was still played back, and both were cleared
+        assertEquals(1, testComponent.getEntities().length);
+        assertTrue(failing.isEmpty());
+        assertTrue(later.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testForeignPlaceholder() throws Exception {
+        final EntityCommandBuffer commands = entityManager.createCommandBuffer();
+        commands.removeEntity(-1);
+    }
+
+    private enum Stance {
+        IDLE, GUARDING
+    }
+
+    /**
+     * Creates an entity numbered with the index of the processor, after waiting for a while.
+     */
+    private final class CreatingProcessor extends ProcessorBase {
+        private final int number;
+        private final long delayMillis;
+        private final Set<EntityCommandBuffer> usedBuffers = Collections.newSetFromMap(new IdentityHashMap<EntityCommandBuffer, Boolean>());
+
+        private CreatingProcessor(int number, long delayMillis) {
+            this.number = number;
+            this.delayMillis = delayMillis;
+            getDependencies().reads(marker);
+        }
+
+        @Override protected void doUpdate(Time time) {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            final EntityCommandBuffer commands = getEntityManager().getThreadCommandBuffer();
+            usedBuffers.add(commands);
+            final int entityId = commands.createEntity(testComponent);
+            commands.set(testComponent.number, entityId, number);
+        }
+
+        @Override public void init(EntityManager entityManager) {
+        }
+
+        @Override public void shutdown(EntityManager entityManager) {
+        }
+    }
+}
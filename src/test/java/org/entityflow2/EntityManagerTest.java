@@ -2,15 +2,22 @@ package org.entityflow2;
 
 import net.openhft.koloboke.collect.set.IntSet;
 import org.entityflow2.component.TestComponent;
+import org.entityflow2.group.EntityGroup;
+import org.entityflow2.group.EntityQuery;
+import org.entityflow2.group.SortedEntityIds;
+import org.entityflow2.processor.ProcessorBase;
 import org.flowutils.random.RandomSequence;
 import org.flowutils.random.XorShift;
 import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.*;
 
@@ -181,6 +188,99 @@ public class EntityManagerTest {
         }
     }
 
+    @Test
+    public void testCreateEntities() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(testComponent);
+        final int single = entityManager.createEntity(testComponent);
+
+        final int[] entities = entityManager.createEntities(LOTS, testComponent);
+        assertEquals(LOTS, entities.length);
+        assertEquals(LOTS + 1, entityManager.getEntityCount());
+        assertEquals(LOTS + 1, testComponent.getComponentCount());
+        update();
+        assertEquals(LOTS + 1, group.getEntities().size());
+
+        for (int i = 0; i < LOTS; i++) {
+            assertTrue("Ids should be unique", entities[i] > (i == 0 ? single : entities[i - 1]));
+            assertEquals(41, testComponent.tentacleCount.get(entities[i]));
+            assertEquals(13.3f, testComponent.speed.get(entities[i]), 0.0001);
+            assertEquals(5.5, testComponent.horror.get(entities[i]), 0.0001);
+            testComponent.number.set(entities[i], i);
+        }
+        assertEquals(LOTS - 1, testComponent.number.get(entities[LOTS - 1]));
+
+        // Entities without components
+        assertEquals(3, entityManager.createEntities(3).length);
+        assertEquals(LOTS + 4, entityManager.getEntityCount());
+    }
+
+    @Test
+    public void testRemoveEntitiesInBatch() throws Exception {
+        final EntityGroup withComponent = entityManager.getEntityGroup(testComponent);
+        final EntityGroup withoutComponent = entityManager.getEntityGroup(new EntityQuery.Builder().none(testComponent).build());
+
+        final int[] entities = entityManager.createEntities(100, testComponent);
+        final int[] bareEntities = entityManager.createEntities(10);
+        for (int i = 0; i < entities.length; i++) {
+            testComponent.number.set(entities[i], i);
+        }
+        update();
+        assertEquals(100, withComponent.getEntities().length);
+        assertEquals(10, withoutComponent.getEntities().length);
+
+        // Remove every third entity, some of them twice, in decreasing order
+        int removedCount = 0;
+        for (int i = entities.length - 1; i >= 0; i -= 3) {
+            entityManager.removeEntity(entities[i]);
+            if (i % 2 == 0) entityManager.removeEntity(entities[i]);
+            removedCount++;
+        }
+        entityManager.removeEntity(bareEntities[0]);
+        entityManager.removeEntity(bareEntities[0]);
+        update();
+
+        assertEquals(110 - removedCount - 1, entityManager.getEntityCount());
+        assertEquals(100 - removedCount, testComponent.getComponentCount());
+        assertEquals(100 - removedCount, withComponent.getEntities().length);
+        assertEquals(9, withoutComponent.getEntities().length);
+        for (int i = 0; i < entities.length; i++) {
+            final boolean removed = (entities.length - 1 - i) % 3 == 0;
+            assertEquals(!removed, testComponent.containedInEntity(entities[i]));
+            if (!removed) assertEquals(i, testComponent.number.get(entities[i]));
+        }
+
+        // Removing already removed entities does nothing
+        entityManager.removeEntity(entities[entities.length - 1]);
+        update();
+        assertEquals(110 - removedCount - 1, entityManager.getEntityCount());
+    }
+
+    @Test
+    public void testProcessorsSharingGroupInParallel() throws Exception {
+        final ReadingProcessor first = entityManager.addProcessor(new ReadingProcessor());
+        final ReadingProcessor second = entityManager.addProcessor(new ReadingProcessor());
+        assertSame(first.group, second.group);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        entityManager.setProcessorExecutor(executor);
+        try {
+            int entityCount = 0;
+            for (int i = 0; i < 50; i++) {
+                // Entities created between updates leave pending changes in the shared group
+                for (int e = 0; e < 20; e++) {
+                    entityManager.createEntity(testComponent);
+                    entityCount++;
+                }
+                update();
+                assertEquals(entityCount, first.seenEntityCount);
+                assertEquals(entityCount, second.seenEntityCount);
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
     private void removeComponentAndTest(int entityId) {
         assertEquals(entityId, testComponent.number.get(entityId));
         assertEquals("Number " + entityId, testComponent.name.get(entityId));
@@ -210,4 +310,31 @@ public class EntityManagerTest {
         entityManager.update(time);
     }
 
+    /**
+     * Only reads the entities of a group, so that processors of this type can run in parallel.
+     */
+    private final class ReadingProcessor extends ProcessorBase {
+        private EntityGroup group;
+        private volatile int seenEntityCount;
+
+        private ReadingProcessor() {
+            getDependencies().reads(testComponent);
+        }
+
+        @Override public void init(EntityManager entityManager) {
+            group = entityManager.getEntityGroup(testComponent);
+        }
+
+        @Override public void shutdown(EntityManager entityManager) {
+        }
+
+        @Override protected void doUpdate(Time time) {
+            final SortedEntityIds entities = group.getEntities();
+            for (int i = 1; i < entities.size(); i++) {
+                assertTrue("Entity ids should stay sorted", entities.get(i - 1) < entities.get(i));
+            }
+            seenEntityCount = entities.size();
+        }
+    }
+
 }
\ No newline at end of file
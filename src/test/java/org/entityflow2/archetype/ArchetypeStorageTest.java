@@ -0,0 +1,224 @@
+package org.entityflow2.archetype;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.ComponentCursor;
+import org.entityflow2.component.ComponentLayout;
+import org.entityflow2.component.ComponentType;
+import org.entityflow2.component.DoubleProperty;
+import org.entityflow2.component.TestComponent;
+import org.entityflow2.group.EntityGroup;
+import org.entityflow2.group.EntityGroupImpl;
+import org.entityflow2.storage.MappedBlockStorage;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ArchetypeStorageTest {
+
+    private ArchetypeStorage archetypes;
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+    private ComponentType otherComponent;
+    private DoubleProperty weight;
+
+    @Before
+    public void setUp() throws Exception {
+        archetypes = new ArchetypeStorage(8);
+        entityManager = new ConcurrentEntityManager(archetypes);
+        testComponent = entityManager.addComponentType(new TestComponent());
+        otherComponent = new ComponentType(Symbol.get("OtherComponent"));
+        weight = otherComponent.addProperty("weight", 2.0);
+        entityManager.addComponentType(otherComponent);
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (entityManager.isActive()) entityManager.shutdown();
+    }
+
+    @Test
+    public void testComponentsShareIndex() throws Exception {
+        final int entityId = entityManager.createEntity(testComponent, otherComponent);
+
+        final Archetype archetype = archetypes.getArchetype(entityId);
+        assertEquals(2, archetype.getComponentTypeCount());
+        assertEquals(1, archetype.getEntityCount());
+        assertEquals(entityId, archetype.getEntityId(0));
+
+        final ComponentCursor cursor = new ComponentCursor(testComponent, otherComponent);
+        assertTrue(cursor.next());
+        assertEquals(archetype.getComponentIndex(0), cursor.getComponentIndex(testComponent));
+        assertEquals(archetype.getComponentIndex(0), cursor.getComponentIndex(otherComponent));
+
+        assertEquals(41, testComponent.tentacleCount.get(entityId));
+        assertEquals(2.0, weight.get(entityId), 0);
+        assertEquals("Igrixr", testComponent.name.get(entityId));
+    }
+
+    @Test
+    public void testMoveBetweenArchetypes() throws Exception {
+        final int[] entityIds = new int[30];
+        for (int i = 0; i < entityIds.length; i++) {
+            entityIds[i] = entityManager.createEntity(testComponent);
+            testComponent.number.set(entityIds[i], i);
+            testComponent.name.set(entityIds[i], "Entity" + i);
+        }
+
+        // Move every other entity to the archetype with both component types
+        for (int i = 0; i < entityIds.length; i += 2) {
+            otherComponent.addToEntity(entityIds[i]);
+            weight.set(entityIds[i], i * 0.5);
+        }
+        assertEquals(15, archetypes.getArchetype(entityIds[0]).getEntityCount());
+        assertEquals(15, archetypes.getArchetype(entityIds[1]).getEntityCount());
+
+        // Values should survive the moves, also of the entities moved to fill the holes
+        for (int i = 0; i < entityIds.length; i++) {
+            assertEquals(i, testComponent.number.get(entityIds[i]));
+            assertEquals("Entity" + i, testComponent.name.get(entityIds[i]));
+            assertEquals(i % 2 == 0, otherComponent.containedInEntity(entityIds[i]));
+            if (i % 2 == 0) assertEquals(i * 0.5, weight.get(entityIds[i]), 0);
+        }
+
+        // Move back, leaving only the other component
+        for (int i = 0; i < entityIds.length; i += 2) {
+            testComponent.removeFromEntity(entityIds[i]);
+            assertEquals(i * 0.5, weight.get(entityIds[i]), 0);
+        }
+        assertEquals(3, archetypes.getArchetypes().size());
+        assertEquals(15, testComponent.getComponentCount());
+        assertEquals(2, archetypes.getArchetypes(otherComponent).size());
+
+        // Removing the last component leaves the entity without an archetype
+        otherComponent.removeFromEntity(entityIds[0]);
+        assertNull(archetypes.getArchetype(entityIds[0]));
+    }
+
+    @Test
+    public void testRemoveEntities() throws Exception {
+        final int[] entityIds = entityManager.createEntities(20, testComponent, otherComponent);
+        for (int i = 0; i < entityIds.length; i++) {
+            weight.set(entityIds[i], i);
+        }
+        final Archetype archetype = archetypes.getArchetype(entityIds[0]);
+        assertEquals(3, archetype.getChunkCount());
+
+        for (int i = 0; i < 15; i++) {
+            entityManager.removeEntity(entityIds[i]);
+        }
+        entityManager.update(new ManualTime());
+
+        assertEquals(5, archetype.getEntityCount());
+        assertEquals(1, archetype.getChunkCount());
+        assertEquals(5, otherComponent.getComponentCount());
+        for (int i = 15; i < entityIds.length; i++) {
+            assertEquals(i, weight.get(entityIds[i]), 0);
+        }
+    }
+
+    @Test
+    public void testPlacedTypesAreInUse() throws Exception {
+        entityManager.createEntity(testComponent);
+
+        try {
+            testComponent.setLayout(ComponentLayout.COLUMNAR);
+            fail("Should not be possible to change the layout after components have been placed");
+        }
+        catch (IllegalStateException e) {
+            // Ok
+        }
+    }
+
+    @Test
+    public void testMappedStorageWithReleasedChunks() throws Exception {
+        final File directory = File.createTempFile("entityflow", "test");
+        assertTrue(directory.delete());
+
+        try {
+            otherComponent.setStorageFactory(MappedBlockStorage.createFactory(directory, 8));
+
+            // The entity of the first archetype is in the first chunk, which is released when it is removed
+            final int first = entityManager.createEntity(otherComponent);
+            final int second = entityManager.createEntity(testComponent, otherComponent);
+            weight.set(second, 3);
+            entityManager.removeEntity(first);
+            entityManager.update(new ManualTime());
+
+            otherComponent.flush();
+            assertEquals(3, weight.get(second), 0);
+
+            // Flushes and releases the storages
+            entityManager.shutdown();
+        }
+        finally {
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testGroupsAndCursor() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(testComponent, otherComponent);
+        final List<Archetype> matching = archetypes.getArchetypes(testComponent, otherComponent);
+
+        for (int i = 1; i <= 30; i++) {
+            final int entityId;
+            if (i % 3 == 0) entityId = entityManager.createEntity(testComponent, otherComponent);
+            else if (i % 3 == 1) entityId = entityManager.createEntity(testComponent);
+            else entityId = entityManager.createEntity(otherComponent);
+
+            if (otherComponent.containedInEntity(entityId)) weight.set(entityId, entityId);
+        }
+        entityManager.update(new ManualTime());
+
+        assertEquals(10, group.getEntities().size());
+        assertEquals(1, matching.size());
+        assertEquals(10, matching.get(0).getEntityCount());
+
+        final ComponentCursor cursor = new ComponentCursor(testComponent, otherComponent);
+        int count = 0;
+        while (cursor.next()) {
+            final int entityId = cursor.getEntityId();
+            assertTrue(group.getEntities().contains(entityId));
+            assertEquals(entityId, weight.get(cursor), 0);
+            assertEquals(cursor.getComponentIndex(testComponent), cursor.getComponentIndex(otherComponent));
+            count++;
+        }
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void testRemovedEntitiesUpdateGroupsInBatch() throws Exception {
+        final EntityGroupImpl group = (EntityGroupImpl) entityManager.getEntityGroup(testComponent, otherComponent);
+        final int[] entities = entityManager.createEntities(20, testComponent, otherComponent);
+        entityManager.update(new ManualTime());
+        assertEquals(20, group.getEntities().size());
+
+        // The removed entities are passed to the group in one batch, without checking them against its query one at a time
+        final long evaluationCount = group.getEvaluationCount();
+        for (int i = 0; i < entities.length; i += 4) {
+            entityManager.removeEntity(entities[i]);
+        }
+        entityManager.update(new ManualTime());
+
+        assertEquals(15, group.getEntities().size());
+        assertEquals(15, archetypes.getArchetype(entities[1]).getEntityCount());
+        assertEquals(evaluationCount, group.getEvaluationCount());
+    }
+}
@@ -0,0 +1,87 @@
+package org.entityflow2.benchmark;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.ComponentType;
+import org.entityflow2.component.DoubleProperty;
+import org.entityflow2.processor.EntityProcessor2Base;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
+
+/**
+ * Compares integrating velocity into position with a per-entity EntityProcessor2Base loop,
+ * against the bulk addScaled operation of DoubleProperty.
+ */
+public class BulkKernelBenchmark {
+
+    private static final int ENTITIES = 100000;
+    private static final int ROUNDS = 200;
+    private static final double TIME_STEP = 0.01;
+
+    public static void main(String[] args) {
+        // Per-entity processor over separate position and velocity components
+        final ConcurrentEntityManager processorManager = new ConcurrentEntityManager();
+        final ComponentType position = new ComponentType(Symbol.get("Position"));
+        final DoubleProperty x = position.addProperty("x", 0.0);
+        final ComponentType velocity = new ComponentType(Symbol.get("Velocity"));
+        final DoubleProperty vx = velocity.addProperty("vx", 1.0);
+        processorManager.addComponentType(position);
+        processorManager.addComponentType(velocity);
+        processorManager.addProcessor(new EntityProcessor2Base<ComponentType, ComponentType>(position, velocity) {
+            @Override protected void updateEntity(Time time, int entityId, ComponentType position, ComponentType velocity) {
+                x.set(entityId, x.get(entityId) + TIME_STEP * vx.get(entityId));
+            }
+        });
+        processorManager.init();
+        for (int i = 0; i < ENTITIES; i++) {
+            processorManager.createEntity(position, velocity);
+        }
+
+        // Bulk operation over one component with both properties
+        final ConcurrentEntityManager bulkManager = new ConcurrentEntityManager();
+        final ComponentType motion = new ComponentType(Symbol.get("Motion"));
+        final DoubleProperty mx = motion.addProperty("x", 0.0);
+        final DoubleProperty mvx = motion.addProperty("vx", 1.0);
+        bulkManager.addComponentType(motion);
+        bulkManager.init();
+        for (int i = 0; i < ENTITIES; i++) {
+            bulkManager.createEntity(motion);
+        }
+
+        final ManualTime time = new ManualTime();
+
+        // Warm up
+        for (int i = 0; i < 5; i++) {
+            runProcessor(processorManager, time);
+            runBulk(mx, mvx);
+        }
+
+        long start = System.nanoTime();
+        runProcessor(processorManager, time);
+        report("EntityProcessor2Base", System.nanoTime() - start);
+
+        start = System.nanoTime();
+        runBulk(mx, mvx);
+        report("DoubleProperty.addScaled", System.nanoTime() - start);
+
+        processorManager.shutdown();
+        bulkManager.shutdown();
+    }
+
+    private static void runProcessor(ConcurrentEntityManager entityManager, ManualTime time) {
+        for (int round = 0; round < ROUNDS; round++) {
+            time.advanceTimeSeconds(TIME_STEP);
+            entityManager.update(time);
+        }
+    }
+
+    private static void runBulk(DoubleProperty x, DoubleProperty vx) {
+        for (int round = 0; round < ROUNDS; round++) {
+            x.addScaled(TIME_STEP, vx);
+        }
+    }
+
+    private static void report(String name, long duration) {
+        System.out.println(name + ": " + String.format("%.3f", (double) duration / ((double) ENTITIES * ROUNDS)) + " ns per entity");
+    }
+}
@@ -0,0 +1,70 @@
+package org.entityflow2.benchmark;
+
+import org.entityflow2.utils.EntityIdAllocator;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Measures how many entity ids per second EntityIdAllocator hands out and frees, for different numbers of threads,
+ * with and without preferring low ids.
+ */
+public class EntityIdAllocatorBenchmark {
+
+    private static final int IDS_PER_THREAD = 2000000;
+    private static final int LIVE_IDS_PER_THREAD = 10000;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws InterruptedException {
+        // Warm up
+        run(4, false);
+        run(4, true);
+
+        for (boolean preferLowIds : new boolean[]{false, true}) {
+            for (int threadCount : THREAD_COUNTS) {
+                final long nanos = run(threadCount, preferLowIds);
+                final double millionIdsPerSecond = (double) threadCount * IDS_PER_THREAD / nanos * 1000;
+                System.out.printf("%-18s %2d threads: %8.2f million ids / s%n",
+                                  preferLowIds ? "prefer low ids" : "per-thread blocks",
+                                  threadCount,
+                                  millionIdsPerSecond);
+            }
+        }
+    }
+
+    /**
+     * Each thread allocates ids, freeing the oldest of its live ids once it has more than LIVE_IDS_PER_THREAD,
+     * so that freed ids are reused the same way as when entities are created and removed.
+     * @return nanoseconds taken by all threads.
+     */
+    private static long run(int threadCount, boolean preferLowIds) throws InterruptedException {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, Integer.MAX_VALUE - 3, preferLowIds);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threadCount);
+
+        for (int t = 0; t < threadCount; t++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    final int[] liveIds = new int[LIVE_IDS_PER_THREAD];
+                    try {
+                        start.await();
+                        for (int i = 0; i < IDS_PER_THREAD; i++) {
+                            final int slot = i % LIVE_IDS_PER_THREAD;
+                            if (i >= LIVE_IDS_PER_THREAD) allocator.free(liveIds[slot]);
+                            liveIds[slot] = allocator.allocate();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.start();
+        }
+
+        final long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        return System.nanoTime() - startTime;
+    }
+}
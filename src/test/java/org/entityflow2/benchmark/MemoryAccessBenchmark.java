@@ -0,0 +1,57 @@
+package org.entityflow2.benchmark;
+
+import org.entityflow2.memory.ByteBufferMemoryAccess;
+import org.entityflow2.memory.MemoryAccess;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Compares the per-access cost of the memory access implementations, for a processor style loop that
+ * reads and writes a double at a fixed stride in a direct buffer.
+ */
+public class MemoryAccessBenchmark {
+
+    private static final int COMPONENTS = 200000;
+    private static final int STRIDE = 32;
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(COMPONENTS * STRIDE).order(ByteOrder.nativeOrder());
+
+        final MemoryAccess checked = new ByteBufferMemoryAccess();
+        final MemoryAccess unsafe = MemoryAccess.createUnchecked();
+
+        // Warm up both implementations before measuring, so that the loop call site is bimorphic for both
+        for (int i = 0; i < 5; i++) {
+            run(checked, buffer);
+            if (unsafe != null) run(unsafe, buffer);
+        }
+
+        report("ByteBuffer", checked, buffer);
+        if (unsafe != null) report("Unsafe", unsafe, buffer);
+        else System.out.println("Unsafe memory access not available");
+    }
+
+    private static void report(String name, MemoryAccess memoryAccess, ByteBuffer buffer) {
+        final long start = System.nanoTime();
+        final double result = run(memoryAccess, buffer);
+        final long duration = System.nanoTime() - start;
+
+        final double accesses = 2.0 * COMPONENTS * ROUNDS;
+        System.out.println(name + ": " + String.format("%.3f", duration / accesses) + " ns per access (checksum " + result + ")");
+    }
+
+    private static double run(MemoryAccess memoryAccess, ByteBuffer buffer) {
+        double sum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < COMPONENTS; i++) {
+                final int offset = i * STRIDE + 8;
+                final double value = memoryAccess.getDouble(buffer, offset) + 0.5;
+                memoryAccess.putDouble(buffer, offset, value);
+                sum += value;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,122 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.group.EntityGroup;
+import org.entityflow2.range.DoubleRange;
+import org.entityflow2.range.IntRange;
+import org.entityflow2.storage.ChunkedBlockStorage;
+import org.flowutils.Symbol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the bulk operations of the primitive properties.
+ */
+public class BulkOperationTest {
+
+    private static final int COUNT = 300;
+
+    private ConcurrentEntityManager entityManager;
+    private ComponentType motion;
+    private DoubleProperty x;
+    private DoubleProperty velocity;
+    private FloatProperty timer;
+    private IntProperty health;
+    private int[] entities;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        motion = new ComponentType(Symbol.get("Motion"));
+        x = motion.addProperty("x", 0.0);
+        velocity = motion.addProperty("velocity", 2.0, new DoubleRange(-10, 10));
+        timer = motion.addProperty("timer", 1f);
+        health = motion.addProperty("health", 100, IntRange.ZERO_OR_LARGER);
+
+        // Use small chunks, so that the operations have to handle several runs
+        motion.setStorageFactory(ChunkedBlockStorage.createFactory(64));
+        motion.setLayout(ComponentLayout.COLUMNAR);
+        entityManager.addComponentType(motion);
+        entityManager.init();
+
+        entities = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            entities[i] = entityManager.createEntity(motion);
+            velocity.set(entities[i], i % 5);
+        }
+
+        // Leave free blocks between the components
+        for (int i = 0; i < COUNT; i += 3) {
+            motion.removeFromEntity(entities[i]);
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testAddScaledAndScale() throws Exception {
+        x.addScaled(0.5, velocity);
+        x.addScaled(0.5, velocity);
+        velocity.scale(10);
+
+        for (int i = 1; i < COUNT; i++) {
+            if (i % 3 != 0) {
+                assertEquals(i % 5, x.get(entities[i]), 0.0001);
+                assertEquals("Should be clamped to the range of the property", Math.min(10, 10 * (i % 5)), velocity.get(entities[i]), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void testFillCopyAndClamp() throws Exception {
+        health.fill(-5);
+        timer.fill(3f);
+        x.copyFrom(velocity);
+        velocity.clamp(new DoubleRange(1, 3));
+
+        for (int i = 1; i < COUNT; i++) {
+            if (i % 3 != 0) {
+                assertEquals(0, health.get(entities[i]));
+                assertEquals(3f, timer.get(entities[i]), 0.0001);
+                assertEquals(i % 5, x.get(entities[i]), 0.0001);
+                assertEquals(Math.max(1, Math.min(3, i % 5)), velocity.get(entities[i]), 0.0001);
+            }
+        }
+    }
+
+    @Test
+    public void testOperations() throws Exception {
+        timer.apply(new FloatOperation() {
+            @Override public float apply(float value) {
+                return value - 0.25f;
+            }
+        });
+
+        final EntityGroup group = entityManager.getEntityGroup(motion);
+        health.apply(group, new IntOperation() {
+            @Override public int apply(int value) {
+                return value / 2;
+            }
+        });
+
+        for (int i = 1; i < COUNT; i++) {
+            if (i % 3 != 0) {
+                assertEquals(0.75f, timer.get(entities[i]), 0.0001);
+                assertEquals(50, health.get(entities[i]));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSourceFromOtherComponentType() throws Exception {
+        final ComponentType other = new ComponentType(Symbol.get("Other"));
+        final DoubleProperty y = other.addProperty("y", 1.0);
+        x.addScaled(1, y);
+    }
+}
@@ -0,0 +1,130 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.flowutils.Symbol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ComponentCursorTest {
+
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+    private ComponentType otherComponent;
+    private DoubleProperty weight;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+        otherComponent = new ComponentType(Symbol.get("OtherComponent"));
+        weight = otherComponent.addProperty("weight", 2.0);
+        entityManager.addComponentType(otherComponent);
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testSingleComponentType() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            final int entityId = entityManager.createEntity(testComponent);
+            testComponent.number.set(entityId, entityId * 10);
+        }
+        testComponent.removeFromEntity(5);
+        testComponent.removeFromEntity(50);
+
+        final ComponentCursor cursor = new ComponentCursor(testComponent);
+        int count = 0;
+        int previousEntity = 0;
+        while (cursor.next()) {
+            final int entityId = cursor.getEntityId();
+            assertTrue("Entities should be visited in id order", entityId > previousEntity);
+            assertEquals(entityId * 10, testComponent.number.get(cursor));
+
+            testComponent.number.set(cursor, entityId);
+            assertEquals(entityId, testComponent.number.get(entityId));
+
+            previousEntity = entityId;
+            count++;
+        }
+        assertEquals(98, count);
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testIntersection() throws Exception {
+        for (int i = 1; i <= 100; i++) {
+            final int entityId;
+            if (i % 3 == 0) entityId = entityManager.createEntity(testComponent, otherComponent);
+            else if (i % 3 == 1) entityId = entityManager.createEntity(testComponent);
+            else entityId = entityManager.createEntity(otherComponent);
+
+            if (otherComponent.containedInEntity(entityId)) weight.set(entityId, entityId);
+        }
+
+        final ComponentCursor cursor = new ComponentCursor(testComponent, otherComponent);
+        cursor.reset();
+        assertTrue(cursor.isMergeJoin());
+        int count = 0;
+        while (cursor.next()) {
+            final int entityId = cursor.getEntityId();
+            assertEquals(0, entityId % 3);
+            assertEquals(entityId, weight.get(cursor), 0);
+            assertEquals(41, testComponent.tentacleCount.get(cursor));
+            count++;
+        }
+        assertEquals(33, count);
+
+        // Can be restarted
+        cursor.reset();
+        assertTrue(cursor.next());
+        assertEquals(3, cursor.getEntityId());
+    }
+
+    @Test
+    public void testMergeJoinWithRemovedComponents() throws Exception {
+        final ComponentType thirdComponent = entityManager.addComponentType(new ComponentType(Symbol.get("ThirdComponent")));
+
+        final int[] entities = new int[60];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = entityManager.createEntity(testComponent);
+        }
+
+        // Add the other components in reverse order, so they are not appended in entity id order
+        for (int i = entities.length - 1; i >= 0; i--) {
+            if (i % 2 == 0) {
+                otherComponent.addToEntity(entities[i]);
+                weight.set(entities[i], i);
+            }
+            if (i % 3 == 0) thirdComponent.addToEntity(entities[i]);
+        }
+
+        // Leave free blocks in the middle of the sorted storage
+        testComponent.removeFromEntity(entities[12]);
+        otherComponent.removeFromEntity(entities[24]);
+
+        final ComponentCursor cursor = new ComponentCursor(thirdComponent, testComponent, otherComponent);
+        cursor.reset();
+        assertTrue(cursor.isMergeJoin());
+        assertTrue(cursor.isLookupFree());
+
+        int count = 0;
+        while (cursor.next()) {
+            final int entityId = cursor.getEntityId();
+            final int i = entityId - entities[0];
+            assertEquals(0, i % 6);
+            assertEquals(i, weight.get(cursor), 0);
+            count++;
+        }
+        assertEquals(8, count);
+    }
+}
@@ -0,0 +1,321 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.memory.ByteBufferMemoryAccess;
+import org.entityflow2.memory.MemoryAccess;
+import org.entityflow2.storage.BlockStorageFactory;
+import org.entityflow2.storage.ChunkedBlockStorage;
+import org.entityflow2.storage.MappedBlockStorage;
+import org.entityflow2.type.StringType;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the different storage options of ComponentType.
+ */
+public class ComponentTypeTest {
+
+    private static final int LOTS = ConcurrentEntityManager.EXPECTED_ENTITY_COUNT * 3;
+
+    private ManualTime time;
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+
+    @Before
+    public void setUp() throws Exception {
+        time = new ManualTime();
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testInterleavedLayout() throws Exception {
+        assertEquals(ComponentLayout.INTERLEAVED, testComponent.getLayout());
+
+        addAndRemoveLots();
+    }
+
+    @Test
+    public void testColumnarLayout() throws Exception {
+        testComponent.setLayout(ComponentLayout.COLUMNAR);
+
+        addAndRemoveLots();
+    }
+
+    @Test
+    public void testDensePacking() throws Exception {
+        testComponent.setPacking(ComponentPacking.DENSE);
+
+        addAndRemoveLots();
+        assertEquals(testComponent.getComponentCount() - 1, testComponent.getMaxComponentIndex());
+    }
+
+    @Test
+    public void testDensePackingWithColumnarLayout() throws Exception {
+        testComponent.setPacking(ComponentPacking.DENSE);
+        testComponent.setLayout(ComponentLayout.COLUMNAR);
+
+        addAndRemoveLots();
+        assertEquals(testComponent.getComponentCount() - 1, testComponent.getMaxComponentIndex());
+    }
+
+    @Test
+    public void testChunkedStorage() throws Exception {
+        testComponent.setStorageFactory(ChunkedBlockStorage.createFactory(64));
+
+        addAndRemoveLots();
+    }
+
+    @Test
+    public void testChunkedStorageWithColumnarLayoutAndDensePacking() throws Exception {
+        testComponent.setStorageFactory(ChunkedBlockStorage.createFactory(128));
+        testComponent.setLayout(ComponentLayout.COLUMNAR);
+        testComponent.setPacking(ComponentPacking.DENSE);
+
+        addAndRemoveLots();
+    }
+
+    @Test
+    public void testMappedStorageIsRestored() throws Exception {
+        final File directory = File.createTempFile("entityflow", "test");
+        assertTrue(directory.delete());
+
+        try {
+            final BlockStorageFactory storageFactory = MappedBlockStorage.createFactory(directory, 256);
+            testComponent.setStorageFactory(storageFactory);
+            addAndRemoveLots();
+            final int componentCount = testComponent.getComponentCount();
+            entityManager.shutdown();
+
+            // Restore the entities in a new entity manager
+            entityManager = new ConcurrentEntityManager();
+            testComponent = entityManager.addComponentType(new TestComponent());
+            testComponent.setStorageFactory(storageFactory);
+            assertEquals(componentCount, entityManager.restoreStoredEntities());
+            entityManager.init();
+
+            assertEquals(componentCount, testComponent.getComponentCount());
+            for (int i = LOTS - 9; i < LOTS; i += 2) {
+                final int entityId = i + 1;
+                assertEquals(i, testComponent.number.get(entityId));
+                assertEquals(i * 0.5, testComponent.intelligence.get(entityId), 0.0001);
+            }
+
+            // New entities get new ids
+            final int newEntity = entityManager.createEntity(testComponent);
+            assertEquals(LOTS + 1, newEntity);
+        }
+        finally {
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void testIncrementalCompaction() throws Exception {
+        entityManager.setCompactionBudget(1000, 0);
+
+        final int[] entities = entityManager.createEntities(LOTS, testComponent);
+        for (int i = 0; i < LOTS; i++) {
+            testComponent.number.set(entities[i], i);
+            testComponent.intelligence.set(entities[i], i * 0.5);
+            testComponent.name.set(entities[i], "Number " + i);
+        }
+        final int initialCapacity = testComponent.getComponentCapacity();
+
+        // Remove most entities, leaving every tenth
+        for (int i = 0; i < LOTS; i++) {
+            if (i % 10 != 0) entityManager.removeEntity(entities[i]);
+        }
+        update();
+        assertTrue(testComponent.isCompactionPending());
+        assertTrue(testComponent.getFragmentation() > 0.5);
+        assertEquals(1000, entityManager.getLastCompactionMovedBlocks());
+
+        // Compaction proceeds within the budget on each update
+        int updates = 1;
+        while (testComponent.isCompactionPending()) {
+            update();
+            assertTrue(entityManager.getLastCompactionMovedBlocks() <= 1000);
+            assertTrue("Compaction should finish", updates++ < 100);
+        }
+        assertTrue(testComponent.getComponentCapacity() < initialCapacity);
+        assertEquals(0.0, testComponent.getFragmentation(), 0);
+        assertEquals(1.0, testComponent.getCompactionProgress(), 0);
+        assertEquals(LOTS / 10 - 1, testComponent.getCompactionMovedBlocks());
+
+        for (int i = 0; i < LOTS; i += 10) {
+            checkEntity(entities[i], i);
+        }
+    }
+
+    @Test
+    public void testComplexValuesFollowSortedCompaction() throws Exception {
+        final ComponentType labelled = new ComponentType(Symbol.get("Labelled"));
+        final Property<String> label = labelled.addProperty("label", "none", StringType.TYPE);
+        final IntProperty index = labelled.addProperty("index", -1);
+        labelled.setExpectedNumberOfComponents(16);
+        entityManager.addComponentType(labelled);
+
+        // Grows the value arrays of the complex property together with the columns
+        final int[] entities = entityManager.createEntities(500, labelled);
+        for (int i = 0; i < entities.length; i++) {
+            label.set(entities[i], "Label " + i);
+            index.set(entities[i], i);
+        }
+        assertTrue(labelled.getComponentCapacity() >= 500);
+
+        // Removing most entities leaves the storage fragmented, compaction moves the values down
+        for (int i = 0; i < entities.length; i++) {
+            if (i % 5 != 0) labelled.removeFromEntity(entities[i]);
+        }
+        assertTrue(labelled.isCompactionPending());
+        int steps = 0;
+        while (labelled.isCompactionPending()) {
+            labelled.compact(16);
+            for (int i = 0; i < entities.length; i += 5) {
+                assertEquals("Label " + i, label.get(entities[i]));
+            }
+            assertTrue("Compaction should finish", steps++ < 100);
+        }
+        assertTrue(labelled.getCompactionMovedBlocks() > 0);
+        assertTrue(labelled.getComponentCapacity() < 500);
+
+        for (int i = 0; i < entities.length; i += 5) {
+            assertEquals("Label " + i, label.get(entities[i]));
+            assertEquals(i, index.get(entities[i]));
+        }
+
+        // Freed slots do not keep old values
+        final int added = entityManager.createEntity(labelled);
+        assertEquals("none", label.get(added));
+    }
+
+    @Test
+    public void testComplexValuesFollowDenseSwapRemove() throws Exception {
+        final ComponentType labelled = new ComponentType(Symbol.get("Labelled"));
+        final Property<String> label = labelled.addProperty("label", "none", StringType.TYPE);
+        labelled.setPacking(ComponentPacking.DENSE);
+        labelled.setExpectedNumberOfComponents(16);
+        entityManager.addComponentType(labelled);
+
+        final int[] entities = entityManager.createEntities(100, labelled);
+        for (int i = 0; i < entities.length; i++) {
+            label.set(entities[i], "Label " + i);
+        }
+
+        // Each removal moves the last component, with its label, into the freed block
+        for (int i = 0; i < entities.length; i += 3) {
+            labelled.removeFromEntity(entities[i]);
+        }
+        assertEquals(labelled.getComponentCount() - 1, labelled.getMaxComponentIndex());
+        for (int i = 0; i < entities.length; i++) {
+            if (i % 3 != 0) assertEquals("Label " + i, label.get(entities[i]));
+        }
+
+        // The block after the last component is reused without the label of the component that was moved out of it
+        final int added = entityManager.createEntity(labelled);
+        assertEquals(labelled.getComponentCount() - 1, labelled.getMaxComponentIndex());
+        assertEquals("none", label.get(added));
+    }
+
+    @Test
+    public void testOwnMemoryAccess() throws Exception {
+        final MemoryAccess unchecked = MemoryAccess.createUnchecked();
+        final MemoryAccess memoryAccess = unchecked != null ? unchecked : new ByteBufferMemoryAccess();
+        testComponent.setMemoryAccess(memoryAccess);
+        testComponent.setPacking(ComponentPacking.DENSE);
+        assertSame(memoryAccess, testComponent.getMemoryAccess());
+
+        addAndRemoveLots();
+
+        try {
+            testComponent.setMemoryAccess(MemoryAccess.DEFAULT);
+            fail("Should not be possible to change the memory access after components have been added");
+        }
+        catch (IllegalStateException e) {
+            // Ok
+        }
+    }
+
+    @Test
+    public void testLayoutCanNotBeChangedWhenInUse() throws Exception {
+        entityManager.createEntity(testComponent);
+
+        try {
+            testComponent.setLayout(ComponentLayout.COLUMNAR);
+            fail("Should not be possible to change the layout after components have been added");
+        }
+        catch (IllegalStateException e) {
+            // Ok
+        }
+    }
+
+    private void addAndRemoveLots() {
+        // Create entities and check default values
+        final int[] entities = new int[LOTS];
+        for (int i = 0; i < LOTS; i++) {
+            entities[i] = entityManager.createEntity(testComponent);
+            assertEquals(41, testComponent.tentacleCount.get(entities[i]));
+            assertEquals(13.3f, testComponent.speed.get(entities[i]), 0.0001);
+            assertEquals(5.5, testComponent.horror.get(entities[i]), 0.0001);
+
+            testComponent.number.set(entities[i], i);
+            testComponent.intelligence.set(entities[i], i * 0.5);
+            testComponent.name.set(entities[i], "Number " + i);
+        }
+        update();
+
+        // Remove every other entity
+        for (int i = 0; i < LOTS; i += 2) {
+            entityManager.removeEntity(entities[i]);
+        }
+        update();
+        assertEquals(LOTS / 2, testComponent.getComponentCount());
+
+        // Check that the remaining values are intact
+        for (int i = 1; i < LOTS; i += 2) {
+            checkEntity(entities[i], i);
+        }
+
+        // Remove all but the last few
+        for (int i = 1; i < LOTS - 10; i += 2) {
+            entityManager.removeEntity(entities[i]);
+        }
+        update();
+        for (int i = LOTS - 9; i < LOTS; i += 2) {
+            checkEntity(entities[i], i);
+        }
+    }
+
+    private void checkEntity(int entityId, int expectedNumber) {
+        assertEquals(expectedNumber, testComponent.number.get(entityId));
+        assertEquals(expectedNumber * 0.5, testComponent.intelligence.get(entityId), 0.0001);
+        assertEquals(41, testComponent.tentacleCount.get(entityId));
+        assertEquals("Number " + expectedNumber, testComponent.name.get(entityId));
+    }
+
+    private void update() {
+        time.advanceTimeSeconds(0.01);
+        entityManager.update(time);
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.type.Dictionary;
+import org.flowutils.Symbol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests dictionary encoded properties.
+ */
+public class DictionaryPropertyTest {
+
+    private ConcurrentEntityManager entityManager;
+    private Dictionary<String> names;
+    private ComponentType unit;
+    private DictionaryProperty<String> faction;
+    private DictionaryProperty<String> prefab;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        names = new Dictionary<String>(String.class);
+        unit = new ComponentType(Symbol.get("Unit"));
+        faction = unit.addProperty("faction", "neutral", names);
+        prefab = unit.addProperty("prefab", null, names);
+        entityManager.addComponentType(unit);
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testEncodedValues() throws Exception {
+        final int entity1 = entityManager.createEntity(unit);
+        final int entity2 = entityManager.createEntity(unit);
+
+        assertEquals("neutral", faction.get(entity1));
+        assertNull(prefab.get(entity1));
+        assertEquals(0, prefab.getCode(entity1));
+
+        faction.set(entity1, "elves");
+        faction.set(entity2, new String("elves"));
+        prefab.set(entity2, "neutral");
+
+        assertEquals("elves", faction.get(entity1));
+        assertEquals("Equal values should share a code", faction.getCode(entity1), faction.getCode(entity2));
+        assertEquals("The dictionary is shared", faction.getCode(entity1), names.getCode("elves"));
+        assertEquals("neutral", prefab.get(entity2));
+
+        prefab.setCode(entity1, faction.getCode(entity1));
+        assertEquals("elves", prefab.get(entity1));
+
+        // Null, neutral and elves
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void testFullDictionary() throws Exception {
+        final Dictionary<String> small = new Dictionary<String>(String.class, 3);
+        assertEquals(1, small.encode("a"));
+        assertEquals(2, small.encode("b"));
+        assertEquals(1, small.encode("a"));
+
+        try {
+            small.encode("c");
+            fail("Dictionary should be full");
+        }
+        catch (IllegalStateException e) {
+            // Ok
+        }
+    }
+}
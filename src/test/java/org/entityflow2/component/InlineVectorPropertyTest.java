@@ -0,0 +1,79 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.vector.Quat;
+import org.entityflow2.vector.Vec3;
+import org.flowutils.Symbol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the inline vector and array property accessors.
+ */
+public class InlineVectorPropertyTest {
+
+    private ConcurrentEntityManager entityManager;
+    private ComponentType body;
+    private DoubleVectorProperty<Vec3> position;
+    private DoubleVectorProperty<Quat> orientation;
+    private FloatArrayProperty weights;
+    private IntProperty marker;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        body = new ComponentType(Symbol.get("Body"));
+        position = body.addProperty("position", new Vec3(1, 2, 3));
+        orientation = body.addProperty("orientation", new Quat());
+        weights = body.addProperty("weights", new float[] {0.5f, 0.25f, 0.25f});
+        marker = body.addProperty("marker", 42);
+        entityManager.addComponentType(body);
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testDefaultValues() throws Exception {
+        final int entity = entityManager.createEntity(body);
+
+        assertEquals(new Vec3(1, 2, 3), position.getObject(entity));
+        assertEquals(new Quat(0, 0, 0, 1), orientation.getObject(entity));
+        assertArrayEquals(new float[]{0.5f, 0.25f, 0.25f}, weights.getObject(entity), 0);
+        assertEquals(42, marker.get(entity));
+    }
+
+    @Test
+    public void testReadAndWrite() throws Exception {
+        final int entity1 = entityManager.createEntity(body);
+        final int entity2 = entityManager.createEntity(body);
+
+        final Vec3 holder = new Vec3();
+        position.set(entity1, holder.set(-1, -2, -3));
+        position.setLane(entity2, 2, 30);
+        weights.setElement(entity2, 1, 7f);
+
+        assertSame(holder, position.get(entity1, holder));
+        assertEquals(new Vec3(-1, -2, -3), holder);
+        assertEquals(-2, position.getLane(entity1, 1), 0);
+        assertEquals(new Vec3(1, 2, 30), position.getObject(entity2));
+        assertEquals(7f, weights.getElement(entity2, 1), 0);
+        assertEquals(0.25f, weights.getElement(entity1, 1), 0);
+
+        // Neighbouring properties are not affected
+        assertEquals(42, marker.get(entity1));
+        assertEquals(42, marker.get(entity2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLaneOutOfRange() throws Exception {
+        final int entity = entityManager.createEntity(body);
+        position.setLane(entity, 3, 1.0);
+    }
+}
@@ -0,0 +1,90 @@
+package org.entityflow2.component;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.range.ByteRange;
+import org.entityflow2.range.ShortRange;
+import org.flowutils.Symbol;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the primitive specialized property accessors.
+ */
+public class PrimitivePropertyTest {
+
+    private enum Mood { CALM, ANGRY, HUNGRY }
+
+    private ConcurrentEntityManager entityManager;
+    private ComponentType creature;
+    private LongProperty age;
+    private ShortProperty hitPoints;
+    private ByteProperty level;
+    private BoolProperty alive;
+    private CharProperty symbol;
+    private EnumProperty<Mood> mood;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        creature = new ComponentType(Symbol.get("Creature"));
+        age = creature.addProperty("age", 10000000000L);
+        hitPoints = creature.addProperty("hitPoints", (short) 100, new ShortRange((short) 0, (short) 1000));
+        level = creature.addProperty("level", (byte) 1, ByteRange.ONE_OR_LARGER);
+        alive = creature.addProperty("alive", true);
+        symbol = creature.addProperty("symbol", 'c');
+        mood = creature.addProperty("mood", Mood.CALM);
+        entityManager.addComponentType(creature);
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testDefaultValues() throws Exception {
+        final int entity = entityManager.createEntity(creature);
+
+        assertEquals(10000000000L, age.get(entity));
+        assertEquals(100, hitPoints.get(entity));
+        assertEquals(1, level.get(entity));
+        assertTrue(alive.get(entity));
+        assertEquals('c', symbol.get(entity));
+        assertEquals(Mood.CALM, mood.get(entity));
+    }
+
+    @Test
+    public void testSetValues() throws Exception {
+        final int entity1 = entityManager.createEntity(creature);
+        final int entity2 = entityManager.createEntity(creature);
+
+        age.set(entity1, -3L);
+        hitPoints.set(entity1, (short) 2000);
+        level.set(entity1, (byte) -5);
+        alive.set(entity1, false);
+        symbol.set(entity1, 'Z');
+        mood.set(entity1, Mood.HUNGRY);
+        mood.setOrdinal(entity2, 1);
+
+        assertEquals(-3L, age.get(entity1));
+        assertEquals("Should be clamped to range", 1000, hitPoints.get(entity1));
+        assertEquals("Should be clamped to range", 1, level.get(entity1));
+        assertFalse(alive.get(entity1));
+        assertEquals('Z', symbol.get(entity1));
+        assertEquals(Mood.HUNGRY, mood.get(entity1));
+        assertEquals(2, mood.getOrdinal(entity1));
+
+        assertTrue(alive.get(entity2));
+        assertEquals(Mood.ANGRY, mood.get(entity2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidOrdinal() throws Exception {
+        final int entity = entityManager.createEntity(creature);
+        mood.setOrdinal(entity, 3);
+    }
+}
@@ -1,10 +1,12 @@
 package org.entityflow2.example;
 
 import org.entityflow2.component.ComponentType;
+import org.entityflow2.component.DictionaryProperty;
 import org.entityflow2.component.DoubleProperty;
 import org.entityflow2.component.IntProperty;
-import org.entityflow2.component.Property;
 import org.entityflow2.range.DoubleRange;
+import org.entityflow2.type.Dictionary;
+import org.entityflow2.type.DictionaryType;
 
 /**
  *
@@ -12,10 +14,10 @@ import org.entityflow2.range.DoubleRange;
 public class Physical extends ComponentType {
 
     public final DoubleProperty mass;
-    public final Property<Material> material;
+    public final DictionaryProperty<Material> material;
 
     public Physical() {
         mass = addProperty("mass", 1, DoubleRange.ZERO_OR_LARGER);
-        material = addProperty("material", Material.getMaterial("stone"), MaterialType.TYPE);
+        material = addProperty("material", Material.getMaterial("stone"), new DictionaryType<Material>(new Dictionary<Material>(Material.class), MaterialType.TYPE));
     }
 }
@@ -0,0 +1,155 @@
+package org.entityflow2.group;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.ComponentType;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class EntityGroupListenerTest {
+
+    private ConcurrentEntityManager entityManager;
+    private ComponentType red;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        red = entityManager.addComponentType(new ComponentType(Symbol.get("Red")));
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testBatchListener() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(red);
+        final List<String> calls = new ArrayList<String>();
+        group.addListener(new RecordingBatchListener(calls));
+
+        final int[] entities = new int[5];
+        for (int i = entities.length - 1; i >= 0; i--) {
+            entities[i] = entityManager.createEntity(red);
+        }
+        update();
+        assertEquals(1, calls.size());
+        assertEquals("added " + Arrays.toString(new int[]{entities[4], entities[3], entities[2], entities[1], entities[0]}), calls.get(0));
+
+        red.removeFromEntity(entities[1]);
+        red.removeFromEntity(entities[3]);
+        update();
+        assertEquals(2, calls.size());
+        assertEquals("removed " + Arrays.toString(new int[]{entities[3], entities[1]}), calls.get(1));
+
+        update();
+        assertEquals(2, calls.size());
+    }
+
+    @Test
+    public void testPlainAndBatchListenersOnSameGroup() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(red);
+        final List<String> plainCalls = new ArrayList<String>();
+        final List<String> batchCalls = new ArrayList<String>();
+        group.addListener(new EntityGroupListener() {
+            @Override public void onEntityAdded(EntityGroup group, int entityId) {
+                plainCalls.add("added " + entityId);
+            }
+
+            @Override public void onEntityRemoved(EntityGroup group, int entityId) {
+                plainCalls.add("removed " + entityId);
+            }
+        });
+        group.addListener(new RecordingBatchListener(batchCalls));
+
+        final int first = entityManager.createEntity(red);
+        final int second = entityManager.createEntity(red);
+        final int third = entityManager.createEntity(red);
+        update();
+
+        // The plain listener is notified about each entity, in increasing order, and the batch listener once
+        final int[] added = new int[]{first, second, third};
+        Arrays.sort(added);
+        assertEquals(Arrays.asList("added " + added[0], "added " + added[1], "added " + added[2]), plainCalls);
+        assertEquals(Arrays.asList("added " + Arrays.toString(added)), batchCalls);
+
+        red.removeFromEntity(third);
+        red.removeFromEntity(first);
+        update();
+        final int[] removed = new int[]{first, third};
+        Arrays.sort(removed);
+        assertEquals(5, plainCalls.size());
+        assertEquals("removed " + removed[0], plainCalls.get(3));
+        assertEquals("removed " + removed[1], plainCalls.get(4));
+        assertEquals(2, batchCalls.size());
+        assertEquals("removed " + Arrays.toString(removed), batchCalls.get(1));
+        assertEquals(1, group.getEntities().size());
+        assertTrue(group.getEntities().contains(second));
+    }
+
+    @Test
+    public void testChangesThatCancelOutAreNotNotified() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(red);
+        final List<String> calls = new ArrayList<String>();
+        group.addListener(new RecordingBatchListener(calls));
+
+        final int kept = entityManager.createEntity(red);
+        update();
+        assertEquals(1, calls.size());
+
+        // Removed and added back, and added and removed, between updates
+        red.removeFromEntity(kept);
+        red.addToEntity(kept);
+        final int shortLived = entityManager.createEntity();
+        red.addToEntity(shortLived);
+        red.removeFromEntity(shortLived);
+        update();
+
+        assertEquals(1, calls.size());
+        assertEquals(1, group.getEntities().size());
+        assertTrue(group.getEntities().contains(kept));
+    }
+
+    private void update() {
+        entityManager.update(new ManualTime());
+    }
+
+    /**
+     * Records the batch notifications, and fails if notified per entity.
+     */
+    private static final class RecordingBatchListener implements BatchEntityGroupListener {
+        private final List<String> calls;
+
+        private RecordingBatchListener(List<String> calls) {
+            this.calls = calls;
+        }
+
+        @Override public void onEntitiesAdded(EntityGroup group, int[] entityIds, int count) {
+            calls.add("added " + Arrays.toString(Arrays.copyOf(entityIds, count)));
+        }
+
+        @Override public void onEntitiesRemoved(EntityGroup group, int[] entityIds, int count) {
+            calls.add("removed " + Arrays.toString(Arrays.copyOf(entityIds, count)));
+        }
+
+        @Override public void onEntityAdded(EntityGroup group, int entityId) {
+            fail("Batch listeners should not be notified per entity");
+        }
+
+        @Override public void onEntityRemoved(EntityGroup group, int entityId) {
+            fail("Batch listeners should not be notified per entity");
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package org.entityflow2.group;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.ComponentType;
+import org.entityflow2.component.TestComponent;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class EntityQueryTest {
+
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+    private ComponentType red;
+    private ComponentType blue;
+    private ComponentType frozen;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+        red = entityManager.addComponentType(new ComponentType(Symbol.get("Red")));
+        blue = entityManager.addComponentType(new ComponentType(Symbol.get("Blue")));
+        frozen = entityManager.addComponentType(new ComponentType(Symbol.get("Frozen")));
+        entityManager.init();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testCanonicalQueries() throws Exception {
+        final EntityQuery a = new EntityQuery.Builder().all(red, testComponent).none(frozen).build();
+        final EntityQuery b = new EntityQuery.Builder().all(testComponent).none(frozen).all(red, red).build();
+        final EntityQuery c = new EntityQuery.Builder().all(testComponent, red).build();
+
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+        assertFalse(a.equals(c));
+
+        // Identical queries share a group, also when they only differ in optional types
+        final EntityGroup group = entityManager.getEntityGroup(a);
+        assertSame(group, entityManager.getEntityGroup(b));
+        assertSame(group, entityManager.getEntityGroup(new EntityQuery.Builder().all(red, testComponent).none(frozen).optional(blue).build()));
+        assertNotSame(group, entityManager.getEntityGroup(c));
+        assertSame(entityManager.getEntityGroup(c), entityManager.getEntityGroup(red, testComponent));
+        assertEquals(2, entityManager.getEntityGroups().size());
+        assertEquals(4, entityManager.getGroupCacheHitCount());
+    }
+
+    @Test
+    public void testGroupsWithDifferentTypeCountsDoNotMatch() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(red, blue);
+        assertFalse(group.matches(new ComponentType[]{red}));
+        assertFalse(group.matches(new ComponentType[]{red, blue, frozen}));
+        assertTrue(group.matches(new ComponentType[]{blue, red}));
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        final EntityGroup group = entityManager.getEntityGroup(new EntityQuery.Builder().all(testComponent)
+                                                                                         .none(frozen)
+                                                                                         .any(red, blue)
+                                                                                         .build());
+
+        final int plain = entityManager.createEntity(testComponent);
+        final int redEntity = entityManager.createEntity(testComponent, red);
+        final int blueEntity = entityManager.createEntity(testComponent, blue);
+        final int frozenEntity = entityManager.createEntity(testComponent, red, frozen);
+        update();
+        assertFalse(group.getEntities().contains(plain));
+        assertTrue(group.getEntities().contains(redEntity));
+        assertTrue(group.getEntities().contains(blueEntity));
+        assertFalse(group.getEntities().contains(frozenEntity));
+
+        // Membership follows component changes
+        red.addToEntity(plain);
+        frozen.removeFromEntity(frozenEntity);
+        frozen.addToEntity(blueEntity);
+        red.removeFromEntity(redEntity);
+        update();
+        assertTrue(group.getEntities().contains(plain));
+        assertFalse(group.getEntities().contains(redEntity));
+        assertFalse(group.getEntities().contains(blueEntity));
+        assertTrue(group.getEntities().contains(frozenEntity));
+
+        entityManager.removeEntity(plain);
+        update();
+        assertEquals(1, group.getEntities().size());
+    }
+
+    private void update() {
+        entityManager.update(new ManualTime());
+    }
+}
@@ -0,0 +1,49 @@
+package org.entityflow2.group;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class SortedEntityIdsTest {
+
+    @Test
+    public void testMerge() throws Exception {
+        final SortedEntityIds ids = new SortedEntityIds();
+        assertTrue(ids.isEmpty());
+
+        ids.merge(new int[]{3, 7, 9}, new int[0]);
+        ids.merge(new int[]{1, 5, 10}, new int[]{7});
+        assertArrayEquals(new int[]{1, 3, 5, 9, 10}, ids.toIntArray());
+        assertTrue(ids.contains(5));
+        assertFalse(ids.contains(7));
+        assertEquals(3, ids.indexOf(9));
+        assertEquals(-1, ids.indexOf(4));
+
+        ids.merge(new int[]{2}, new int[]{1, 3, 10});
+        assertArrayEquals(new int[]{2, 5, 9}, ids.toIntArray());
+        assertEquals(2, ids.get(0));
+        assertEquals(9, ids.get(2));
+    }
+
+    @Test
+    public void testMemoryIsReleased() throws Exception {
+        final SortedEntityIds ids = new SortedEntityIds();
+        final int[] added = new int[10000];
+        for (int i = 0; i < added.length; i++) {
+            added[i] = i * 2 + 1;
+        }
+        ids.merge(added, new int[0]);
+        assertEquals(10000, ids.size());
+        assertEquals(40000, ids.getMemoryUsageBytes());
+
+        final int[] removed = new int[9990];
+        System.arraycopy(added, 0, removed, 0, removed.length);
+        ids.merge(new int[0], removed);
+        assertEquals(10, ids.size());
+        assertTrue(ids.getMemoryUsageBytes() < 100);
+        assertEquals(added[9999], ids.get(9));
+    }
+}
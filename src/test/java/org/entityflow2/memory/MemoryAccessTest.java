@@ -0,0 +1,43 @@
+package org.entityflow2.memory;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class MemoryAccessTest {
+
+    @Test
+    public void testImplementationsAgree() throws Exception {
+        final MemoryAccess unsafe = MemoryAccess.createUnchecked();
+        if (unsafe == null) return;
+
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(64).order(ByteOrder.nativeOrder());
+        final MemoryAccess checked = new ByteBufferMemoryAccess();
+
+        checked.putDouble(buffer, 8, 3.25);
+        checked.putInt(buffer, 20, -42);
+        unsafe.putLong(buffer, 24, 1234567890123L);
+        unsafe.putFloat(buffer, 32, 1.5f);
+        unsafe.putShort(buffer, 36, (short) 300);
+        checked.putChar(buffer, 38, 'x');
+        unsafe.putByte(buffer, 40, (byte) 7);
+
+        assertEquals(3.25, unsafe.getDouble(buffer, 8), 0);
+        assertEquals(-42, unsafe.getInt(buffer, 20));
+        assertEquals(1234567890123L, checked.getLong(buffer, 24));
+        assertEquals(1.5f, checked.getFloat(buffer, 32), 0);
+        assertEquals(300, checked.getShort(buffer, 36));
+        assertEquals('x', unsafe.getChar(buffer, 38));
+        assertEquals(7, checked.getByte(buffer, 40));
+
+        unsafe.copy(buffer, 8, buffer, 48, 16);
+        assertEquals(3.25, checked.getDouble(buffer, 48), 0);
+        assertEquals(-42, checked.getInt(buffer, 60));
+    }
+}
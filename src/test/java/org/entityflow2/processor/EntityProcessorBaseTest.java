@@ -0,0 +1,102 @@
+package org.entityflow2.processor;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.TestComponent;
+import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class EntityProcessorBaseTest {
+
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+    }
+
+    @Test
+    public void testEntitiesCreatedDuringLoopAreNotUpdated() throws Exception {
+        entityManager.addProcessor(new EntityProcessor1Base<TestComponent>(testComponent) {
+            @Override protected void updateEntity(Time time, int entityId, TestComponent testComponent) {
+                assertFalse(isCursorLoop());
+                testComponent.number.set(entityId, testComponent.number.get(entityId) + 1);
+
+                // Adds a component block while the entities are looped
+                getEntityManager().createEntity(testComponent);
+            }
+        });
+        entityManager.init();
+
+        final int[] entities = new int[10];
+        for (int i = 0; i < entities.length; i++) {
+            entities[i] = entityManager.createEntity(testComponent);
+        }
+        update();
+
+        for (int entityId : entities) {
+            assertEquals(1, testComponent.number.get(entityId));
+        }
+        assertEquals(entities.length * 2, testComponent.getComponentCount());
+    }
+
+    @Test
+    public void testStructurallyReadOnlyProcessorUsesCursor() throws Exception {
+        final EntityProcessor1Base<TestComponent> processor = entityManager.addProcessor(new EntityProcessor1Base<TestComponent>(testComponent) {
+            @Override protected void updateEntity(Time time, int entityId, TestComponent testComponent) {
+                assertTrue(isCursorLoop());
+                assertEquals(entityId, getCursor().getEntityId());
+                testComponent.number.set(getCursor(), testComponent.number.get(getCursor()) + 1);
+            }
+        });
+        processor.getDependencies().writes(testComponent).structurallyReadOnly();
+        entityManager.init();
+
+        final int first = entityManager.createEntity(testComponent);
+        final int second = entityManager.createEntity(testComponent);
+        update();
+        update();
+
+        assertEquals(2, testComponent.number.get(first));
+        assertEquals(2, testComponent.number.get(second));
+    }
+
+    @Test
+    public void testCursorIsUnavailableOutsideCursorLoop() throws Exception {
+        final int[] failures = new int[1];
+        entityManager.addProcessor(new EntityProcessor1Base<TestComponent>(testComponent) {
+            @Override protected void updateEntity(Time time, int entityId, TestComponent testComponent) {
+                try {
+                    getCursor();
+                }
+                catch (IllegalStateException e) {
+                    failures[0]++;
+                }
+            }
+        });
+        entityManager.init();
+
+        entityManager.createEntity(testComponent);
+        update();
+
+        assertEquals(1, failures[0]);
+    }
+
+    private void update() {
+        entityManager.update(new ManualTime());
+    }
+}
@@ -0,0 +1,63 @@
+package org.entityflow2.processor;
+
+import org.entityflow2.ConcurrentEntityManager;
+import org.entityflow2.component.TestComponent;
+import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ParallelEntityLoopTest {
+
+    private ConcurrentEntityManager entityManager;
+    private TestComponent testComponent;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        entityManager = new ConcurrentEntityManager();
+        testComponent = entityManager.addComponentType(new TestComponent());
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        entityManager.shutdown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testEachEntityIsUpdatedOnce() throws Exception {
+        final EntityProcessor1Base<TestComponent> counter = entityManager.addProcessor(new EntityProcessor1Base<TestComponent>(testComponent) {
+            @Override protected void updateEntity(Time time, int entityId, TestComponent testComponent) {
+                testComponent.number.set(entityId, testComponent.number.get(entityId) + 1);
+            }
+        });
+        counter.setParallelUpdate(executor, 4);
+        assertTrue(counter.isParallelUpdate());
+        entityManager.init();
+
+        final int[] entities = entityManager.createEntities(20000, testComponent);
+        final ManualTime time = new ManualTime();
+        for (int i = 0; i < 3; i++) {
+            entityManager.update(time);
+        }
+
+        for (int entityId : entities) {
+            assertEquals(3, testComponent.number.get(entityId));
+        }
+
+        // Chunk size stays within bounds as it adapts to the measured cost
+        assertTrue(counter.getParallelChunkSize() >= ParallelEntityLoop.MIN_CHUNK_SIZE);
+        assertTrue(counter.getParallelChunkSize() <= 20000 / 4);
+    }
+}
@@ -0,0 +1,112 @@
+package org.entityflow2.processor;
+
+import org.entityflow2.EntityManager;
+import org.entityflow2.component.ComponentType;
+import org.flowutils.Symbol;
+import org.flowutils.time.ManualTime;
+import org.flowutils.time.Time;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class ProcessorSchedulerTest {
+
+    private final ComponentType position = new ComponentType(Symbol.get("Position"));
+    private final ComponentType velocity = new ComponentType(Symbol.get("Velocity"));
+    private final ComponentType health = new ComponentType(Symbol.get("Health"));
+    private final List<String> updates = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void testDependencies() throws Exception {
+        final TestProcessor move = new TestProcessor("move");
+        final TestProcessor render = new TestProcessor("render");
+        final TestProcessor heal = new TestProcessor("heal");
+        final TestProcessor accelerate = new TestProcessor("accelerate");
+        move.getDependencies().reads(velocity).writes(position);
+        render.getDependencies().reads(position);
+        heal.getDependencies().writes(health);
+        accelerate.getDependencies().writes(velocity).runBefore(move);
+
+        final ProcessorScheduler scheduler = new ProcessorScheduler(Arrays.<Processor>asList(move, render, heal, accelerate));
+        assertEquals(Arrays.<Processor>asList(accelerate, move, render, heal), scheduler.getOrder());
+        assertEquals(Arrays.<Processor>asList(accelerate), scheduler.getPredecessors(move));
+        assertEquals(Arrays.<Processor>asList(move), scheduler.getPredecessors(render));
+        assertTrue(scheduler.getPredecessors(heal).isEmpty());
+
+        // Processors without declared component types run exclusively
+        final TestProcessor unknown = new TestProcessor("unknown");
+        final ProcessorScheduler withUnknown = new ProcessorScheduler(Arrays.<Processor>asList(heal, unknown, render));
+        assertEquals(Arrays.<Processor>asList(heal), withUnknown.getPredecessors(unknown));
+        assertEquals(Arrays.<Processor>asList(unknown), withUnknown.getPredecessors(render));
+
+        assertFalse(scheduler.isOutdated());
+        heal.getDependencies().reads(position);
+        assertTrue(scheduler.isOutdated());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCycle() throws Exception {
+        final TestProcessor a = new TestProcessor("a");
+        final TestProcessor b = new TestProcessor("b");
+        a.getDependencies().runAfter(b);
+        b.getDependencies().runAfter(a);
+        new ProcessorScheduler(Arrays.<Processor>asList(a, b));
+    }
+
+    @Test
+    public void testParallelUpdate() throws Exception {
+        final List<Processor> processors = new ArrayList<Processor>();
+        for (int i = 0; i < 10; i++) {
+            final TestProcessor processor = new TestProcessor("p" + i);
+            // Every other processor writes the position, the others only read their own types
+            if (i % 2 == 0) processor.getDependencies().writes(position);
+            else processor.getDependencies().reads(i % 3 == 0 ? velocity : health);
+            processors.add(processor);
+        }
+
+        final ProcessorScheduler scheduler = new ProcessorScheduler(processors);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            scheduler.update(new ManualTime(), executor);
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(10, updates.size());
+        assertTrue(updates.indexOf("p0") < updates.indexOf("p2"));
+        assertTrue(updates.indexOf("p2") < updates.indexOf("p4"));
+        assertTrue(updates.indexOf("p6") < updates.indexOf("p8"));
+
+        assertTrue(scheduler.getPredecessors(processors.get(1)).isEmpty());
+        assertFalse(scheduler.getCriticalPath().isEmpty());
+        assertTrue(scheduler.describe().contains("Critical path"));
+    }
+
+    private final class TestProcessor extends ProcessorBase {
+        private final String name;
+
+        private TestProcessor(String name) {
+            this.name = name;
+        }
+
+        @Override protected void doUpdate(Time time) {
+            updates.add(name);
+        }
+
+        @Override public void init(EntityManager entityManager) {
+        }
+
+        @Override public void shutdown(EntityManager entityManager) {
+        }
+    }
+}
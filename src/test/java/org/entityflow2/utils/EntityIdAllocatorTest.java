@@ -0,0 +1,150 @@
+package org.entityflow2.utils;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class EntityIdAllocatorTest {
+
+    @Test
+    public void testFreedIdsAreReused() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        final int[] ids = new int[200];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = allocator.allocate();
+        }
+        assertEquals(1, ids[0]);
+        assertEquals(200, ids[199]);
+
+        allocator.free(ids[70]);
+        allocator.free(ids[150]);
+        assertEquals(2, allocator.getFreeIdCount());
+
+        // The rest of the claimed block is used first, then the freed ids
+        final Set<Integer> allocated = new HashSet<Integer>();
+        for (int i = 0; i < 56; i++) {
+            allocated.add(allocator.allocate());
+        }
+        assertFalse(allocated.contains(ids[70]));
+        assertEquals(ids[70], allocator.allocate());
+        assertEquals(ids[150], allocator.allocate());
+        assertEquals(0, allocator.getFreeIdCount());
+    }
+
+    @Test
+    public void testPreferLowIds() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, true);
+        for (int i = 1; i <= 500; i++) {
+            assertEquals(i, allocator.allocate());
+        }
+
+        allocator.free(300);
+        allocator.free(7);
+        allocator.free(129);
+        assertEquals(7, allocator.allocate());
+        assertEquals(129, allocator.allocate());
+        assertEquals(300, allocator.allocate());
+        assertEquals(501, allocator.allocate());
+    }
+
+    @Test
+    public void testConcurrentAllocation() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        final int[][] results = new int[4][5000];
+        final Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int[] result = results[t];
+            threads[t] = new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < result.length; i++) {
+                        result[i] = allocator.allocate();
+                        // Free and reallocate some ids
+                        if (i % 3 == 0) {
+                            allocator.free(result[i]);
+                            result[i] = allocator.allocate();
+                        }
+                    }
+                }
+            });
+            threads[t].start();
+        }
+
+        final Set<Integer> ids = new HashSet<Integer>();
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+            for (int id : results[t]) {
+                assertTrue("Id " + id + " was handed out twice", ids.add(id));
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseThreadBlock() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        assertEquals(1, allocator.allocate());
+        assertEquals(2, allocator.allocate());
+
+        // Unused new ids are given back to the new id range
+        assertEquals(62, allocator.releaseThreadBlock());
+        assertEquals(3, allocator.getIdLimit());
+        assertEquals(3, allocator.allocate());
+
+        // Unused freed ids are put back in the bitmap
+        allocator.free(1);
+        allocator.free(2);
+        for (int i = 0; i < 63; i++) {
+            allocator.allocate();
+        }
+        assertEquals(1, allocator.allocate());
+        assertEquals(1, allocator.releaseThreadBlock());
+        assertEquals(1, allocator.getFreeIdCount());
+        assertEquals(2, allocator.allocate());
+    }
+
+    @Test
+    public void testReclaimFinishedThreadBlocks() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        final int[] threadIds = new int[8];
+        for (int t = 0; t < threadIds.length; t++) {
+            final int index = t;
+            final Thread thread = new Thread(new Runnable() {
+                @Override public void run() {
+                    threadIds[index] = allocator.allocate();
+                }
+            });
+            thread.start();
+            thread.join();
+        }
+
+        // Each thread left 63 claimed ids unused
+        final long idLimit = allocator.getIdLimit();
+        assertEquals(threadIds.length * 63, allocator.reclaimFinishedThreadBlocks());
+        assertEquals(0, allocator.reclaimFinishedThreadBlocks());
+
+        // The unused ids are handed out again, so the ids stay below the ones claimed so far
+        for (int i = 0; i < threadIds.length * 63; i++) {
+            assertTrue(allocator.allocate() < idLimit);
+        }
+    }
+
+    @Test
+    public void testRestore() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        allocator.restore(new int[]{5, 3000, 17});
+        assertEquals(3001, allocator.allocate());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDoubleFree() throws Exception {
+        final EntityIdAllocator allocator = new EntityIdAllocator(1, 1000000, false);
+        final int id = allocator.allocate();
+        allocator.free(id);
+        allocator.free(id);
+    }
+}
@@ -0,0 +1,73 @@
+package org.entityflow2.utils;
+
+import net.openhft.koloboke.function.IntConsumer;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class IntMpscQueueTest {
+
+    @Test
+    public void testDrainInOrderOverManySegments() throws Exception {
+        final IntMpscQueue queue = new IntMpscQueue();
+        assertTrue(queue.isEmpty());
+
+        // Several rounds, so that drained segments are reused
+        for (int round = 0; round < 5; round++) {
+            for (int i = 1; i <= 5000; i++) {
+                queue.offer(i);
+            }
+            assertFalse(queue.isEmpty());
+
+            final int[] expected = {1};
+            final int count = queue.drain(new IntConsumer() {
+                @Override public void accept(int value) {
+                    assertEquals(expected[0]++, value);
+                }
+            });
+            assertEquals(5000, count);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        final IntMpscQueue queue = new IntMpscQueue();
+        final int threadCount = 4;
+        final int valuesPerThread = 20000;
+        final CountDownLatch done = new CountDownLatch(threadCount);
+        for (int t = 0; t < threadCount; t++) {
+            final int firstValue = t * valuesPerThread + 1;
+            new Thread(new Runnable() {
+                @Override public void run() {
+                    for (int i = 0; i < valuesPerThread; i++) {
+                        queue.offer(firstValue + i);
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        // Drain while the producers are running, and once more after they are done
+        final boolean[] seen = new boolean[threadCount * valuesPerThread + 1];
+        final IntConsumer collector = new IntConsumer() {
+            @Override public void accept(int value) {
+                assertFalse("Value " + value + " drained twice", seen[value]);
+                seen[value] = true;
+            }
+        };
+        int drained = 0;
+        while (done.getCount() > 0) {
+            drained += queue.drain(collector);
+        }
+        drained += queue.drain(collector);
+
+        assertEquals(threadCount * valuesPerThread, drained);
+        assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package org.entityflow2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class PagedBitSetsTest {
+
+    @Test
+    public void testSetGetClear() throws Exception {
+        final PagedBitSets bitSets = new PagedBitSets(10, 4);
+
+        assertFalse(bitSets.get(3, 2));
+        assertFalse(bitSets.get(-5, 2));
+        assertTrue(bitSets.isEmpty(1000));
+
+        bitSets.set(3, 2);
+        bitSets.set(3, 7);
+        bitSets.set(1000, 0);
+        assertTrue(bitSets.get(3, 2));
+        assertTrue(bitSets.get(3, 7));
+        assertFalse(bitSets.get(3, 0));
+        assertFalse(bitSets.get(4, 2));
+        assertEquals(2, bitSets.nextSetBit(3, 0));
+        assertEquals(7, bitSets.nextSetBit(3, 3));
+        assertEquals(-1, bitSets.nextSetBit(3, 8));
+
+        bitSets.clear(3, 2);
+        assertFalse(bitSets.get(3, 2));
+        assertEquals(7, bitSets.nextSetBit(3, 0));
+
+        bitSets.clear(3);
+        assertTrue(bitSets.isEmpty(3));
+        assertTrue(bitSets.get(1000, 0));
+    }
+
+    @Test
+    public void testWidening() throws Exception {
+        final PagedBitSets bitSets = new PagedBitSets(64, 4);
+        bitSets.set(5, 63);
+        bitSets.set(6, 1);
+
+        // Setting a bit past the width widens all bit sets
+        bitSets.set(5, 130);
+        assertEquals(192, bitSets.getBitCount());
+        assertTrue(bitSets.get(5, 63));
+        assertTrue(bitSets.get(5, 130));
+        assertTrue(bitSets.get(6, 1));
+        assertEquals(130, bitSets.nextSetBit(5, 64));
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        final PagedBitSets bitSets = new PagedBitSets(128, 4);
+        bitSets.set(1, 3);
+        bitSets.set(1, 70);
+        bitSets.set(2, 3);
+
+        final long[] required = PagedBitSets.createMask(3, 70);
+        final long[] forbidden = PagedBitSets.createMask(5);
+        final long[] none = PagedBitSets.createMask();
+
+        assertTrue(bitSets.matches(1, required, forbidden));
+        assertFalse(bitSets.matches(2, required, forbidden));
+        assertTrue(bitSets.matches(2, PagedBitSets.createMask(3), forbidden));
+        assertFalse(bitSets.matches(1, none, PagedBitSets.createMask(70)));
+        assertTrue(bitSets.matches(99, none, forbidden));
+        assertFalse(bitSets.matches(99, required, none));
+    }
+}
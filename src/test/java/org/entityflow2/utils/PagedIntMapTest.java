@@ -0,0 +1,62 @@
+package org.entityflow2.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class PagedIntMapTest {
+
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final PagedIntMap map = new PagedIntMap(-1, 4);
+
+        assertEquals(-1, map.get(0));
+        assertEquals(-1, map.get(1000));
+        assertEquals(-1, map.get(-5));
+        assertFalse(map.containsKey(3));
+
+        assertEquals(-1, map.put(3, 30));
+        assertEquals(-1, map.put(1000, 10000));
+        assertEquals(30, map.put(3, 31));
+        assertEquals(2, map.size());
+
+        assertEquals(31, map.get(3));
+        assertEquals(10000, map.get(1000));
+        assertEquals(-1, map.get(4));
+        assertTrue(map.containsKey(1000));
+
+        assertEquals(31, map.remove(3));
+        assertEquals(-1, map.remove(3));
+        assertEquals(-1, map.get(3));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void testPagesAreReleased() throws Exception {
+        final PagedIntMap map = new PagedIntMap(-1, 4);
+        final long emptyUsage = map.getMemoryUsageBytes();
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i * 2);
+        }
+        final long filledUsage = map.getMemoryUsageBytes();
+        assertTrue(filledUsage > emptyUsage);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 2, map.get(i));
+            map.remove(i);
+        }
+        assertEquals(0, map.size());
+
+        // Only the page directory should remain
+        assertTrue(map.getMemoryUsageBytes() < filledUsage / 4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingValueCanNotBeStored() throws Exception {
+        new PagedIntMap(-1).put(1, -1);
+    }
+}
@@ -0,0 +1,119 @@
+package org.entityflow2.memory;
+
+import sun.misc.Unsafe;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * Memory access that reads and writes directly at the native address of direct ByteBuffers, without bounds checks.
+ *
+ * Only works with direct buffers that use the native byte order, as allocated by the BlockStorages.
+ * Accessing a heap buffer, or an offset outside a buffer, corrupts memory or crashes the JVM.
+ *
+ * This is the only class of the library that references sun.misc.Unsafe, which makes javac emit a warning that can not
+ * be suppressed.  It is therefore kept in its own source root, only compiled with the "unsafe" Maven profile, and
+ * loaded by name with MemoryAccess.createUnchecked, so the rest of the library does not depend on it.
+ */
+public final class UnsafeMemoryAccess extends MemoryAccess {
+
+    private static final Unsafe UNSAFE;
+    private static final long ADDRESS_FIELD_OFFSET;
+
+    static {
+        Unsafe unsafe = null;
+        long addressFieldOffset = -1;
+        try {
+            final Field unsafeField = Unsafe.class.getDeclaredField("theUnsafe");
+            unsafeField.setAccessible(true);
+            unsafe = (Unsafe) unsafeField.get(null);
+            addressFieldOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+        }
+        catch (Throwable e) {
+            // Not available on this platform
+            unsafe = null;
+        }
+
+        UNSAFE = unsafe;
+        ADDRESS_FIELD_OFFSET = addressFieldOffset;
+    }
+
+    /**
+     * @return true if unsafe memory access is supported on this platform.
+     */
+    public static boolean isAvailable() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * @throws IllegalStateException if unsafe memory access is not supported on this platform.
+     */
+    public UnsafeMemoryAccess() {
+        if (!isAvailable()) throw new IllegalStateException("Unsafe memory access is not available on this platform");
+    }
+
+    @Override public byte getByte(ByteBuffer buffer, int offset) {
+        return UNSAFE.getByte(address(buffer) + offset);
+    }
+
+    @Override public void putByte(ByteBuffer buffer, int offset, byte value) {
+        UNSAFE.putByte(address(buffer) + offset, value);
+    }
+
+    @Override public short getShort(ByteBuffer buffer, int offset) {
+        return UNSAFE.getShort(address(buffer) + offset);
+    }
+
+    @Override public void putShort(ByteBuffer buffer, int offset, short value) {
+        UNSAFE.putShort(address(buffer) + offset, value);
+    }
+
+    @Override public char getChar(ByteBuffer buffer, int offset) {
+        return UNSAFE.getChar(address(buffer) + offset);
+    }
+
+    @Override public void putChar(ByteBuffer buffer, int offset, char value) {
+        UNSAFE.putChar(address(buffer) + offset, value);
+    }
+
+    @Override public int getInt(ByteBuffer buffer, int offset) {
+        return UNSAFE.getInt(address(buffer) + offset);
+    }
+
+    @Override public void putInt(ByteBuffer buffer, int offset, int value) {
+        UNSAFE.putInt(address(buffer) + offset, value);
+    }
+
+    @Override public long getLong(ByteBuffer buffer, int offset) {
+        return UNSAFE.getLong(address(buffer) + offset);
+    }
+
+    @Override public void putLong(ByteBuffer buffer, int offset, long value) {
+        UNSAFE.putLong(address(buffer) + offset, value);
+    }
+
+    @Override public float getFloat(ByteBuffer buffer, int offset) {
+        return UNSAFE.getFloat(address(buffer) + offset);
+    }
+
+    @Override public void putFloat(ByteBuffer buffer, int offset, float value) {
+        UNSAFE.putFloat(address(buffer) + offset, value);
+    }
+
+    @Override public double getDouble(ByteBuffer buffer, int offset) {
+        return UNSAFE.getDouble(address(buffer) + offset);
+    }
+
+    @Override public void putDouble(ByteBuffer buffer, int offset, double value) {
+        UNSAFE.putDouble(address(buffer) + offset, value);
+    }
+
+    @Override public void copy(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset, int length) {
+        UNSAFE.copyMemory(address(source) + sourceOffset, address(target) + targetOffset, length);
+    }
+
+    private static long address(ByteBuffer buffer) {
+        return UNSAFE.getLong(buffer, ADDRESS_FIELD_OFFSET);
+    }
+}